@@ -70,7 +70,7 @@ def create_vm(
 
         result = client.create_vm(vm_data)
         print_json(result)
-        click.echo("✅ VM created successfully")
+        click.echo("✅ VM creation queued, follow it with `job get <id>`")
 
     except Exception as e:
         click.echo(f"❌ Failed to create VM: {e}", err=True)
@@ -149,7 +149,7 @@ def create_vm(
 
         result = client.create_node(node_data)
         print_json(result)
-        click.echo("✅ Node created successfully")
+        click.echo("✅ Node creation queued, follow it with `job get <id>`")
 
     except Exception as e:
         click.echo(f"❌ Failed to create Node: {e}", err=True)
@@ -221,6 +221,61 @@ def list_nodes() -> None:
         raise click.Abort()
 
 
+@cli.group()
+def job() -> None:
+    """Manage provisioning jobs."""
+    pass
+
+
+@job.command("get")
+@click.argument("job_id")
+def get_job(job_id: str) -> None:
+    """Get the status of a job."""
+    ctx = click.get_current_context()
+    client: K3sAPIClient = ctx.obj["client"]
+
+    try:
+        result = client.get_job(job_id)
+        print_json(result)
+
+    except Exception as e:
+        click.echo(f"❌ Failed to get job: {e}", err=True)
+        raise click.Abort()
+
+
+@job.command("list")
+@click.option("--status", required=False, help="Filter by status (QUEUED, RUNNING, ...)")
+def list_jobs(status: Optional[str]) -> None:
+    """List provisioning jobs."""
+    ctx = click.get_current_context()
+    client: K3sAPIClient = ctx.obj["client"]
+
+    try:
+        result = client.list_jobs(status)
+        print_json(result)
+
+    except Exception as e:
+        click.echo(f"❌ Failed to list jobs: {e}", err=True)
+        raise click.Abort()
+
+
+@job.command("cancel")
+@click.argument("job_id")
+def cancel_job(job_id: str) -> None:
+    """Cancel a queued or running job."""
+    ctx = click.get_current_context()
+    client: K3sAPIClient = ctx.obj["client"]
+
+    try:
+        result = client.cancel_job(job_id)
+        print_json(result)
+        click.echo("✅ Job cancelled")
+
+    except Exception as e:
+        click.echo(f"❌ Failed to cancel job: {e}", err=True)
+        raise click.Abort()
+
+
 def main() -> None:
     """Main entry point for the CLI."""
     cli()
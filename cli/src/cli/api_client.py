@@ -154,3 +154,40 @@ class K3sAPIClient:
         """
         response = self._make_request("GET", f"/api/v1/clusters/nodes")
         return response.json()
+
+    def get_job(self, job_id: str) -> Dict[str, Any]:
+        """Get a provisioning job.
+
+        Args:
+            job_id: ID of the job returned by a create call
+
+        Returns:
+            API response data
+        """
+        response = self._make_request("GET", f"/api/v1/jobs/{job_id}")
+        return response.json()
+
+    def list_jobs(self, status: Optional[str] = None) -> Dict[str, Any]:
+        """List provisioning jobs.
+
+        Args:
+            status: Optional job status to filter by
+
+        Returns:
+            API response data
+        """
+        params = {"status": status} if status else None
+        response = self._make_request("GET", "/api/v1/jobs", params=params)
+        return response.json()
+
+    def cancel_job(self, job_id: str) -> Dict[str, Any]:
+        """Cancel a provisioning job.
+
+        Args:
+            job_id: ID of the job to cancel
+
+        Returns:
+            API response data
+        """
+        response = self._make_request("DELETE", f"/api/v1/jobs/{job_id}")
+        return response.json()
@@ -0,0 +1,84 @@
+package com.k3skvmmaster.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.k3skvmmaster.config.ReadinessConfig;
+import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.service.VmReadinessService;
+import com.k3skvmmaster.util.CloudInitUtil;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CloudInitBenchmark {
+
+    private CloudInitUtil cloudInitUtil;
+    private VmRequest request;
+
+    @Setup
+    public void setUp() throws Exception {
+        Path directory = Files.createTempDirectory("ryomk-bench");
+
+        ReadinessConfig readinessConfig = new ReadinessConfig();
+        readinessConfig.setCallbackBaseUrl("http://10.20.0.2:8080/");
+
+        VmReadinessService vmReadinessService = new VmReadinessService();
+        ReflectionTestUtils.setField(vmReadinessService, "libvirtUtil", new LibvirtUtil());
+
+        cloudInitUtil = new CloudInitUtil();
+        ReflectionTestUtils.setField(cloudInitUtil, "sshConfig", Fixtures.sshConfig(directory, 22));
+        ReflectionTestUtils.setField(cloudInitUtil, "readinessConfig", readinessConfig);
+        ReflectionTestUtils.setField(cloudInitUtil, "vmReadinessService", vmReadinessService);
+        request = Fixtures.vmRequest(1);
+        request.setLibvirtUri("qemu:///system");
+
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("user-data", cloudInitUtil.generateUserData(request).getBytes(StandardCharsets.UTF_8));
+        files.put("meta-data", cloudInitUtil.generateMetaData(request).getBytes(StandardCharsets.UTF_8));
+        files.put("network-config", cloudInitUtil.generateNetworkConfig(request).getBytes(StandardCharsets.UTF_8));
+        SeedIsoReader.verify(cloudInitUtil.buildCloudInitIso(request), files);
+    }
+
+    @Benchmark
+    public String generateUserData() throws IOException {
+        return cloudInitUtil.generateUserData(request);
+    }
+
+    @Benchmark
+    public String generateMetaData() {
+        return cloudInitUtil.generateMetaData(request);
+    }
+
+    @Benchmark
+    public String generateNetworkConfig() {
+        return cloudInitUtil.generateNetworkConfig(request);
+    }
+
+    /** All three documents packed into the NoCloud seed ISO. */
+    @Benchmark
+    public byte[] buildCloudInitIso() throws IOException {
+        return cloudInitUtil.buildCloudInitIso(request);
+    }
+}
@@ -0,0 +1,68 @@
+package com.k3skvmmaster.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.k3skvmmaster.config.BalloonConfig;
+import com.k3skvmmaster.config.LibvirtConfig;
+import com.k3skvmmaster.config.ScalingConfig;
+import com.k3skvmmaster.model.dto.DomainProfile;
+import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DomainXmlBenchmark {
+
+    @Param({ "DEFAULT", "IO_HEAVY" })
+    private DomainProfile profile;
+
+    private LibvirtUtil libvirtUtil;
+    private VmRequest request;
+
+    @Setup
+    public void setUp() {
+        LibvirtConfig libvirtConfig = new LibvirtConfig();
+        libvirtConfig.setDomainType("kvm");
+        libvirtConfig.setDomainArch("x86_64");
+        libvirtConfig.setDomainMachine("pc-q35-5.2");
+        libvirtConfig.setDomainEmulator("/usr/bin/qemu-system-x86_64");
+        libvirtConfig.setDomainNetwork("kube-net");
+        libvirtConfig.setDomainProfile(DomainProfile.DEFAULT);
+        libvirtConfig.setDomainDiskIo("native");
+        libvirtConfig.setDomainDiskBus("virtio");
+        libvirtConfig.setDomainMaxQueues(8);
+
+        BalloonConfig balloonConfig = new BalloonConfig();
+        balloonConfig.setStatsPeriodSeconds(5);
+
+        libvirtUtil = new LibvirtUtil();
+        ReflectionTestUtils.setField(libvirtUtil, "libvirtConfig", libvirtConfig);
+        ReflectionTestUtils.setField(libvirtUtil, "balloonConfig", balloonConfig);
+        ReflectionTestUtils.setField(libvirtUtil, "scalingConfig", new ScalingConfig());
+        request = Fixtures.vmRequest(1);
+        request.setProfile(profile);
+    }
+
+    @Benchmark
+    public String generateDomainXml() {
+        return libvirtUtil.generateDomainXml(request, "/var/lib/libvirt/images/bench-node-1.qcow2",
+                "/var/lib/libvirt/images/bench-node-1-cloud-init.iso");
+    }
+}
@@ -0,0 +1,59 @@
+package com.k3skvmmaster.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.KeyPair;
+import com.k3skvmmaster.config.SshConfig;
+import com.k3skvmmaster.model.dto.VmRequest;
+
+/** Inputs shared by the benchmarks. */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static VmRequest vmRequest(int index) {
+        VmRequest request = new VmRequest();
+        request.setName("bench-node-" + index);
+        request.setVcpu(2);
+        request.setMemory(4096);
+        request.setIpAddress("10.20.0." + (10 + index % 200));
+        request.setGateway("10.20.0.1");
+        request.setSystemUser("ubuntu");
+        request.setIsoPath("/var/lib/libvirt/images/ubuntu.iso");
+        request.setRootPassword("p\\a\"ss");
+        return request;
+    }
+
+    /**
+     * Writes a fresh RSA key pair to {@code directory} and returns an SSH
+     * config that uses it, pointing at {@code port} on localhost.
+     */
+    static SshConfig sshConfig(Path directory, int port) throws IOException, JSchException {
+        Path privateKey = directory.resolve("id_rsa");
+        KeyPair keyPair = KeyPair.genKeyPair(new JSch(), KeyPair.RSA, 2048);
+        keyPair.writePrivateKey(privateKey.toString());
+        keyPair.writePublicKey(privateKey + ".pub", "bench");
+        keyPair.dispose();
+
+        SshConfig config = new SshConfig();
+        config.setPrivateKeyPath(privateKey.toString());
+        config.setDefaultUser("bench");
+        config.setDefaultHost("127.0.0.1");
+        config.setPort(port);
+        config.setGuestPassword("bench");
+        config.setConnectTimeoutMs(10_000);
+        config.setKeepaliveIntervalMs(15_000);
+        config.setIdleTimeoutMs(300_000);
+        config.setMaxLeasesPerSession(8);
+        config.setLeaseTimeoutMs(10_000);
+        config.setExecTailBytes(65_536);
+        config.setExecSpillDirectory(Files.createDirectories(directory.resolve("spill")).toString());
+        config.setExecDefaultTimeoutMs(60_000);
+        return config;
+    }
+}
@@ -0,0 +1,61 @@
+package com.k3skvmmaster.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.libvirt.Connect;
+import org.libvirt.LibvirtException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening a libvirt connection against the built-in {@code test:///default}
+ * driver, compared with a call on a connection that is already open, which
+ * is what the pooled connections in LibvirtService buy. Needs libvirt's
+ * client library on the machine running the benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibvirtConnectBenchmark {
+
+    private static final String URI = "test:///default";
+
+    private Connect pooled;
+
+    @Setup
+    public void setUp() throws LibvirtException {
+        pooled = new Connect(URI);
+    }
+
+    @TearDown
+    public void tearDown() throws LibvirtException {
+        pooled.close();
+    }
+
+    @Benchmark
+    public int connect() throws LibvirtException {
+        Connect conn = new Connect(URI);
+        try {
+            return conn.numOfDomains();
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Benchmark
+    public int pooledCall() throws LibvirtException {
+        return pooled.numOfDomains();
+    }
+}
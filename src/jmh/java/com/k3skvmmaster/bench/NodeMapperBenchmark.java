@@ -0,0 +1,84 @@
+package com.k3skvmmaster.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.k3skvmmaster.util.mapper.KubernetesDataMapper;
+
+import io.kubernetes.client.openapi.models.V1Node;
+import io.kubernetes.client.openapi.models.V1NodeAddress;
+import io.kubernetes.client.openapi.models.V1NodeCondition;
+import io.kubernetes.client.openapi.models.V1NodeList;
+import io.kubernetes.client.openapi.models.V1NodeStatus;
+import io.kubernetes.client.openapi.models.V1NodeSystemInfo;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NodeMapperBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    private int nodes;
+
+    private KubernetesDataMapper mapper;
+    private V1NodeList nodeList;
+
+    @Setup
+    public void setUp() {
+        mapper = new KubernetesDataMapper();
+
+        List<V1Node> items = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            items.add(node(i));
+        }
+        nodeList = new V1NodeList().items(items);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> mapNodesToRto() {
+        return mapper.mapNodesToRto(nodeList);
+    }
+
+    /**
+     * A node shaped like a real kubelet's: the usual five conditions with
+     * Ready last, and both address types with the internal IP last.
+     */
+    private static V1Node node(int index) {
+        List<V1NodeCondition> conditions = new ArrayList<>();
+        for (String type : List.of("MemoryPressure", "DiskPressure", "PIDPressure", "NetworkUnavailable")) {
+            conditions.add(new V1NodeCondition().type(type).status("False"));
+        }
+        conditions.add(new V1NodeCondition().type("Ready").status(index % 50 == 0 ? "False" : "True"));
+
+        return new V1Node()
+                .metadata(new V1ObjectMeta().name("node-" + index))
+                .status(new V1NodeStatus()
+                        .conditions(conditions)
+                        .addresses(List.of(
+                                new V1NodeAddress().type("Hostname").address("node-" + index),
+                                new V1NodeAddress().type("InternalIP")
+                                        .address("10." + (index >> 16 & 255) + "." + (index >> 8 & 255) + "."
+                                                + (index & 255))))
+                        .nodeInfo(new V1NodeSystemInfo()
+                                .osImage("Ubuntu 24.04.1 LTS")
+                                .kubeletVersion("v1.30.4+k3s1")));
+    }
+}
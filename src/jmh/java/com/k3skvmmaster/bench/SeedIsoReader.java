@@ -0,0 +1,105 @@
+package com.k3skvmmaster.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.k3skvmmaster.util.NoCloudIsoBuilder;
+
+/**
+ * Reads a seed ISO from {@link NoCloudIsoBuilder} back, so the benchmarks
+ * fail on a layout mistake instead of timing an image no VM could boot from.
+ * Only what the builder writes is understood: a flat root directory.
+ */
+final class SeedIsoReader {
+
+    private static final int SECTOR = 2048;
+
+    private static final int PRIMARY_DESCRIPTOR = 16;
+    private static final int JOLIET_DESCRIPTOR = 17;
+    private static final int TERMINATOR = 18;
+
+    private SeedIsoReader() {
+    }
+
+    /**
+     * Checks that both trees of {@code image} read back as exactly
+     * {@code files}, with primary-tree names in their 8.3 form.
+     *
+     * @throws IllegalStateException if they do not
+     */
+    static void verify(byte[] image, Map<String, byte[]> files) {
+        Map<String, byte[]> primary = new TreeMap<>();
+        files.forEach((name, content) -> primary.put(primaryName(name), content));
+
+        if (!sameFiles(read(image, true), files) || !sameFiles(read(image, false), primary)) {
+            throw new IllegalStateException("Seed ISO does not read back as the files it was built from");
+        }
+    }
+
+    /**
+     * Reads the root directory of {@code image} through its primary
+     * ({@code joliet} false) or Joliet volume descriptor, returning file name
+     * to content with version suffixes stripped.
+     */
+    static Map<String, byte[]> read(byte[] image, boolean joliet) {
+        ByteBuffer iso = ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN);
+        int base = (joliet ? JOLIET_DESCRIPTOR : PRIMARY_DESCRIPTOR) * SECTOR;
+        if (image.length < (TERMINATOR + 1) * SECTOR || iso.get(base) != (joliet ? 2 : 1)
+                || !"CD001".equals(new String(image, base + 1, 5, StandardCharsets.US_ASCII))) {
+            throw new IllegalStateException("No " + (joliet ? "Joliet" : "primary") + " volume descriptor");
+        }
+        if (joliet && !"%/E".equals(new String(image, base + 88, 3, StandardCharsets.US_ASCII))) {
+            throw new IllegalStateException("Joliet descriptor is not UCS-2 level 3");
+        }
+        if (iso.getInt(base + 80) * SECTOR != image.length) {
+            throw new IllegalStateException("Volume size does not match the image");
+        }
+        String volumeId = joliet
+                ? new String(image, base + 40, 32, StandardCharsets.UTF_16BE).trim()
+                : new String(image, base + 40, 32, StandardCharsets.US_ASCII).trim();
+        if (!NoCloudIsoBuilder.VOLUME_ID.equals(volumeId)) {
+            throw new IllegalStateException("Volume id is " + volumeId + ", not " + NoCloudIsoBuilder.VOLUME_ID);
+        }
+
+        int rootStart = iso.getInt(base + 156 + 2) * SECTOR;
+        int rootEnd = rootStart + iso.getInt(base + 156 + 10);
+        Map<String, byte[]> files = new TreeMap<>();
+        int offset = rootStart;
+        while (offset < rootEnd) {
+            int recordLength = Byte.toUnsignedInt(iso.get(offset));
+            if (recordLength == 0) {
+                // The rest of the sector is padding
+                offset = (offset / SECTOR + 1) * SECTOR;
+                continue;
+            }
+            int nameLength = Byte.toUnsignedInt(iso.get(offset + 32));
+            boolean directory = (iso.get(offset + 25) & 2) != 0;
+            if (!directory) {
+                String name = new String(image, offset + 33, nameLength,
+                        joliet ? StandardCharsets.UTF_16BE : StandardCharsets.US_ASCII);
+                int extent = iso.getInt(offset + 2) * SECTOR;
+                int length = iso.getInt(offset + 10);
+                if (extent + length > image.length) {
+                    throw new IllegalStateException("File " + name + " runs past the end of the image");
+                }
+                files.put(name.replaceFirst(";1$", ""), Arrays.copyOfRange(image, extent, extent + length));
+            }
+            offset += recordLength;
+        }
+        return files;
+    }
+
+    /** {@code user-data} is recorded as {@code USER_DATA.;1} in the primary tree. */
+    private static String primaryName(String name) {
+        return name.toUpperCase().replaceAll("[^A-Z0-9]", "_") + ".";
+    }
+
+    private static boolean sameFiles(Map<String, byte[]> actual, Map<String, byte[]> expected) {
+        return actual.keySet().equals(expected.keySet())
+                && expected.entrySet().stream().allMatch(e -> Arrays.equals(e.getValue(), actual.get(e.getKey())));
+    }
+}
@@ -0,0 +1,160 @@
+package com.k3skvmmaster.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jcraft.jsch.JSchException;
+import com.k3skvmmaster.config.SshConfig;
+import com.k3skvmmaster.util.AutoCloseSshSession;
+import com.k3skvmmaster.util.SshSessionPool;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * SSH costs against an in-process server: a full handshake on a fresh pool,
+ * and running a command on a pooled session whose output has to be
+ * captured. The server answers {@code emit <bytes>} with that many bytes of
+ * 80-column text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SshBenchmark {
+
+    private Path directory;
+    private SshServer server;
+    private SshConfig sshConfig;
+    private SshSessionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("ryomk-bench-ssh");
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(directory.resolve("host.ser")));
+        server.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+        server.setCommandFactory((channel, command) -> new EmitCommand(command));
+        server.start();
+
+        sshConfig = Fixtures.sshConfig(directory, server.getPort());
+        pool = new SshSessionPool(sshConfig, new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        server.stop(true);
+    }
+
+    /** Kept apart so that only the command benchmark runs once per output size. */
+    @State(Scope.Benchmark)
+    public static class Output {
+        @Param({ "1024", "1048576" })
+        private int bytes;
+    }
+
+    @Benchmark
+    public int executeSshCommand(Output output) throws IOException, JSchException {
+        try (AutoCloseSshSession ssh = pool.acquire()) {
+            return ssh.executeSshCommand("emit " + output.bytes, "bench").getOutput().length();
+        }
+    }
+
+    /** Key exchange and authentication, which the pool pays once per host. */
+    @Benchmark
+    public boolean handshake() throws JSchException {
+        SshSessionPool fresh = new SshSessionPool(sshConfig, new SimpleMeterRegistry());
+        try (AutoCloseSshSession ssh = fresh.acquire()) {
+            return ssh.getSession().isConnected();
+        } finally {
+            fresh.shutdown();
+        }
+    }
+
+    private static final class EmitCommand implements Command {
+        private final String command;
+        private OutputStream out;
+        private ExitCallback exitCallback;
+
+        private EmitCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            Thread thread = new Thread(() -> {
+                int status = 0;
+                try {
+                    int remaining = Integer.parseInt(command.substring("emit ".length()).trim());
+                    byte[] line = new byte[80];
+                    Arrays.fill(line, (byte) 'x');
+                    line[79] = '\n';
+                    while (remaining > 0) {
+                        int length = Math.min(remaining, line.length);
+                        out.write(line, 0, length);
+                        remaining -= length;
+                    }
+                    out.flush();
+                } catch (IOException | RuntimeException e) {
+                    status = 1;
+                }
+                exitCallback.onExit(status);
+            }, "bench-ssh-emit");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.exitCallback = callback;
+        }
+    }
+}
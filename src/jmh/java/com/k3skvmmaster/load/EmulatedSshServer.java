@@ -0,0 +1,158 @@
+package com.k3skvmmaster.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+/**
+ * One SSH server standing in for the hypervisor and every guest. It listens
+ * on all addresses, so guests can be given distinct loopback addresses and
+ * told apart by the address a session connected to. Commands are recognised
+ * by what they run and answered after a configurable delay instead of being
+ * executed; file writes over SFTP land in a scratch directory.
+ */
+final class EmulatedSshServer implements AutoCloseable {
+
+    /** Emulated durations, in milliseconds. */
+    record Latencies(long customizeMs, long seedMs, long k3sInstallMs, long nfsMs) {
+    }
+
+    private final Latencies latencies;
+    private final Consumer<String> onSeedUploaded;
+    private final BiConsumer<String, String> onAgentInstalled;
+    private final ExecutorService commands = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "load-ssh-command");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SshServer server;
+
+    /**
+     * @param onSeedUploaded   called with the remote path of every uploaded file
+     * @param onAgentInstalled called with the address and command of every k3s install
+     */
+    EmulatedSshServer(Path directory, Latencies latencies, Consumer<String> onSeedUploaded,
+            BiConsumer<String, String> onAgentInstalled) throws IOException {
+        this.latencies = latencies;
+        this.onSeedUploaded = onSeedUploaded;
+        this.onAgentInstalled = onAgentInstalled;
+
+        Path root = Files.createDirectories(directory.resolve("sftp"));
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("0.0.0.0");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(directory.resolve("host.ser")));
+        server.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+        server.setPasswordAuthenticator((user, password, session) -> true);
+        server.setFileSystemFactory(new VirtualFileSystemFactory(root));
+        server.setSubsystemFactories(List.of(new SftpSubsystemFactory()));
+        server.setCommandFactory((channel, command) -> new EmulatedCommand(command));
+        server.start();
+    }
+
+    int getPort() {
+        return server.getPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(true);
+        commands.shutdownNow();
+    }
+
+    private final class EmulatedCommand implements Command {
+        private final String command;
+        private InputStream in;
+        private OutputStream out;
+        private ExitCallback exitCallback;
+
+        private EmulatedCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            String address = ((InetSocketAddress) channel.getServerSession().getIoSession().getLocalAddress())
+                    .getAddress().getHostAddress();
+
+            commands.execute(() -> {
+                int status;
+                try {
+                    status = run(address);
+                    out.flush();
+                } catch (IOException e) {
+                    status = 255;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    status = 130;
+                }
+                exitCallback.onExit(status);
+            });
+        }
+
+        private int run(String address) throws IOException, InterruptedException {
+            if (command.contains("virt-customize")) {
+                Thread.sleep(latencies.customizeMs());
+            } else if (command.contains("cat > ")) {
+                // Seed ISOs are built in-process and streamed here, so this stands in for genisoimage
+                in.transferTo(OutputStream.nullOutputStream());
+                Thread.sleep(latencies.seedMs());
+                String path = command.substring(command.lastIndexOf(' ') + 1);
+                onSeedUploaded.accept(path);
+            } else if (command.startsWith("sha256sum ")) {
+                return 1;
+            } else if (command.contains("node-token")) {
+                out.write("K10load::server:emulated\n".getBytes(StandardCharsets.UTF_8));
+            } else if (command.contains("get.k3s.io") || command.contains("INSTALL_K3S")) {
+                Thread.sleep(latencies.k3sInstallMs());
+                onAgentInstalled.accept(address, command);
+            } else if (command.contains("nfs-common")) {
+                Thread.sleep(latencies.nfsMs());
+            }
+            return 0;
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.exitCallback = callback;
+        }
+    }
+}
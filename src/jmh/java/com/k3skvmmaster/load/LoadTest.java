@@ -0,0 +1,457 @@
+package com.k3skvmmaster.load;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import com.k3skvmmaster.K3sKvmApplication;
+import com.k3skvmmaster.model.dto.CreateNodeRequest;
+import com.k3skvmmaster.model.dto.CustomizationMode;
+import com.k3skvmmaster.service.VmService;
+
+/**
+ * Drives VM creation, node creation and node deletion at increasing
+ * concurrency against local stand-ins, and reports throughput, latency and
+ * JVM footprint per run. The hypervisor is libvirt's test driver backed by a
+ * generated node file, every SSH host is one {@link EmulatedSshServer}, and
+ * the cluster is a {@link MockKubernetesApi}. Guests phone home a fixed time
+ * after their seed ISO was uploaded. {@code createVm} names its hypervisor;
+ * nodes are created and deleted without one, so every node goes through
+ * placement and admission and is deleted from the host the store recorded.
+ *
+ * <p>Options are {@code key=value}: {@code levels} (comma separated,
+ * default {@code 1,10,100}), {@code requests} per level (default the level,
+ * at least 10), {@code customization} ({@code VIRT_CUSTOMIZE} or
+ * {@code CLOUD_INIT}) and the emulated latencies {@code customize-ms},
+ * {@code seed-ms}, {@code boot-ms}, {@code k3s-ms} and {@code nfs-ms}.
+ * Arguments starting with {@code --} are passed to the application, e.g.
+ * {@code --jobs.executor.threads-per-hypervisor=16}.
+ */
+public final class LoadTest {
+
+    private static final String BOOT_PATH = "/api/v1/vms/%s/ready";
+
+    private final Map<String, String> options;
+    private final Path directory;
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final ScheduledExecutorService guests = Executors.newScheduledThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "load-guest");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, String> guestNames = new ConcurrentHashMap<>();
+    private final AtomicInteger nextGuest = new AtomicInteger();
+    private final AtomicInteger turnedAway = new AtomicInteger();
+
+    private String hypervisor;
+    private volatile String baseUrl;
+    private ObjectMapper objectMapper;
+
+    /** One workload at one concurrency level. */
+    record Result(String workload, int concurrency, int succeeded, int failed, long wallMs, long[] latenciesMs,
+            int peakThreads, long peakHeapBytes) {
+
+        double throughput() {
+            return succeeded * 1000.0 / Math.max(1, wallMs);
+        }
+
+        long percentile(double p) {
+            if (latenciesMs.length == 0) {
+                return 0;
+            }
+            long[] sorted = latenciesMs.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run(CreateNodeRequest request) throws Exception;
+    }
+
+    private LoadTest(Map<String, String> options, Path directory) {
+        this.options = options;
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                appArgs.add(arg);
+            } else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+
+        List<Result> results = new LoadTest(options, Files.createTempDirectory("ryomk-load")).run(appArgs);
+        print(results);
+        System.exit(results.stream().anyMatch(r -> r.failed() > 0) ? 1 : 0);
+    }
+
+    private List<Result> run(List<String> appArgs) throws Exception {
+        hypervisor = writeHypervisor();
+
+        EmulatedSshServer.Latencies latencies = new EmulatedSshServer.Latencies(
+                longOption("customize-ms", 500), longOption("seed-ms", 20), longOption("k3s-ms", 1500),
+                longOption("nfs-ms", 500));
+
+        try (MockKubernetesApi kubernetes = new MockKubernetesApi();
+                EmulatedSshServer ssh = new EmulatedSshServer(directory, latencies, this::boot,
+                        (ip, command) -> {
+                            String name = guestNames.get(ip);
+                            if (name != null) {
+                                kubernetes.registerNode(name, ip);
+                            }
+                        });
+                ConfigurableApplicationContext app = start(ssh.getPort(), kubernetes.getUrl(), appArgs)) {
+            baseUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+            objectMapper = app.getBean(ObjectMapper.class);
+            VmService vmService = app.getBean(VmService.class);
+
+            List<Result> results = new ArrayList<>();
+            for (String level : options.getOrDefault("levels", "1,10,100").split(",")) {
+                int concurrency = Integer.parseInt(level.trim());
+                int count = options.containsKey("requests")
+                        ? Integer.parseInt(options.get("requests"))
+                        : Math.max(10, concurrency);
+
+                List<CreateNodeRequest> vms = requests("load-vm-" + concurrency, count, true);
+                results.add(measure("createVm", concurrency, vms, vmService::createVm));
+                for (CreateNodeRequest vm : vms) {
+                    try {
+                        vmService.deleteVm(vm.getName(), hypervisor);
+                    } catch (RuntimeException e) {
+                        System.err.printf("Failed to clean up %s: %s%n", vm.getName(), e.getMessage());
+                    }
+                }
+
+                List<CreateNodeRequest> nodes = requests("load-node-" + concurrency, count, false);
+                results.add(measure("createNode", concurrency, nodes, this::createNode));
+                results.add(measure("deleteNode", concurrency, nodes, this::deleteNode));
+            }
+            System.out.printf("Kubernetes API requests: %d%n", kubernetes.getRequestCount());
+            System.out.printf("Node requests turned away and retried: %d%n", turnedAway.get());
+            return results;
+        } finally {
+            guests.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes a base image and a test driver node file holding a pool that
+     * already contains it, and returns the URI to open it with.
+     */
+    private String writeHypervisor() throws IOException, NoSuchAlgorithmException {
+        byte[] image = new byte[1 << 20];
+        new Random(42).nextBytes(image);
+        Files.write(directory.resolve("base.qcow2"), image);
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(image));
+        String baseVolume = "base-" + sha256.substring(0, 16) + ".qcow2";
+
+        Path pool = Files.createDirectories(directory.resolve("pool"));
+        Path node = directory.resolve("node.xml");
+        Files.writeString(node, String.format("""
+                <node>
+                  <cpu>
+                    <mhz>2600</mhz>
+                    <model>i686</model>
+                    <active>32</active>
+                    <nodes>1</nodes>
+                    <sockets>1</sockets>
+                    <cores>16</cores>
+                    <threads>2</threads>
+                  </cpu>
+                  <memory>268435456</memory>
+                  <network>
+                    <name>kube-net</name>
+                    <uuid>%s</uuid>
+                    <bridge name='kube0'/>
+                    <forward/>
+                    <ip address='127.1.0.1' netmask='255.255.0.0'/>
+                  </network>
+                  <pool type='dir'>
+                    <name>default</name>
+                    <uuid>%s</uuid>
+                    <capacity unit='TiB'>64</capacity>
+                    <allocation>0</allocation>
+                    <available unit='TiB'>64</available>
+                    <source/>
+                    <target>
+                      <path>%3$s</path>
+                    </target>
+                    <volume type='file'>
+                      <name>%4$s</name>
+                      <capacity unit='GiB'>10</capacity>
+                      <allocation>0</allocation>
+                      <target>
+                        <path>%3$s/%4$s</path>
+                        <format type='qcow2'/>
+                      </target>
+                    </volume>
+                  </pool>
+                </node>
+                """, UUID.randomUUID(), UUID.randomUUID(), pool, baseVolume));
+        return "test://" + node;
+    }
+
+    private ConfigurableApplicationContext start(int sshPort, String kubernetesUrl, List<String> appArgs)
+            throws Exception {
+        Path key = directory.resolve("id_rsa");
+        KeyPair keyPair = KeyPair.genKeyPair(new JSch(), KeyPair.RSA, 2048);
+        keyPair.writePrivateKey(key.toString());
+        keyPair.writePublicKey(key + ".pub", "load");
+        keyPair.dispose();
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("server.address", "127.0.0.1");
+        properties.put("spring.datasource.url", "jdbc:h2:file:" + directory.resolve("db"));
+        properties.put("libvirt.connection.uri", hypervisor);
+        properties.put("scheduler.hypervisors", hypervisor);
+        properties.put("vm.base.image.path", directory.resolve("base.qcow2").toString());
+        properties.put("vm.images.directory", directory.resolve("pool").toString());
+        properties.put("vm.storage.pool", "default");
+        properties.put("vm.customization.mode", options.getOrDefault("customization", "VIRT_CUSTOMIZE"));
+        properties.put("vm.domain.type", "test");
+        properties.put("vm.domain.arch", "i686");
+        properties.put("vm.domain.machine", "");
+        properties.put("vm.domain.emulator", "/usr/bin/test-hv");
+        properties.put("ssh.port", String.valueOf(sshPort));
+        properties.put("ssh.private.key.path", key.toString());
+        properties.put("ssh.default.host", "127.0.0.1");
+        properties.put("ssh.default.user", "load");
+        properties.put("ssh.exec.spill-directory", directory.resolve("spill").toString());
+        properties.put("k3s.master.ip", "127.0.0.1");
+        properties.put("k3s.master.version", "v1.30.4+k3s1");
+        properties.put("k3s.master.network", "kube-net");
+        properties.put("k3s.master.bridge", "kube0");
+        properties.put("k3s.api.url", kubernetesUrl);
+        properties.put("k3s.node-cache.enabled", "false");
+        properties.put("k3s.artifacts.enabled", "false");
+        properties.put("warmpool.enabled", "false");
+
+        // A devtools restart would run this harness's main method again
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        // Command line arguments outrank application.properties
+        List<String> args = new ArrayList<>();
+        properties.forEach((name, value) -> args.add("--" + name + "=" + value));
+        args.addAll(appArgs);
+
+        return new SpringApplicationBuilder(K3sKvmApplication.class).run(args.toArray(String[]::new));
+    }
+
+    /**
+     * Builds {@code count} requests, naming the hypervisor only if
+     * {@code pinned}; the others are left for placement to put somewhere.
+     */
+    private List<CreateNodeRequest> requests(String prefix, int count, boolean pinned) {
+        CustomizationMode customization = CustomizationMode.valueOf(
+                options.getOrDefault("customization", "VIRT_CUSTOMIZE"));
+
+        List<CreateNodeRequest> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int guest = nextGuest.getAndIncrement();
+            String ip = String.format("127.1.%d.%d", 1 + guest / 250, 1 + guest % 250);
+
+            CreateNodeRequest request = new CreateNodeRequest();
+            request.setName(prefix + "-" + i);
+            request.setVcpu(1);
+            request.setMemory(1024);
+            request.setIpAddress(ip);
+            request.setGateway("127.1.0.1");
+            request.setSystemUser("load");
+            request.setIsoPath("/seeds/%s/%s-seed.iso");
+            request.setLibvirtUri(pinned ? hypervisor : null);
+            request.setCustomizationMode(customization);
+            request.setInstallNfsDeps(Boolean.parseBoolean(options.getOrDefault("nfs", "true")));
+            requests.add(request);
+            guestNames.put(ip, request.getName());
+        }
+        return requests;
+    }
+
+    /**
+     * Runs {@code task} once per request on {@code concurrency} threads while
+     * sampling thread count and heap use.
+     */
+    private Result measure(String workload, int concurrency, List<CreateNodeRequest> requests, Task task)
+            throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        threads.resetPeakThreadCount();
+        AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 50, TimeUnit.MILLISECONDS);
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        List<Future<Long>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (CreateNodeRequest request : requests) {
+            futures.add(clients.submit(() -> {
+                long begin = System.nanoTime();
+                task.run(request);
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            }));
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        int failed = 0;
+        for (Future<Long> future : futures) {
+            try {
+                latencies.add(future.get());
+            } catch (Exception e) {
+                failed++;
+                System.err.printf("%s failed: %s%n", workload, e.getCause() != null ? e.getCause() : e);
+            }
+        }
+        long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        clients.shutdown();
+        sampler.shutdownNow();
+
+        return new Result(workload, concurrency, latencies.size(), failed, wallMs,
+                latencies.stream().mapToLong(Long::longValue).toArray(), threads.getPeakThreadCount(),
+                peakHeap.get());
+    }
+
+    /**
+     * Submits the node through the API and polls its job until it finishes.
+     * A full queue (429) or no host with room for it (503) is waited out and
+     * retried, as a client would.
+     */
+    private void createNode(CreateNodeRequest request) throws Exception {
+        HttpResponse<String> response;
+        while (true) {
+            response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/clusters/node"))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(request)))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 429 && response.statusCode() != 503) {
+                break;
+            }
+            turnedAway.incrementAndGet();
+            long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(retryAfter));
+        }
+        if (response.statusCode() != 202) {
+            throw new IllegalStateException("createNode returned " + response.statusCode() + ": " + response.body());
+        }
+
+        String jobId = objectMapper.readTree(response.body()).path("data").path("id").asText();
+        while (true) {
+            Thread.sleep(100);
+            JsonNode job = objectMapper.readTree(http.send(
+                    HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/jobs/" + jobId)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()).body()).path("data");
+            switch (job.path("status").asText()) {
+                case "SUCCEEDED" -> {
+                    return;
+                }
+                case "FAILED", "CANCELLED" -> throw new IllegalStateException(
+                        "Job " + jobId + " " + job.path("status").asText() + ": " + job.path("message").asText());
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void deleteNode(CreateNodeRequest request) throws Exception {
+        String uri = String.format("%s/api/v1/clusters/node?nodeName=%s", baseUrl, request.getName());
+        if (request.getLibvirtUri() != null) {
+            uri += "&libvirtUri=" + URLEncoder.encode(request.getLibvirtUri(), StandardCharsets.UTF_8);
+        }
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(uri))
+                .DELETE().build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("deleteNode returned " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    /**
+     * Boots the guest whose seed ISO was just written to {@code seedPath}:
+     * after the boot delay it phones home, retrying until the orchestrator is
+     * waiting for it, i.e. once the domain has been started.
+     */
+    private void boot(String seedPath) {
+        String file = seedPath.substring(seedPath.lastIndexOf('/') + 1);
+        if (!file.endsWith("-seed.iso")) {
+            return;
+        }
+        String name = file.substring(0, file.length() - "-seed.iso".length());
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        guests.schedule(() -> phoneHome(name, deadline), longOption("boot-ms", 1000), TimeUnit.MILLISECONDS);
+    }
+
+    private void phoneHome(String name, long deadline) {
+        try {
+            int status = http.send(HttpRequest.newBuilder(URI.create(baseUrl + String.format(BOOT_PATH, name)))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding())
+                    .statusCode();
+            if (status == 204) {
+                return;
+            }
+        } catch (IOException e) {
+            // Retried below like a refused callback
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (System.nanoTime() < deadline) {
+            guests.schedule(() -> phoneHome(name, deadline), 100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long longOption(String name, long defaultValue) {
+        return options.containsKey(name) ? Long.parseLong(options.get(name)) : defaultValue;
+    }
+
+    private static void print(List<Result> results) {
+        System.out.printf("%n%-11s %5s %6s %6s %9s %9s %9s %9s %9s %8s %9s%n", "workload", "conc", "ok", "failed",
+                "wall(s)", "ops/s", "p50(ms)", "p99(ms)", "max(ms)", "threads", "heap(MB)");
+        for (Result r : results) {
+            System.out.printf("%-11s %5d %6d %6d %9.1f %9.2f %9d %9d %9d %8d %9d%n", r.workload(), r.concurrency(),
+                    r.succeeded(), r.failed(), r.wallMs() / 1000.0, r.throughput(), r.percentile(0.5),
+                    r.percentile(0.99), r.percentile(1.0), r.peakThreads(), r.peakHeapBytes() >> 20);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.k3skvmmaster.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The slice of the Kubernetes API the orchestrator uses for nodes: list, get
+ * and delete. Nodes appear when the emulated k3s installer runs on a guest
+ * and report Ready straight away.
+ */
+final class MockKubernetesApi implements AutoCloseable {
+
+    private static final String NODES = "/api/v1/nodes";
+
+    private final Map<String, String> nodes = new ConcurrentHashMap<>();
+    private final AtomicLong resourceVersion = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8, runnable -> {
+        Thread thread = new Thread(runnable, "load-kube-api");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final HttpServer server;
+
+    MockKubernetesApi() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(NODES, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    void registerNode(String name, String ip) {
+        nodes.put(name, ip);
+        resourceVersion.incrementAndGet();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        String name = path.length() > NODES.length() + 1 ? path.substring(NODES.length() + 1) : null;
+
+        try (exchange) {
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> {
+                    if (name == null) {
+                        String items = nodes.entrySet().stream()
+                                .map(node -> node(node.getKey(), node.getValue()))
+                                .collect(Collectors.joining(","));
+                        respond(exchange, 200, String.format(
+                                "{\"apiVersion\":\"v1\",\"kind\":\"NodeList\",\"metadata\":{\"resourceVersion\":\"%d\"},\"items\":[%s]}",
+                                resourceVersion.get(), items));
+                    } else if (nodes.containsKey(name)) {
+                        respond(exchange, 200, node(name, nodes.get(name)));
+                    } else {
+                        respond(exchange, 404, status("Failure", "NotFound", 404));
+                    }
+                }
+                case "DELETE" -> {
+                    if (name != null && nodes.remove(name) != null) {
+                        resourceVersion.incrementAndGet();
+                        respond(exchange, 200, status("Success", null, 200));
+                    } else {
+                        respond(exchange, 404, status("Failure", "NotFound", 404));
+                    }
+                }
+                default -> respond(exchange, 405, status("Failure", "MethodNotAllowed", 405));
+            }
+        }
+    }
+
+    private String node(String name, String ip) {
+        return String.format("""
+                {"apiVersion":"v1","kind":"Node","metadata":{"name":"%1$s","resourceVersion":"%3$d",\
+                "labels":{"kubernetes.io/hostname":"%1$s"}},"status":{"conditions":[{"type":"Ready","status":"True"}],\
+                "addresses":[{"type":"InternalIP","address":"%2$s"},{"type":"Hostname","address":"%1$s"}],\
+                "capacity":{"cpu":"2","memory":"4Gi"},"nodeInfo":{"architecture":"amd64","bootID":"load",\
+                "containerRuntimeVersion":"containerd://1.7","kernelVersion":"6.8.0","kubeProxyVersion":"v1.30.4",\
+                "kubeletVersion":"v1.30.4+k3s1","machineID":"load","operatingSystem":"linux",\
+                "osImage":"Ubuntu 24.04 LTS","systemUUID":"load"}}}""", name, ip, resourceVersion.get());
+    }
+
+    private static String status(String status, String reason, int code) {
+        return String.format("{\"apiVersion\":\"v1\",\"kind\":\"Status\",\"status\":\"%s\"%s,\"code\":%d}", status,
+                reason == null ? "" : ",\"reason\":\"" + reason + "\"", code);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -3,9 +3,11 @@ package com.k3skvmmaster;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableAsync
+@EnableScheduling
 public class K3sKvmApplication {
     public static void main(String[] args) {
         SpringApplication.run(K3sKvmApplication.class, args);
@@ -0,0 +1,43 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class AdmissionConfig {
+
+    @Value("${admission.enabled:true}")
+    private boolean enabled;
+
+    /** Most disk clones or copies running at once on one hypervisor. */
+    @Value("${admission.max-disk:2}")
+    private int maxDisk;
+
+    /** Most virt-customize runs at once on one hypervisor. */
+    @Value("${admission.max-customize:2}")
+    private int maxCustomize;
+
+    @Value("${admission.max-seed:8}")
+    private int maxSeed;
+
+    @Value("${admission.max-define:4}")
+    private int maxDefine;
+
+    @Value("${admission.max-guest:4}")
+    private int maxGuest;
+
+    /** Share of CPU time in I/O wait (0-1) above which limits are lowered. */
+    @Value("${admission.max-io-wait:0.2}")
+    private double maxIoWait;
+
+    /** CPU utilization (0-1) above which limits are lowered. */
+    @Value("${admission.max-cpu-load:0.9}")
+    private double maxCpuLoad;
+
+    /** Free host memory below which limits are lowered. */
+    @Value("${admission.min-free-memory-mb:1024}")
+    private long minFreeMemoryMb;
+}
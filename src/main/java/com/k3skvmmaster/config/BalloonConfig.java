@@ -0,0 +1,65 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class BalloonConfig {
+
+    /** Resize the memory balloon of running VMs to what their guests use. */
+    @Value("${vm.balloon.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * How often guests report memory statistics, in seconds. Written into
+     * new domains; 0 leaves the reports off, which also keeps those VMs out
+     * of ballooning.
+     */
+    @Value("${vm.balloon.stats-period-seconds:5}")
+    private int statsPeriodSeconds;
+
+    /** Smallest balloon target, as a share of a VM's memory. */
+    @Value("${vm.balloon.min-fraction:0.5}")
+    private double minFraction;
+
+    /** Smallest balloon target in MiB, whatever the share above comes to. */
+    @Value("${vm.balloon.min-memory-mb:1024}")
+    private long minMemoryMb;
+
+    /** Memory a guest keeps free on top of what it uses, as a share of its memory. */
+    @Value("${vm.balloon.guest-free-fraction:0.2}")
+    private double guestFreeFraction;
+
+    /** Same as above while the host is under memory pressure. */
+    @Value("${vm.balloon.pressure-guest-free-fraction:0.1}")
+    private double pressureGuestFreeFraction;
+
+    /** The host is under memory pressure below this share of its memory available. */
+    @Value("${vm.balloon.host-pressure-fraction:0.1}")
+    private double hostPressureFraction;
+
+    /** Most a balloon shrinks a VM by in one pass, as a share of its memory. Growth is not limited. */
+    @Value("${vm.balloon.max-step-fraction:0.1}")
+    private double maxStepFraction;
+
+    /** Changes smaller than this are not made. */
+    @Value("${vm.balloon.min-change-mb:64}")
+    private long minChangeMb;
+
+    /** Manage kernel samepage merging on the hypervisors. */
+    @Value("${vm.balloon.ksm.enabled:false}")
+    private boolean ksmEnabled;
+
+    /** KSM runs while the host has less than this share of its memory available. */
+    @Value("${vm.balloon.ksm.run-below-fraction:0.3}")
+    private double ksmRunBelowFraction;
+
+    @Value("${vm.balloon.ksm.pages-to-scan:100}")
+    private int ksmPagesToScan;
+
+    @Value("${vm.balloon.ksm.sleep-ms:20}")
+    private int ksmSleepMs;
+}
@@ -0,0 +1,16 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class ImageConfig {
+    @Value("${images.upload.chunk-size-mb:16}")
+    private int chunkSizeMb;
+
+    @Value("${images.upload.compress:false}")
+    private boolean compress;
+}
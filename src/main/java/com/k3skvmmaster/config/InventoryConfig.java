@@ -0,0 +1,17 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class InventoryConfig {
+
+    @Value("${vm.inventory.resync-interval-ms:300000}")
+    private long resyncIntervalMs;
+
+    @Value("${vm.inventory.max-page-size:500}")
+    private int maxPageSize;
+}
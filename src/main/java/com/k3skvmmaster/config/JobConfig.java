@@ -0,0 +1,34 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class JobConfig {
+    @Value("${jobs.executor.threads-per-hypervisor:4}")
+    private int threadsPerHypervisor;
+
+    @Value("${jobs.executor.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${jobs.retention.max-finished:1000}")
+    private int maxFinishedJobs;
+
+    @Value("${jobs.batch.max-nodes:100}")
+    private int batchMaxNodes;
+
+    @Value("${jobs.batch.disk-concurrency:4}")
+    private int batchDiskConcurrency;
+
+    @Value("${jobs.batch.seed-concurrency:8}")
+    private int batchSeedConcurrency;
+
+    @Value("${jobs.batch.define-concurrency:4}")
+    private int batchDefineConcurrency;
+
+    @Value("${jobs.batch.join-concurrency:8}")
+    private int batchJoinConcurrency;
+}
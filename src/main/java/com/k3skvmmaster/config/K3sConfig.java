@@ -19,4 +19,38 @@ public class K3sConfig {
 
     @Value("${k3s.master.bridge}")
     private String masterBridge;
+
+    /** Kubernetes API server to talk to; empty uses the kubeconfig or in-cluster defaults. */
+    @Value("${k3s.api.url:}")
+    private String apiUrl;
+
+    /** Serve node listings from a watch-backed cache instead of listing on every request. */
+    @Value("${k3s.node-cache.enabled:true}")
+    private boolean nodeCacheEnabled;
+
+    @Value("${k3s.node-cache.stream-timeout-ms:1800000}")
+    private long nodeStreamTimeoutMs;
+
+    /** Install joining nodes from the local artifact cache instead of get.k3s.io. */
+    @Value("${k3s.artifacts.enabled:true}")
+    private boolean artifactsEnabled;
+
+    @Value("${k3s.artifacts.directory:${user.home}/.ryomk/k3s}")
+    private String artifactsDirectory;
+
+    @Value("${k3s.artifacts.arch:amd64}")
+    private String artifactsArch;
+
+    @Value("${k3s.artifacts.release-url:https://github.com/k3s-io/k3s/releases/download}")
+    private String artifactsReleaseUrl;
+
+    @Value("${k3s.artifacts.install-script-url:https://get.k3s.io}")
+    private String artifactsInstallScriptUrl;
+
+    /**
+     * Base URL nodes can reach this server on. When set, nodes fetch artifacts
+     * from the embedded endpoint; otherwise they are pushed over SSH.
+     */
+    @Value("${k3s.artifacts.base-url:${vm.readiness.callback-base-url:}}")
+    private String artifactsBaseUrl;
 }
\ No newline at end of file
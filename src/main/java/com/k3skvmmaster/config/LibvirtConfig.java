@@ -3,6 +3,10 @@ package com.k3skvmmaster.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
+import com.k3skvmmaster.model.dto.CustomizationMode;
+import com.k3skvmmaster.model.dto.DiskMode;
+import com.k3skvmmaster.model.dto.DomainProfile;
+
 import lombok.Data;
 
 @Configuration
@@ -17,4 +21,56 @@ public class LibvirtConfig {
 
     @Value("${vm.images.directory}")
     private String vmImagesDirectory;
+
+    @Value("${vm.storage.pool:default}")
+    private String storagePool;
+
+    @Value("${vm.disk.mode:LINKED}")
+    private DiskMode diskMode;
+
+    @Value("${vm.customization.mode:CLOUD_INIT}")
+    private CustomizationMode customizationMode;
+
+    /** Virtualization type, architecture and emulator written into new domains. */
+    @Value("${vm.domain.type:kvm}")
+    private String domainType;
+
+    @Value("${vm.domain.arch:x86_64}")
+    private String domainArch;
+
+    /** Machine type; empty leaves the choice to libvirt. */
+    @Value("${vm.domain.machine:pc-q35-5.2}")
+    private String domainMachine;
+
+    @Value("${vm.domain.emulator:/usr/bin/qemu-system-x86_64}")
+    private String domainEmulator;
+
+    /** Libvirt network new VMs are attached to. */
+    @Value("${vm.domain.network:${k3s.master.network:kube-net}}")
+    private String domainNetwork;
+
+    /** Profile for requests that do not name one. */
+    @Value("${vm.domain.profile:DEFAULT}")
+    private DomainProfile domainProfile;
+
+    /** Disk I/O mode of the io-heavy profile: native or io_uring. */
+    @Value("${vm.domain.disk-io:native}")
+    private String domainDiskIo;
+
+    /** Disk bus of the io-heavy profile: virtio (virtio-blk) or scsi (virtio-scsi). */
+    @Value("${vm.domain.disk-bus:virtio}")
+    private String domainDiskBus;
+
+    /** Upper bound for disk and NIC queues, which otherwise follow the vCPU count. */
+    @Value("${vm.domain.max-queues:8}")
+    private int domainMaxQueues;
+
+    @Value("${libvirt.keepalive.interval-seconds:5}")
+    private int keepaliveIntervalSeconds;
+
+    @Value("${libvirt.keepalive.count:3}")
+    private int keepaliveCount;
+
+    @Value("${libvirt.connection.max-concurrent-calls:8}")
+    private int maxConcurrentCalls;
 }
@@ -0,0 +1,29 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class NumaConfig {
+
+    /** Pin VMs whose request does not say either way. */
+    @Value("${vm.numa.pinning:false}")
+    private boolean pinning;
+
+    /** Back pinned VMs with hugepages from their NUMA cell. */
+    @Value("${vm.numa.hugepages:true}")
+    private boolean hugepages;
+
+    @Value("${vm.numa.hugepage-size-kib:2048}")
+    private long hugepageSizeKib;
+
+    /**
+     * Host CPUs never given to a VM, as a libvirt cpuset such as {@code 0-1,32-33}.
+     * Pinned VMs run their emulator and iothreads here.
+     */
+    @Value("${vm.numa.reserved-cpus:}")
+    private String reservedCpus;
+}
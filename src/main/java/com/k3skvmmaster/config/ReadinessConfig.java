@@ -0,0 +1,26 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class ReadinessConfig {
+    @Value("${vm.readiness.timeout-seconds:300}")
+    private int timeoutSeconds;
+
+    @Value("${vm.readiness.probe-interval-ms:500}")
+    private long probeIntervalMs;
+
+    @Value("${vm.readiness.probe-timeout-ms:2000}")
+    private long probeTimeoutMs;
+
+    /**
+     * Base URL guests can reach this server on, e.g. {@code http://10.0.0.5:8080}.
+     * When set, cloud-init reports back here once it has finished.
+     */
+    @Value("${vm.readiness.callback-base-url:}")
+    private String callbackBaseUrl;
+}
@@ -0,0 +1,26 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class ScalingConfig {
+
+    /**
+     * Most vCPUs a running VM can be resized to, fixed when it is defined.
+     * 0, or less than a VM starts with, means it cannot grow.
+     */
+    @Value("${vm.scaling.max-vcpu:0}")
+    private int maxVcpu;
+
+    /** Same as above for memory in MiB. */
+    @Value("${vm.scaling.max-memory-mb:0}")
+    private int maxMemoryMb;
+
+    /** Cordon a VM's k3s node while it is resized, unless the request says otherwise. */
+    @Value("${vm.scaling.cordon:false}")
+    private boolean cordon;
+}
@@ -0,0 +1,41 @@
+package com.k3skvmmaster.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import com.k3skvmmaster.model.dto.PlacementPolicy;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class SchedulerConfig {
+
+    /** Hypervisors VMs may be placed on; empty means only the default libvirt URI. */
+    @Value("${scheduler.hypervisors:}")
+    private List<String> hypervisors;
+
+    @Value("${scheduler.policy:SPREAD}")
+    private PlacementPolicy policy;
+
+    /** vCPUs that may be committed per physical CPU. */
+    @Value("${scheduler.cpu-overcommit:4.0}")
+    private double cpuOvercommit;
+
+    /** Memory that may be committed per MiB of host memory. */
+    @Value("${scheduler.memory-overcommit:1.0}")
+    private double memoryOvercommit;
+
+    /** Host memory kept back for the hypervisor itself. */
+    @Value("${scheduler.reserved-memory-mb:2048}")
+    private long reservedMemoryMb;
+
+    /** Hosts busier than this CPU utilization (0-1) are not given new VMs. */
+    @Value("${scheduler.max-cpu-load:0.9}")
+    private double maxCpuLoad;
+
+    @Value("${scheduler.refresh-interval-ms:15000}")
+    private long refreshIntervalMs;
+}
@@ -0,0 +1,49 @@
+package com.k3skvmmaster.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class SshConfig {
+    @Value("${ssh.private.key.path:/root/.ssh/id_rsa}")
+    private String privateKeyPath;
+
+    @Value("${ssh.default.user:jayden}")
+    private String defaultUser;
+
+    @Value("${ssh.default.host:192.168.50.201}")
+    private String defaultHost;
+
+    @Value("${ssh.port:22}")
+    private int port;
+
+    @Value("${ssh.guest.password:ubuntu}")
+    private String guestPassword;
+
+    @Value("${ssh.connect.timeout-ms:30000}")
+    private int connectTimeoutMs;
+
+    @Value("${ssh.pool.keepalive-interval-ms:15000}")
+    private int keepaliveIntervalMs;
+
+    @Value("${ssh.pool.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    @Value("${ssh.pool.max-leases-per-session:4}")
+    private int maxLeasesPerSession;
+
+    @Value("${ssh.pool.lease-timeout-ms:120000}")
+    private long leaseTimeoutMs;
+
+    @Value("${ssh.exec.tail-bytes:65536}")
+    private int execTailBytes;
+
+    @Value("${ssh.exec.spill-directory:${java.io.tmpdir}/ryomk-ssh}")
+    private String execSpillDirectory;
+
+    @Value("${ssh.exec.default-timeout-ms:1800000}")
+    private long execDefaultTimeoutMs;
+}
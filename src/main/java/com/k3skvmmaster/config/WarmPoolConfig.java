@@ -0,0 +1,42 @@
+package com.k3skvmmaster.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@Data
+public class WarmPoolConfig {
+    @Value("${warmpool.enabled:false}")
+    private boolean enabled;
+
+    /** VM sizes kept warm, as {@code <vcpu>x<memoryMiB>} entries. */
+    @Value("${warmpool.sizes:2x4096}")
+    private List<String> sizes;
+
+    @Value("${warmpool.target-per-size:2}")
+    private int targetPerSize;
+
+    /** Hypervisors to keep warm VMs on; empty means the default libvirt URI. */
+    @Value("${warmpool.hypervisors:}")
+    private List<String> hypervisors;
+
+    /** Addresses warm VMs use until they are claimed and re-addressed. */
+    @Value("${warmpool.staging-ips:}")
+    private List<String> stagingIps;
+
+    @Value("${warmpool.gateway:}")
+    private String gateway;
+
+    @Value("${warmpool.system-user:}")
+    private String systemUser;
+
+    @Value("${warmpool.iso-path:/home/%s/cloud-init/%s-cloud-init.iso}")
+    private String isoPath;
+
+    @Value("${warmpool.suspend-idle:true}")
+    private boolean suspendIdle;
+}
@@ -0,0 +1,67 @@
+package com.k3skvmmaster.controller;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.k3skvmmaster.model.common.CommonResponse;
+import com.k3skvmmaster.service.K3sArtifactService;
+
+/**
+ * Serves the local k3s artifact cache to nodes on the LAN.
+ */
+@RestController
+@RequestMapping("/api/v1/artifacts/k3s")
+public class ArtifactController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactController.class);
+
+    @Autowired
+    private K3sArtifactService k3sArtifactService;
+
+    /**
+     * Fills the cache for the configured k3s version and lists what it holds.
+     */
+    @PostMapping
+    public ResponseEntity<?> prefetch() {
+        try {
+            K3sArtifactService.ArtifactSet artifacts = k3sArtifactService.ensureArtifacts();
+            return ResponseEntity.ok(new CommonResponse<>("k3s artifacts cached", artifacts));
+        } catch (Exception e) {
+            logger.error("Failed to cache k3s artifacts: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new CommonResponse<>("Failed to cache k3s artifacts: " + e.getMessage(), false));
+        }
+    }
+
+    @GetMapping("/{version}/{name}")
+    public ResponseEntity<Resource> getArtifact(@PathVariable String version, @PathVariable String name) {
+        Path path;
+        try {
+            path = k3sArtifactService.resolve(version, name);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (!Files.isRegularFile(path) || name.endsWith(".part")) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(new FileSystemResource(path));
+    }
+}
@@ -0,0 +1,69 @@
+package com.k3skvmmaster.controller;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.k3skvmmaster.model.common.CommonResponse;
+import com.k3skvmmaster.model.job.AdmissionStage;
+import com.k3skvmmaster.model.rto.AdmissionResponse;
+import com.k3skvmmaster.model.rto.HypervisorResponse;
+import com.k3skvmmaster.service.AdmissionService;
+import com.k3skvmmaster.service.JobService;
+import com.k3skvmmaster.service.PlacementService;
+import com.k3skvmmaster.util.AdaptiveLimiter;
+
+@RestController
+@RequestMapping("/api/v1/hypervisors")
+public class HypervisorController {
+
+    @Autowired
+    private PlacementService placementService;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    @Autowired
+    private JobService jobService;
+
+    /**
+     * Lists the schedulable hypervisors with their latest capacity sample and
+     * what is committed on each.
+     */
+    @GetMapping
+    public ResponseEntity<CommonResponse<List<HypervisorResponse>>> listHypervisors() {
+        List<HypervisorResponse> hypervisors = List.copyOf(placementService.describe().values());
+        String message = String.format("Successfully retrieved %d hypervisors", hypervisors.size());
+        return ResponseEntity.ok(new CommonResponse<>(message, hypervisors));
+    }
+
+    /**
+     * Lists every hypervisor that has seen provisioning work with its queue
+     * times and the current limit of each stage gate.
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<CommonResponse<List<AdmissionResponse>>> getAdmission() {
+        Map<String, Map<AdmissionStage, AdaptiveLimiter.Stats>> gates = admissionService.getStats();
+        Map<String, JobService.QueueStats> queues = jobService.getQueueStats();
+
+        Set<String> hypervisors = new TreeSet<>(gates.keySet());
+        hypervisors.addAll(queues.keySet());
+
+        List<AdmissionResponse> admission = hypervisors.stream().map(hypervisor -> {
+            AdmissionResponse response = new AdmissionResponse();
+            response.setHypervisor(hypervisor);
+            response.setQueue(queues.get(hypervisor));
+            response.setStages(gates.getOrDefault(hypervisor, Map.of()));
+            return response;
+        }).toList();
+
+        return ResponseEntity.ok(new CommonResponse<>("Admission state retrieved", admission));
+    }
+}
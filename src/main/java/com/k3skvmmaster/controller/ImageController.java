@@ -0,0 +1,104 @@
+package com.k3skvmmaster.controller;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.k3skvmmaster.model.common.CommonResponse;
+import com.k3skvmmaster.model.job.JobType;
+import com.k3skvmmaster.model.job.ProvisioningJob;
+import com.k3skvmmaster.model.rto.JobResponse;
+import com.k3skvmmaster.service.ImageRegistryService;
+import com.k3skvmmaster.service.ImageRegistryService.ImageDescriptor;
+import com.k3skvmmaster.service.JobService;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+@RestController
+@RequestMapping("/api/v1/images")
+public class ImageController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
+
+    @Autowired
+    private ImageRegistryService imageRegistryService;
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    /**
+     * Lists the base image and which hypervisors hold it. While the base
+     * image is still being hashed, e.g. right after it changed, it is
+     * reported as null rather than hashed on the request thread.
+     */
+    @GetMapping
+    public ResponseEntity<?> getImages() {
+        try {
+            Optional<ImageDescriptor> baseImage = imageRegistryService.findBaseImage();
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("baseImage", baseImage.orElse(null));
+            data.put("holdings", imageRegistryService.getHoldings());
+
+            String message = baseImage.isPresent()
+                    ? "Successfully retrieved images"
+                    : "Successfully retrieved images, base image is still being hashed";
+            return ResponseEntity.ok(new CommonResponse<>(message, data));
+        } catch (Exception e) {
+            logger.error("Failed to describe images: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new CommonResponse<>("Failed to describe images: " + e.getMessage(), false));
+        }
+    }
+
+    /**
+     * Rolls the current base image out to the given hypervisors (or the
+     * default one) in the background, as one job on each hypervisor's own
+     * queue. If a queue is full the request is rejected with the jobs
+     * already queued for the hypervisors before it; uploads are idempotent,
+     * so retrying the whole request is safe.
+     */
+    @PostMapping("/distribute")
+    public ResponseEntity<?> distribute(@RequestBody(required = false) List<String> libvirtUris) {
+        List<String> targets = libvirtUris == null || libvirtUris.isEmpty()
+                ? List.of(libvirtUtil.resolveUri(null))
+                : libvirtUris.stream().distinct().toList();
+
+        List<JobResponse> jobs = new ArrayList<>();
+        for (String uri : targets) {
+            try {
+                ProvisioningJob job = jobService.submit(JobType.DISTRIBUTE_IMAGE, uri, uri,
+                        () -> imageRegistryService.ensureImage(uri));
+                jobs.add(JobResponse.from(job));
+            } catch (RejectedExecutionException e) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(jobService.retryAfterSeconds(uri)))
+                        .body(new CommonResponse<>("Provisioning queue for " + uri + " is full, retry later", jobs));
+            }
+        }
+
+        String message = String.format("Image distribution to %d hypervisors accepted", targets.size());
+        ResponseEntity.BodyBuilder response = ResponseEntity.accepted();
+        if (jobs.size() == 1) {
+            response.location(URI.create("/api/v1/jobs/" + jobs.get(0).getId()));
+        }
+        return response.body(new CommonResponse<>(message, jobs));
+    }
+}
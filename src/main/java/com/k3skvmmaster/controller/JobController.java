@@ -0,0 +1,58 @@
+package com.k3skvmmaster.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.k3skvmmaster.model.common.CommonResponse;
+import com.k3skvmmaster.model.job.JobStatus;
+import com.k3skvmmaster.model.rto.JobResponse;
+import com.k3skvmmaster.service.JobService;
+
+@RestController
+@RequestMapping("/api/v1/jobs")
+public class JobController {
+
+    @Autowired
+    private JobService jobService;
+
+    @GetMapping
+    public ResponseEntity<CommonResponse<List<JobResponse>>> listJobs(
+            @RequestParam(required = false) JobStatus status) {
+        List<JobResponse> jobs = jobService.listJobs(status).stream().map(JobResponse::from).toList();
+
+        String message = String.format("Successfully retrieved %d jobs", jobs.size());
+        return ResponseEntity.ok(new CommonResponse<>(message, jobs));
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<CommonResponse<JobResponse>> getJob(@PathVariable String jobId) {
+        return jobService.getJob(jobId)
+                .map(job -> ResponseEntity.ok(new CommonResponse<>("Job found", JobResponse.from(job))))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new CommonResponse<>("Job not found: " + jobId, null)));
+    }
+
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<CommonResponse<Boolean>> cancelJob(@PathVariable String jobId) {
+        if (jobService.getJob(jobId).isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new CommonResponse<>("Job not found: " + jobId, false));
+        }
+
+        if (!jobService.cancel(jobId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new CommonResponse<>("Job already finished: " + jobId, false));
+        }
+
+        return ResponseEntity.ok(new CommonResponse<>("Job cancelled", true));
+    }
+}
@@ -1,28 +1,45 @@
 package com.k3skvmmaster.controller;
 
-import java.util.List;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.k3skvmmaster.model.common.CommonResponse;
+import com.k3skvmmaster.model.dto.BatchNodeRequest;
 import com.k3skvmmaster.model.dto.CreateNodeRequest;
+import com.k3skvmmaster.model.job.JobType;
+import com.k3skvmmaster.model.job.ProvisioningBatch;
+import com.k3skvmmaster.model.job.ProvisioningJob;
+import com.k3skvmmaster.model.rto.BatchResponse;
+import com.k3skvmmaster.model.rto.JobResponse;
+import com.k3skvmmaster.service.BatchProvisioningService;
+import com.k3skvmmaster.service.JobService;
 import com.k3skvmmaster.service.K3sService;
+import com.k3skvmmaster.service.NodeCacheService;
+import com.k3skvmmaster.service.PlacementService;
 import com.k3skvmmaster.service.VmService;
+import com.k3skvmmaster.service.WarmPoolService;
 import com.k3skvmmaster.util.mapper.KubernetesDataMapper;
 
-import io.kubernetes.client.openapi.models.V1Node;
-import io.kubernetes.client.openapi.models.V1NodeList;
+import jakarta.validation.Valid;
 
 @RestController
 @RequestMapping("/api/v1/clusters")
@@ -36,6 +53,21 @@ public class K3sController {
     @Autowired
     private VmService vmService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private WarmPoolService warmPoolService;
+
+    @Autowired
+    private BatchProvisioningService batchProvisioningService;
+
+    @Autowired
+    private NodeCacheService nodeCacheService;
+
+    @Autowired
+    private PlacementService placementService;
+
     @Autowired
     private KubernetesDataMapper kMapper;
 
@@ -66,12 +98,13 @@ public class K3sController {
     @GetMapping("/nodes")
     public ResponseEntity<?> getNodes() {
         try {
-            V1NodeList nodes = k3sService.getNodes();
-            List<V1Node> nodeList = nodes.getItems();
+            Map<String, Map<String, String>> nodes = nodeCacheService.isSynced()
+                    ? nodeCacheService.getNodes()
+                    : kMapper.mapNodesToRto(k3sService.getNodes());
 
-            String message = String.format("Successfully retrieved %d nodes", nodeList.toArray().length);
+            String message = String.format("Successfully retrieved %d nodes", nodes.size());
 
-            return ResponseEntity.ok(new CommonResponse<>(message, kMapper.mapNodesToRto(nodes)));
+            return ResponseEntity.ok(new CommonResponse<>(message, nodes));
         } catch (Exception e) {
             logger.error("Failed to join cluster: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -79,25 +112,90 @@ public class K3sController {
         }
     }
 
+    /**
+     * Server-sent events for node changes: a {@code snapshot} event with all
+     * nodes, then one event per added, updated or deleted node.
+     */
+    @GetMapping(path = "/nodes/watch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter watchNodes() {
+        return nodeCacheService.subscribe();
+    }
+
     @PutMapping("/node")
     public ResponseEntity<?> createNode(@RequestBody CreateNodeRequest request) {
         logger.info("Recieved node request: {}", request.toString());
 
+        String hypervisor;
         try {
-            vmService.createVm(request);
-            k3sService.joinCluster(request.getIpAddress());
-
-            String message = String.format("%s has successfully joined cluster", request.getName());
-            logger.info(message);
+            hypervisor = placementService.place(request);
+        } catch (PlacementService.AlreadyPlacedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new CommonResponse<>(e.getMessage(), false));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new CommonResponse<>(e.getMessage(), false));
+        }
 
-            return ResponseEntity.ok(new CommonResponse<>(message, true));
+        try {
+            ProvisioningJob job = jobService.submit(JobType.CREATE_NODE, request.getName(), hypervisor,
+                    placementService.releasingAfter(request.getName(), () -> {
+                        if (warmPoolService.claim(request).isEmpty()) {
+                            vmService.createVm(request);
+                        }
+                        k3sService.joinNode(request, hypervisor);
+
+                        String message = String.format("%s has successfully joined cluster", request.getName());
+                        logger.info(message);
+                        return message;
+                    }));
+
+            String message = String.format("Node creation for %s accepted", request.getName());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/jobs/" + job.getId()))
+                    .body(new CommonResponse<>(message, JobResponse.from(job)));
+        } catch (RejectedExecutionException e) {
+            placementService.release(request.getName());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(jobService.retryAfterSeconds(hypervisor)))
+                    .body(new CommonResponse<>("Provisioning queue is full, retry later", false));
         } catch (Exception e) {
+            placementService.release(request.getName());
             logger.error("Failed to join cluster: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new CommonResponse<>("Failed to join cluster: " + e.getMessage(), false));
         }
     }
 
+    @PostMapping("/nodes:batch")
+    public ResponseEntity<?> createNodes(@Valid @RequestBody BatchNodeRequest request) {
+        try {
+            ProvisioningBatch batch = batchProvisioningService.submit(request.getNodes());
+
+            String message = String.format("Batch creation of %d nodes accepted", request.getNodes().size());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/clusters/nodes:batch/" + batch.getId()))
+                    .body(new CommonResponse<>(message, BatchResponse.from(batch)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new CommonResponse<>(e.getMessage(), false));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(batchProvisioningService.retryAfterSeconds()))
+                    .body(new CommonResponse<>("Provisioning queue is full, retry later", false));
+        } catch (PlacementService.AlreadyPlacedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new CommonResponse<>(e.getMessage(), false));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new CommonResponse<>(e.getMessage(), false));
+        }
+    }
+
+    @GetMapping("/nodes:batch/{batchId}")
+    public ResponseEntity<CommonResponse<BatchResponse>> getBatch(@PathVariable String batchId) {
+        return batchProvisioningService.getBatch(batchId)
+                .map(batch -> ResponseEntity.ok(new CommonResponse<>("Batch found", BatchResponse.from(batch))))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new CommonResponse<>("Batch not found: " + batchId, null)));
+    }
+
     @DeleteMapping("/node")
     public ResponseEntity<CommonResponse<Boolean>> deleteNode(@RequestParam String nodeName,
             @RequestParam(required = false) String libvirtUri) {
@@ -1,11 +1,19 @@
 package com.k3skvmmaster.controller;
 
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.libvirt.LibvirtException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -13,9 +21,24 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.k3skvmmaster.config.InventoryConfig;
+import com.k3skvmmaster.model.common.CommonResponse;
+import com.k3skvmmaster.model.common.PageResponse;
 import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.model.dto.VmResizeRequest;
+import com.k3skvmmaster.model.dto.VmState;
+import com.k3skvmmaster.model.job.JobType;
+import com.k3skvmmaster.model.job.ProvisioningJob;
+import com.k3skvmmaster.model.rto.JobResponse;
+import com.k3skvmmaster.model.rto.VmInventoryResponse;
 import com.k3skvmmaster.model.rto.VmResponse;
+import com.k3skvmmaster.service.JobService;
+import com.k3skvmmaster.service.PlacementService;
+import com.k3skvmmaster.service.VmInventoryService;
+import com.k3skvmmaster.service.VmReadinessService;
+import com.k3skvmmaster.service.VmScalingService;
 import com.k3skvmmaster.service.VmService;
+import com.k3skvmmaster.service.WarmPoolService;
 
 import jakarta.validation.Valid;
 
@@ -28,18 +51,136 @@ public class VmController {
     @Autowired
     private VmService vmService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private WarmPoolService warmPoolService;
+
+    @Autowired
+    private VmReadinessService vmReadinessService;
+
+    @Autowired
+    private VmInventoryService vmInventoryService;
+
+    @Autowired
+    private InventoryConfig inventoryConfig;
+
+    @Autowired
+    private PlacementService placementService;
+
+    @Autowired
+    private VmScalingService vmScalingService;
+
+    /**
+     * Lists VMs from the inventory, optionally filtered by state, hypervisor
+     * URI and domain name prefix.
+     */
+    @GetMapping
+    public ResponseEntity<?> listVms(@RequestParam(required = false) VmState state,
+            @RequestParam(required = false) String hypervisor,
+            @RequestParam(required = false) String name,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        if (page < 0 || size < 1 || size > inventoryConfig.getMaxPageSize()) {
+            return ResponseEntity.badRequest().body(new CommonResponse<>(
+                    "page must be at least 0 and size between 1 and " + inventoryConfig.getMaxPageSize(), false));
+        }
+
+        try {
+            PageResponse<VmInventoryResponse> vms = vmInventoryService.list(state, hypervisor, name, page, size);
+            return ResponseEntity.ok(new CommonResponse<>("VMs retrieved successfully", vms));
+        } catch (LibvirtException e) {
+            logger.error("Failed to list VMs: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new CommonResponse<>("Failed to list VMs: " + e.getMessage(), false));
+        }
+    }
+
     @PostMapping
     public ResponseEntity<?> createVm(@Valid @RequestBody VmRequest request) throws Exception {
+        String hypervisor;
+        try {
+            hypervisor = placementService.place(request);
+        } catch (PlacementService.AlreadyPlacedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new CommonResponse<>(e.getMessage(), false));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new CommonResponse<>(e.getMessage(), false));
+        }
+
         try {
-            VmResponse response = vmService.createVm(request);
-            return ResponseEntity.ok(response);
+            ProvisioningJob job = jobService.submit(JobType.CREATE_VM, request.getName(), hypervisor,
+                    placementService.releasingAfter(request.getName(), () -> {
+                        Optional<VmResponse> warm = warmPoolService.claim(request);
+                        return warm.isPresent() ? warm.get() : vmService.createVm(request);
+                    }));
+
+            String message = String.format("VM creation for %s accepted", request.getName());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/jobs/" + job.getId()))
+                    .body(new CommonResponse<>(message, JobResponse.from(job)));
+        } catch (RejectedExecutionException e) {
+            placementService.release(request.getName());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(jobService.retryAfterSeconds(hypervisor)))
+                    .body(new CommonResponse<>("Provisioning queue is full, retry later", false));
         } catch (Exception e) {
+            placementService.release(request.getName());
             logger.error("Failed to get join token: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Failed to get join token: " + e.getMessage());
         }
     }
 
+    @GetMapping("/{vmName}")
+    public ResponseEntity<CommonResponse<VmResponse>> getVm(@PathVariable String vmName) {
+        return vmService.getVm(vmName)
+                .map(vm -> ResponseEntity.ok(new CommonResponse<>("VM found", vm)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new CommonResponse<>("VM not found: " + vmName, null)));
+    }
+
+    /**
+     * Resizes a running VM in place, up to the maximums it was defined with,
+     * instead of reprovisioning it.
+     */
+    @PatchMapping("/{vmName}")
+    public ResponseEntity<?> resizeVm(@PathVariable String vmName,
+            @Valid @RequestBody VmResizeRequest request) {
+        if (request.getVcpu() == null && request.getMemory() == null) {
+            return ResponseEntity.badRequest().body(new CommonResponse<>("vcpu or memory is required", null));
+        }
+
+        try {
+            return vmScalingService.resize(vmName, request)
+                    .map(vm -> ResponseEntity.ok(new CommonResponse<>("VM resized", vm)))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(new CommonResponse<>("VM not found: " + vmName, null)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new CommonResponse<>(e.getMessage(), null));
+        } catch (LibvirtException e) {
+            logger.error("Failed to resize VM {}: {}", vmName, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new CommonResponse<>("Failed to resize VM: " + e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("Failed to resize VM {}: {}", vmName, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new CommonResponse<>("Failed to resize VM: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * Called by cloud-init's phone-home module from inside the guest once it
+     * has finished booting, with the token its user-data was seeded with.
+     */
+    @PostMapping("/{vmName}/ready")
+    public ResponseEntity<Void> vmReady(@PathVariable String vmName,
+            @RequestParam(required = false) String token) {
+        boolean waiting = vmReadinessService.signalReady(vmName, token, "cloud-init phone-home");
+        return waiting ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
     @DeleteMapping("/{vmName}")
     public ResponseEntity<Void> deleteVm(@PathVariable String vmName,
             @RequestParam(required = false) String libvirtUri) {
@@ -0,0 +1,72 @@
+package com.k3skvmmaster.model.domain;
+
+import java.util.List;
+
+/**
+ * The parts of a libvirt domain this application sets, as written by
+ * {@link com.k3skvmmaster.util.DomainXmlWriter}. Null attributes are left
+ * out of the XML, so libvirt applies its own default.
+ *
+ * @param maxMemoryMib memory the VM can be grown to while running; {@code memoryMib} is what it starts with
+ * @param maxVcpu   vCPUs the VM can be grown to while running
+ * @param iothreads number of iothreads to create; 0 for none
+ * @param machine   machine type, or null to let libvirt choose
+ * @param headless  leave out graphics and input devices; the serial console stays
+ * @param numa      CPU pinning and memory placement, or null to let the host schedule freely
+ * @param balloonStatsPeriod seconds between guest memory reports, or null for none
+ */
+public record DomainDefinition(
+        String type,
+        String name,
+        int memoryMib,
+        int maxMemoryMib,
+        int vcpu,
+        int maxVcpu,
+        int iothreads,
+        String arch,
+        String machine,
+        String emulator,
+        List<Disk> disks,
+        List<Controller> controllers,
+        List<NetworkInterface> interfaces,
+        boolean headless,
+        NumaPlacement numa,
+        Integer balloonStatsPeriod) {
+
+    /**
+     * A file-backed disk.
+     *
+     * @param device {@code disk} or {@code cdrom}
+     * @param bus    {@code virtio}, {@code scsi} or {@code sata}
+     */
+    public record Disk(String device, String source, String targetDev, String bus, DiskDriver driver,
+            boolean readonly) {
+    }
+
+    /**
+     * The qemu driver of a disk.
+     *
+     * @param iothread iothread to run the disk on, numbered from 1
+     * @param queues   virtio-blk queues
+     */
+    public record DiskDriver(String format, String cache, String io, String discard, String detectZeroes,
+            Integer iothread, Integer queues) {
+
+        public static DiskDriver of(String format) {
+            return new DiskDriver(format, null, null, null, null, null, null);
+        }
+    }
+
+    /** A controller such as {@code virtio-scsi}, with its driver queues and iothread. */
+    public record Controller(String type, int index, String model, Integer queues, Integer iothread) {
+    }
+
+    /**
+     * A NIC attached to a libvirt network.
+     *
+     * @param driver {@code vhost} or {@code qemu}; null for the default
+     * @param queues number of queue pairs; only used with a driver
+     */
+    public record NetworkInterface(String network, String model, String driver, Integer queues) {
+    }
+}
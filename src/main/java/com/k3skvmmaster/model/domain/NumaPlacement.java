@@ -0,0 +1,16 @@
+package com.k3skvmmaster.model.domain;
+
+import java.util.List;
+
+/**
+ * Where a pinned VM runs on its host. The guest sees a single NUMA cell
+ * with one socket, backed by one host cell.
+ *
+ * @param hostCell          host NUMA cell the VM's CPUs and memory come from
+ * @param vcpuPins          host CPU of each vCPU, by vCPU index
+ * @param housekeepingCpuset host CPUs for the emulator and iothreads
+ * @param hugepageSizeKib   page size backing guest memory, or null for regular pages
+ */
+public record NumaPlacement(int hostCell, List<Integer> vcpuPins, String housekeepingCpuset, int cores,
+        int threads, Long hugepageSizeKib) {
+}
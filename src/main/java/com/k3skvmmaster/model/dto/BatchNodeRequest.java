@@ -0,0 +1,14 @@
+package com.k3skvmmaster.model.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+@Data
+public class BatchNodeRequest {
+    @NotEmpty
+    @Valid
+    private List<CreateNodeRequest> nodes;
+}
@@ -0,0 +1,8 @@
+package com.k3skvmmaster.model.dto;
+
+public enum CustomizationMode {
+    /** Hostname, passwords and SSH keys are applied by cloud-init on first boot. */
+    CLOUD_INIT,
+    /** The disk is edited offline with virt-customize before the first boot. */
+    VIRT_CUSTOMIZE
+}
@@ -0,0 +1,8 @@
+package com.k3skvmmaster.model.dto;
+
+public enum DiskMode {
+    /** qcow2 overlay backed by the shared base volume. */
+    LINKED,
+    /** Independent copy of the base volume. */
+    FULL
+}
@@ -0,0 +1,18 @@
+package com.k3skvmmaster.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+public enum DomainProfile {
+    /** Host-default disk caching, single-queue networking and a VNC console. */
+    DEFAULT,
+    /** Uncached, asynchronous disk I/O on a dedicated iothread with multiqueue and discard, headless. */
+    IO_HEAVY,
+    /** Multiqueue vhost-net networking, headless. */
+    NET_HEAVY;
+
+    /** Accepts both {@code IO_HEAVY} and {@code io-heavy}. */
+    @JsonCreator
+    public static DomainProfile fromValue(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
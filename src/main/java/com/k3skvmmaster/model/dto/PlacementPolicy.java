@@ -0,0 +1,11 @@
+package com.k3skvmmaster.model.dto;
+
+/**
+ * How the scheduler picks among hypervisors that have room for a VM.
+ */
+public enum PlacementPolicy {
+    /** Fill the fullest host first, keeping other hosts free for large VMs. */
+    BINPACK,
+    /** Use the emptiest host, spreading load and failure impact. */
+    SPREAD
+}
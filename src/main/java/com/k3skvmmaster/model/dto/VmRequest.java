@@ -37,5 +37,13 @@ public class VmRequest extends CommonRequest {
     private String user = "ubuntu";
 
     private String libvirtUri;
+    private DiskMode diskMode;
+    private CustomizationMode customizationMode;
+    private DomainProfile profile;
+    /** Dedicated host cores and memory from one NUMA cell; null follows vm.numa.pinning. */
+    private Boolean numaPinning;
+    /** Most vCPUs and MiB the VM can be resized to while running; null follows vm.scaling.*. */
+    private Integer maxVcpu;
+    private Integer maxMemory;
     private Boolean installNfsDeps = true;
 }
\ No newline at end of file
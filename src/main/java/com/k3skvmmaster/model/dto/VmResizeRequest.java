@@ -0,0 +1,17 @@
+package com.k3skvmmaster.model.dto;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+/** New size for a running VM; null leaves a value as it is. */
+@Data
+public class VmResizeRequest {
+    @Min(1)
+    private Integer vcpu;
+
+    @Min(512)
+    private Integer memory;
+
+    /** Cordon the VM's k3s node during the change; null follows vm.scaling.cordon. */
+    private Boolean cordon;
+}
@@ -0,0 +1,10 @@
+package com.k3skvmmaster.model.dto;
+
+public enum VmState {
+    RUNNING,
+    PAUSED,
+    SHUTOFF,
+    CRASHED,
+    PMSUSPENDED,
+    OTHER
+}
@@ -0,0 +1,12 @@
+package com.k3skvmmaster.model.entity;
+
+/**
+ * Provisioning stages that leave a checkpoint, in pipeline order.
+ */
+public enum CheckpointStage {
+    DISK,
+    SEED,
+    DEFINE,
+    BOOT,
+    GUEST
+}
@@ -0,0 +1,38 @@
+package com.k3skvmmaster.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "hypervisors")
+@Getter
+@Setter
+@NoArgsConstructor
+public class HypervisorEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String uri;
+
+    private Integer cpus;
+    private Long memoryMb;
+    private Long freeMemoryMb;
+
+    /** CPU utilization between the last two samples, 0 to 1. */
+    private Double cpuLoad;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime lastSeenAt;
+}
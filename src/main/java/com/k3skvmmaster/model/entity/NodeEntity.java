@@ -0,0 +1,44 @@
+package com.k3skvmmaster.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A cluster node that was joined through this service.
+ */
+@Entity
+@Table(name = "nodes", indexes = {
+        @Index(name = "idx_nodes_vm", columnList = "vmName"),
+        @Index(name = "idx_nodes_hypervisor", columnList = "hypervisorUri")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class NodeEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String name;
+
+    @Column(nullable = false)
+    private String vmName;
+
+    private String hypervisorUri;
+    private String ipAddress;
+    private String role;
+    private String k3sVersion;
+    private LocalDateTime joinedAt;
+}
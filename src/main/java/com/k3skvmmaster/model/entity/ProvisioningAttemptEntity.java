@@ -0,0 +1,56 @@
+package com.k3skvmmaster.model.entity;
+
+import java.time.LocalDateTime;
+
+import com.k3skvmmaster.model.job.JobStatus;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One run of provisioning a VM, kept after the VM itself is deleted.
+ */
+@Entity
+@Table(name = "provisioning_attempts", indexes = {
+        @Index(name = "idx_attempts_vm", columnList = "vmName, startedAt"),
+        @Index(name = "idx_attempts_status", columnList = "status")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProvisioningAttemptEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String vmName;
+
+    private String hypervisorUri;
+
+    @Enumerated(EnumType.STRING)
+    private JobStatus status;
+
+    private String stage;
+
+    @Column(length = 2048)
+    private String message;
+
+    @Column(length = 1024)
+    private String stageTimings;
+
+    private Long totalMs;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,55 @@
+package com.k3skvmmaster.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A provisioning stage that completed for a VM, with what is needed to check
+ * that its result is still there before the stage is skipped on a retry.
+ * {@code requestFingerprint} ties it to the exact request it was made for.
+ */
+@Entity
+@Table(name = "provisioning_checkpoints",
+        uniqueConstraints = @UniqueConstraint(name = "uk_checkpoints_vm_stage", columnNames = { "vmName", "stage" }))
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProvisioningCheckpointEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String vmName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CheckpointStage stage;
+
+    @Column(nullable = false)
+    private String hypervisorUri;
+
+    @Column(nullable = false)
+    private String requestFingerprint;
+
+    private String diskPath;
+    private Long diskCapacity;
+    private String diskBackingPath;
+    private String isoPath;
+    private String isoSha256;
+    private String domainUuid;
+    private LocalDateTime recordedAt;
+}
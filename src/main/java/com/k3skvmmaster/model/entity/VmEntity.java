@@ -0,0 +1,63 @@
+package com.k3skvmmaster.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A VM this service provisioned. {@code name} is the name callers use;
+ * {@code domainName} is the libvirt domain behind it, which differs for VMs
+ * claimed from the warm pool.
+ */
+@Entity
+@Table(name = "vms", indexes = {
+        @Index(name = "idx_vms_domain", columnList = "hypervisorUri, domainName"),
+        @Index(name = "idx_vms_status", columnList = "status"),
+        @Index(name = "idx_vms_ip", columnList = "ipAddress")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class VmEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String name;
+
+    @Column(nullable = false)
+    private String domainName;
+
+    @Column(nullable = false)
+    private String hypervisorUri;
+
+    private String uuid;
+    private String ipAddress;
+    private Integer vcpu;
+    private Integer memory;
+    private String diskPath;
+    private String seedIsoPath;
+    private String k3sRole;
+
+    @Enumerated(EnumType.STRING)
+    private VmStatus status;
+
+    /** The last provisioning stage that completed. */
+    private String stage;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,7 @@
+package com.k3skvmmaster.model.entity;
+
+public enum VmStatus {
+    PROVISIONING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,18 @@
+package com.k3skvmmaster.model.job;
+
+/**
+ * The provisioning steps that are admitted per hypervisor, each against its
+ * own concurrency limit.
+ */
+public enum AdmissionStage {
+    /** Cloning or copying the base volume. */
+    DISK,
+    /** Offline virt-customize of the new disk. */
+    CUSTOMIZE,
+    /** Building and uploading the cloud-init seed ISO. */
+    SEED,
+    /** Defining and starting the domain. */
+    DEFINE,
+    /** Post-boot setup inside the guest. */
+    GUEST
+}
@@ -0,0 +1,65 @@
+package com.k3skvmmaster.model.job;
+
+import java.time.LocalDateTime;
+
+import com.k3skvmmaster.model.dto.CreateNodeRequest;
+import com.k3skvmmaster.util.StageTimer;
+
+import lombok.Getter;
+
+/**
+ * Progress of a single node within a ProvisioningBatch. Stages advance on
+ * pipeline threads while readers poll, so mutable fields are volatile.
+ */
+@Getter
+public class BatchNode {
+    private final CreateNodeRequest request;
+    private final StageTimer timer;
+
+    private volatile BatchStage stage = BatchStage.QUEUED;
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile String message;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public BatchNode(CreateNodeRequest request, StageTimer timer) {
+        this.request = request;
+        this.timer = timer;
+    }
+
+    public String getName() {
+        return request.getName();
+    }
+
+    public synchronized void enter(BatchStage stage) {
+        if (status.isTerminal()) {
+            return;
+        }
+        if (status == JobStatus.QUEUED) {
+            status = JobStatus.RUNNING;
+            startedAt = LocalDateTime.now();
+        }
+        this.stage = stage;
+    }
+
+    public synchronized void markSucceeded(String message) {
+        if (status.isTerminal()) {
+            return;
+        }
+        stage = BatchStage.DONE;
+        finish(JobStatus.SUCCEEDED, message);
+    }
+
+    public synchronized void markFailed(String message) {
+        if (status.isTerminal()) {
+            return;
+        }
+        finish(JobStatus.FAILED, message);
+    }
+
+    private void finish(JobStatus status, String message) {
+        this.status = status;
+        this.message = message;
+        this.finishedAt = LocalDateTime.now();
+    }
+}
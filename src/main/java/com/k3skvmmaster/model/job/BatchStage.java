@@ -0,0 +1,14 @@
+package com.k3skvmmaster.model.job;
+
+/**
+ * Pipeline stages a node in a batch passes through, in order.
+ */
+public enum BatchStage {
+    QUEUED,
+    DISK,
+    SEED,
+    DEFINE,
+    READINESS,
+    JOIN,
+    DONE
+}
@@ -0,0 +1,8 @@
+package com.k3skvmmaster.model.job;
+
+public enum JobType {
+    CREATE_VM,
+    CREATE_NODE,
+    DISTRIBUTE_IMAGE,
+    WARM_POOL_BUILD
+}
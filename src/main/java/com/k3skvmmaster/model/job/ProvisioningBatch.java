@@ -0,0 +1,43 @@
+package com.k3skvmmaster.model.job;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.Getter;
+
+/**
+ * A set of nodes provisioned together through the staged pipeline. The batch
+ * is finished once every node has succeeded or failed.
+ */
+@Getter
+public class ProvisioningBatch {
+    private final String id = UUID.randomUUID().toString();
+    private final List<BatchNode> nodes;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+
+    private volatile LocalDateTime finishedAt;
+
+    public ProvisioningBatch(List<BatchNode> nodes) {
+        this.nodes = List.copyOf(nodes);
+    }
+
+    public JobStatus getStatus() {
+        if (nodes.stream().anyMatch(node -> !node.getStatus().isTerminal())) {
+            return nodes.stream().allMatch(node -> node.getStatus() == JobStatus.QUEUED)
+                    ? JobStatus.QUEUED
+                    : JobStatus.RUNNING;
+        }
+        return nodes.stream().allMatch(node -> node.getStatus() == JobStatus.SUCCEEDED)
+                ? JobStatus.SUCCEEDED
+                : JobStatus.FAILED;
+    }
+
+    public long count(JobStatus status) {
+        return nodes.stream().filter(node -> node.getStatus() == status).count();
+    }
+
+    public void markFinished() {
+        finishedAt = LocalDateTime.now();
+    }
+}
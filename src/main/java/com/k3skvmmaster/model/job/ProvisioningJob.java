@@ -0,0 +1,78 @@
+package com.k3skvmmaster.model.job;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+import lombok.Getter;
+
+/**
+ * A unit of provisioning work tracked by the JobService. State transitions
+ * happen on the executor thread while readers poll from request threads, so
+ * every mutable field is volatile.
+ */
+@Getter
+public class ProvisioningJob {
+    private final String id = UUID.randomUUID().toString();
+    private final JobType type;
+    private final String target;
+    private final String hypervisor;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile String message;
+    private volatile Object result;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    private volatile Future<?> future;
+
+    public ProvisioningJob(JobType type, String target, String hypervisor) {
+        this.type = type;
+        this.target = target;
+        this.hypervisor = hypervisor;
+    }
+
+    public void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    public synchronized boolean markRunning() {
+        if (status != JobStatus.QUEUED) {
+            return false;
+        }
+        status = JobStatus.RUNNING;
+        startedAt = LocalDateTime.now();
+        return true;
+    }
+
+    public synchronized void markSucceeded(Object result) {
+        if (status.isTerminal()) {
+            return;
+        }
+        this.result = result;
+        finish(JobStatus.SUCCEEDED, "Completed");
+    }
+
+    public synchronized void markFailed(String message) {
+        if (status.isTerminal()) {
+            return;
+        }
+        finish(JobStatus.FAILED, message);
+    }
+
+    public synchronized boolean markCancelled() {
+        if (status.isTerminal()) {
+            return false;
+        }
+        finish(JobStatus.CANCELLED, "Cancelled");
+        return true;
+    }
+
+    // status goes last: readers that see a terminal status without holding the lock also see finishedAt
+    private void finish(JobStatus status, String message) {
+        this.message = message;
+        this.finishedAt = LocalDateTime.now();
+        this.status = status;
+    }
+}
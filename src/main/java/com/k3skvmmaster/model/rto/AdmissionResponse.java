@@ -0,0 +1,20 @@
+package com.k3skvmmaster.model.rto;
+
+import java.util.Map;
+
+import com.k3skvmmaster.model.job.AdmissionStage;
+import com.k3skvmmaster.service.JobService;
+import com.k3skvmmaster.util.AdaptiveLimiter;
+
+import lombok.Data;
+
+/**
+ * How busy one hypervisor's job queue is and where each of its stage gates
+ * currently stands.
+ */
+@Data
+public class AdmissionResponse {
+    private String hypervisor;
+    private JobService.QueueStats queue;
+    private Map<AdmissionStage, AdaptiveLimiter.Stats> stages;
+}
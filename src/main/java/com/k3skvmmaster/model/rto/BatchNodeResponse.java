@@ -0,0 +1,35 @@
+package com.k3skvmmaster.model.rto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import com.k3skvmmaster.model.job.BatchNode;
+import com.k3skvmmaster.model.job.BatchStage;
+import com.k3skvmmaster.model.job.JobStatus;
+
+import lombok.Data;
+
+@Data
+public class BatchNodeResponse {
+    private String name;
+    private String ipAddress;
+    private BatchStage stage;
+    private JobStatus status;
+    private String message;
+    private Map<String, Long> stageTimings;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public static BatchNodeResponse from(BatchNode node) {
+        BatchNodeResponse response = new BatchNodeResponse();
+        response.setName(node.getName());
+        response.setIpAddress(node.getRequest().getIpAddress());
+        response.setStage(node.getStage());
+        response.setStatus(node.getStatus());
+        response.setMessage(node.getMessage());
+        response.setStageTimings(node.getTimer().getTimings());
+        response.setStartedAt(node.getStartedAt());
+        response.setFinishedAt(node.getFinishedAt());
+        return response;
+    }
+}
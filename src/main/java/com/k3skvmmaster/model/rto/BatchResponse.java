@@ -0,0 +1,34 @@
+package com.k3skvmmaster.model.rto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.k3skvmmaster.model.job.JobStatus;
+import com.k3skvmmaster.model.job.ProvisioningBatch;
+
+import lombok.Data;
+
+@Data
+public class BatchResponse {
+    private String id;
+    private JobStatus status;
+    private int total;
+    private long succeeded;
+    private long failed;
+    private List<BatchNodeResponse> nodes;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+
+    public static BatchResponse from(ProvisioningBatch batch) {
+        BatchResponse response = new BatchResponse();
+        response.setId(batch.getId());
+        response.setStatus(batch.getStatus());
+        response.setTotal(batch.getNodes().size());
+        response.setSucceeded(batch.count(JobStatus.SUCCEEDED));
+        response.setFailed(batch.count(JobStatus.FAILED));
+        response.setNodes(batch.getNodes().stream().map(BatchNodeResponse::from).toList());
+        response.setCreatedAt(batch.getCreatedAt());
+        response.setFinishedAt(batch.getFinishedAt());
+        return response;
+    }
+}
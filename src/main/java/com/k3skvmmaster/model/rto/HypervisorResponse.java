@@ -0,0 +1,20 @@
+package com.k3skvmmaster.model.rto;
+
+import java.time.LocalDateTime;
+
+import lombok.Data;
+
+@Data
+public class HypervisorResponse {
+    private String uri;
+    private boolean reachable;
+    private Integer cpus;
+    private Long memoryMb;
+    private Long freeMemoryMb;
+    private Double cpuLoad;
+    private Double ioWait;
+    private long committedVcpu;
+    private long committedMemoryMb;
+    private long vms;
+    private LocalDateTime sampledAt;
+}
@@ -0,0 +1,38 @@
+package com.k3skvmmaster.model.rto;
+
+import java.time.LocalDateTime;
+
+import com.k3skvmmaster.model.job.JobStatus;
+import com.k3skvmmaster.model.job.JobType;
+import com.k3skvmmaster.model.job.ProvisioningJob;
+
+import lombok.Data;
+
+@Data
+public class JobResponse {
+    private String id;
+    private JobType type;
+    private String target;
+    private String hypervisor;
+    private JobStatus status;
+    private String message;
+    private Object result;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public static JobResponse from(ProvisioningJob job) {
+        JobResponse response = new JobResponse();
+        response.setId(job.getId());
+        response.setType(job.getType());
+        response.setTarget(job.getTarget());
+        response.setHypervisor(job.getHypervisor());
+        response.setStatus(job.getStatus());
+        response.setMessage(job.getMessage());
+        response.setResult(job.getResult());
+        response.setCreatedAt(job.getCreatedAt());
+        response.setStartedAt(job.getStartedAt());
+        response.setFinishedAt(job.getFinishedAt());
+        return response;
+    }
+}
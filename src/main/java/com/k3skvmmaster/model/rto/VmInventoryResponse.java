@@ -0,0 +1,20 @@
+package com.k3skvmmaster.model.rto;
+
+import java.time.LocalDateTime;
+
+import com.k3skvmmaster.model.dto.VmState;
+
+import lombok.Data;
+
+@Data
+public class VmInventoryResponse {
+    private String name;
+    private String domainName;
+    private String uuid;
+    private VmState state;
+    private String hypervisor;
+    private String ipAddress;
+    private String k3sRole;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -1,6 +1,7 @@
 package com.k3skvmmaster.model.rto;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 import lombok.Data;
 
@@ -13,4 +14,5 @@ public class VmResponse {
     private Integer memory;
     private LocalDateTime createdAt;
     private String k3sRole;
+    private Map<String, Long> stageTimings;
 }
\ No newline at end of file
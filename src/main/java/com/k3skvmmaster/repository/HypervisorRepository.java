@@ -0,0 +1,12 @@
+package com.k3skvmmaster.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.k3skvmmaster.model.entity.HypervisorEntity;
+
+public interface HypervisorRepository extends JpaRepository<HypervisorEntity, Long> {
+
+    Optional<HypervisorEntity> findByUri(String uri);
+}
@@ -0,0 +1,14 @@
+package com.k3skvmmaster.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.k3skvmmaster.model.entity.NodeEntity;
+
+public interface NodeRepository extends JpaRepository<NodeEntity, Long> {
+
+    Optional<NodeEntity> findByName(String name);
+
+    void deleteByVmName(String vmName);
+}
@@ -0,0 +1,19 @@
+package com.k3skvmmaster.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.k3skvmmaster.model.entity.ProvisioningAttemptEntity;
+import com.k3skvmmaster.model.job.JobStatus;
+
+public interface ProvisioningAttemptRepository extends JpaRepository<ProvisioningAttemptEntity, Long> {
+
+    Optional<ProvisioningAttemptEntity> findFirstByVmNameAndStatusOrderByStartedAtDesc(String vmName,
+            JobStatus status);
+
+    List<ProvisioningAttemptEntity> findByVmNameOrderByStartedAtDesc(String vmName);
+
+    List<ProvisioningAttemptEntity> findByStatus(JobStatus status);
+}
@@ -0,0 +1,18 @@
+package com.k3skvmmaster.repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.k3skvmmaster.model.entity.CheckpointStage;
+import com.k3skvmmaster.model.entity.ProvisioningCheckpointEntity;
+
+public interface ProvisioningCheckpointRepository extends JpaRepository<ProvisioningCheckpointEntity, Long> {
+
+    Optional<ProvisioningCheckpointEntity> findByVmNameAndStage(String vmName, CheckpointStage stage);
+
+    void deleteByVmNameAndStageIn(String vmName, Collection<CheckpointStage> stages);
+
+    void deleteByVmName(String vmName);
+}
@@ -0,0 +1,37 @@
+package com.k3skvmmaster.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import com.k3skvmmaster.model.entity.VmEntity;
+
+public interface VmRepository extends JpaRepository<VmEntity, Long> {
+
+    Optional<VmEntity> findByName(String name);
+
+    Optional<VmEntity> findByHypervisorUriAndDomainName(String hypervisorUri, String domainName);
+
+    List<VmEntity> findByDomainNameIn(Collection<String> domainNames);
+
+    List<VmEntity> findByHypervisorUriAndDomainNameStartingWith(String hypervisorUri, String prefix);
+
+    void deleteByName(String name);
+
+    interface HostCommitment {
+        String getHypervisorUri();
+
+        Long getVcpu();
+
+        Long getMemory();
+
+        Long getVms();
+    }
+
+    @Query("select v.hypervisorUri as hypervisorUri, sum(v.vcpu) as vcpu, sum(v.memory) as memory, "
+            + "count(v) as vms from VmEntity v group by v.hypervisorUri")
+    List<HostCommitment> sumCommitmentsByHypervisor();
+}
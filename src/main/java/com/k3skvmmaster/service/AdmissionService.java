@@ -0,0 +1,138 @@
+package com.k3skvmmaster.service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.AdmissionConfig;
+import com.k3skvmmaster.model.job.AdmissionStage;
+import com.k3skvmmaster.util.AdaptiveLimiter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Limits how many provisioning steps of each kind run at once on a
+ * hypervisor. Every stage has its own gate per host, so a burst of disk
+ * copies cannot hold back seed uploads and the other way round.
+ *
+ * The limits follow the host: whenever a fresh capacity sample shows it in
+ * I/O wait, CPU saturated or short on memory, every gate on that host is
+ * halved; while it is healthy, gates with callers waiting grow by one per
+ * sample up to their configured maximum. Throughput therefore settles near
+ * what the host can sustain instead of every create slowing down together.
+ */
+@Service
+public class AdmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionService.class);
+
+    @Autowired
+    private AdmissionConfig admissionConfig;
+
+    @Autowired
+    private HypervisorInventoryService hypervisorInventoryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Map<AdmissionStage, AdaptiveLimiter>> gates = new ConcurrentHashMap<>();
+
+    /** A held permit; closing it lets the next caller for the stage in. */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Waits until {@code stage} may run on {@code hypervisor}. Use with
+     * try-with-resources so the permit is returned when the step ends.
+     */
+    public Permit acquire(String hypervisor, AdmissionStage stage) throws InterruptedException {
+        if (!admissionConfig.isEnabled()) {
+            return () -> {
+            };
+        }
+
+        AdaptiveLimiter gate = gates.computeIfAbsent(hypervisor, this::createGates).get(stage);
+        long waitedMs = gate.acquire();
+        if (waitedMs > 0) {
+            logger.debug("Admitted {} on {} after {} ms", stage, hypervisor, waitedMs);
+        }
+        return gate::release;
+    }
+
+    /** Current limit, load and wait times of every gate, by hypervisor. */
+    public Map<String, Map<AdmissionStage, AdaptiveLimiter.Stats>> getStats() {
+        Map<String, Map<AdmissionStage, AdaptiveLimiter.Stats>> stats = new TreeMap<>();
+        gates.forEach((hypervisor, stages) -> {
+            Map<AdmissionStage, AdaptiveLimiter.Stats> byStage = new LinkedHashMap<>();
+            stages.forEach((stage, gate) -> byStage.put(stage, gate.stats()));
+            stats.put(hypervisor, byStage);
+        });
+        return stats;
+    }
+
+    @Scheduled(fixedDelayString = "${scheduler.refresh-interval-ms:15000}")
+    public void adjust() {
+        gates.forEach((hypervisor, stages) -> {
+            Optional<HypervisorInventoryService.HostSnapshot> snapshot = hypervisorInventoryService
+                    .getSnapshot(hypervisor);
+            if (snapshot.isEmpty()) {
+                return;
+            }
+
+            String pressure = pressure(snapshot.get());
+            if (pressure != null) {
+                logger.info("Hypervisor {} is under pressure ({}), lowering admission limits", hypervisor,
+                        pressure);
+                stages.values().forEach(AdaptiveLimiter::decrease);
+            } else {
+                stages.values().forEach(AdaptiveLimiter::increase);
+            }
+        });
+    }
+
+    /** Why the host counts as overloaded, or null if it does not. */
+    private String pressure(HypervisorInventoryService.HostSnapshot snapshot) {
+        if (snapshot.ioWait() != null && snapshot.ioWait() > admissionConfig.getMaxIoWait()) {
+            return String.format("I/O wait %.0f%%", snapshot.ioWait() * 100);
+        }
+        if (snapshot.cpuLoad() != null && snapshot.cpuLoad() > admissionConfig.getMaxCpuLoad()) {
+            return String.format("CPU load %.0f%%", snapshot.cpuLoad() * 100);
+        }
+        if (snapshot.freeMemoryMb() < admissionConfig.getMinFreeMemoryMb()) {
+            return snapshot.freeMemoryMb() + " MiB free";
+        }
+        return null;
+    }
+
+    private Map<AdmissionStage, AdaptiveLimiter> createGates(String hypervisor) {
+        hypervisorInventoryService.track(hypervisor);
+
+        Map<AdmissionStage, AdaptiveLimiter> stages = new EnumMap<>(AdmissionStage.class);
+        stages.put(AdmissionStage.DISK, new AdaptiveLimiter(admissionConfig.getMaxDisk()));
+        stages.put(AdmissionStage.CUSTOMIZE, new AdaptiveLimiter(admissionConfig.getMaxCustomize()));
+        stages.put(AdmissionStage.SEED, new AdaptiveLimiter(admissionConfig.getMaxSeed()));
+        stages.put(AdmissionStage.DEFINE, new AdaptiveLimiter(admissionConfig.getMaxDefine()));
+        stages.put(AdmissionStage.GUEST, new AdaptiveLimiter(admissionConfig.getMaxGuest()));
+
+        stages.forEach((stage, gate) -> {
+            Tags tags = Tags.of("hypervisor", hypervisor, "stage", stage.name().toLowerCase());
+            Gauge.builder("admission.limit", gate, g -> g.stats().limit()).tags(tags).register(meterRegistry);
+            Gauge.builder("admission.in-flight", gate, g -> g.stats().inFlight()).tags(tags).register(meterRegistry);
+            Gauge.builder("admission.waiting", gate, g -> g.stats().waiting()).tags(tags).register(meterRegistry);
+        });
+        return stages;
+    }
+}
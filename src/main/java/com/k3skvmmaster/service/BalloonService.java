@@ -0,0 +1,272 @@
+package com.k3skvmmaster.service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.libvirt.Connect;
+import org.libvirt.Domain;
+import org.libvirt.LibvirtException;
+import org.libvirt.MemoryStatistic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.BalloonConfig;
+import com.k3skvmmaster.model.dto.VmState;
+import com.k3skvmmaster.util.LibvirtUtil;
+import com.k3skvmmaster.util.SshTarget;
+import com.k3skvmmaster.util.SshUtil;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Moves memory the guests are not using back to their hypervisor by
+ * inflating each running VM's balloon down to what its guest uses plus some
+ * headroom, and deflating it again as the guest needs more. Headroom
+ * shrinks while the host is short of memory. Memory freed this way shows up
+ * as free host memory, so placement fits more VMs on the host.
+ *
+ * <p>A balloon never gives a VM more than the memory it is defined with,
+ * even where the VM may be resized to more. Only VMs whose guests report
+ * memory statistics are ballooned, and never hugepage-backed ones, whose
+ * memory a balloon cannot hand back to the host.
+ */
+@Service
+public class BalloonService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalloonService.class);
+
+    // virDomainMemoryStatTags
+    private static final int STAT_UNUSED = 4;
+    private static final int STAT_ACTUAL_BALLOON = 6;
+    private static final int STAT_USABLE = 8;
+    private static final int STAT_LAST_UPDATE = 9;
+    private static final int STAT_NR = 13;
+
+    private static final int XML_INACTIVE = 1 << 1;
+    private static final Pattern CURRENT_MEMORY = Pattern.compile("<currentMemory unit='KiB'>(\\d+)</currentMemory>");
+
+    // Reports older than this many periods mean the guest has stopped sending them
+    private static final int STALE_PERIODS = 4;
+
+    @Autowired
+    private BalloonConfig balloonConfig;
+
+    @Autowired
+    private HypervisorInventoryService hypervisorInventoryService;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    @Autowired
+    private SshUtil sshUtil;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** The latest pass over one hypervisor, as exported in the gauges. */
+    private static final class HostState {
+        private final AtomicLong availableBytes = new AtomicLong();
+        private final AtomicLong reclaimedBytes = new AtomicLong();
+        private final AtomicLong ballooned = new AtomicLong();
+        private final AtomicLong ksmSharedBytes = new AtomicLong();
+    }
+
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    // Memory each domain is defined with in KiB, by UUID, or 0 if it is not
+    // ballooned; its XML is only read once
+    private final Map<String, Long> ceilings = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${vm.balloon.interval-ms:15000}")
+    public void rebalance() {
+        if (!balloonConfig.isEnabled()) {
+            return;
+        }
+
+        for (String uri : hypervisorInventoryService.getHypervisorUris()) {
+            try {
+                LibvirtUtil.HostMemory memory = libvirtUtil.withConnection(uri, "domain.balloon",
+                        conn -> rebalance(uri, conn));
+                if (balloonConfig.isKsmEnabled()) {
+                    configureKsm(uri, memory);
+                }
+            } catch (LibvirtException | RuntimeException e) {
+                logger.warn("Failed to rebalance memory on {}: {}", uri, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The balloon target for a VM of {@code maxKib} whose guest has
+     * {@code freeKib} of its current {@code actualKib} free: what it uses
+     * plus {@code headroom} of its memory, within the configured floor and
+     * never shrinking by more than one step at a time.
+     */
+    private long target(long maxKib, long actualKib, long freeKib, double headroom) {
+        long floor = Math.min(maxKib, Math.max((long) (maxKib * balloonConfig.getMinFraction()),
+                balloonConfig.getMinMemoryMb() * 1024));
+        long wanted = Math.max(0, actualKib - freeKib) + (long) (maxKib * headroom);
+        wanted = Math.max(floor, Math.min(maxKib, wanted));
+
+        if (wanted < actualKib) {
+            wanted = Math.max(wanted, actualKib - (long) (maxKib * balloonConfig.getMaxStepFraction()));
+        }
+        return wanted;
+    }
+
+    private LibvirtUtil.HostMemory rebalance(String uri, Connect conn) throws LibvirtException {
+        HostState state = hostState(uri);
+        LibvirtUtil.HostMemory memory = libvirtUtil.readHostMemory(conn);
+        boolean pressure = memory.availableKib() < memory.totalKib() * balloonConfig.getHostPressureFraction();
+        double headroom = pressure ? balloonConfig.getPressureGuestFreeFraction()
+                : balloonConfig.getGuestFreeFraction();
+
+        long reclaimedKib = 0;
+        int ballooned = 0;
+        Set<String> seen = new HashSet<>();
+
+        for (LibvirtUtil.DomainSummary summary : libvirtUtil.listAllDomains(conn)) {
+            if (summary.state() != VmState.RUNNING) {
+                continue;
+            }
+            seen.add(summary.uuid());
+
+            try {
+                Domain domain = conn.domainLookupByUUIDString(summary.uuid());
+                Long reclaimed = resize(uri, summary.name(), domain, headroom);
+                if (reclaimed != null) {
+                    reclaimedKib += reclaimed;
+                    ballooned++;
+                }
+            } catch (LibvirtException e) {
+                logger.debug("Skipping balloon of {}: {}", summary.name(), e.getMessage());
+            }
+        }
+        ceilings.keySet().retainAll(seen);
+
+        state.availableBytes.set(memory.availableKib() * 1024);
+        state.reclaimedBytes.set(reclaimedKib * 1024);
+        state.ballooned.set(ballooned);
+        if (pressure) {
+            logger.info("{} is short of memory ({} MiB available), shrinking guest headroom", uri,
+                    memory.availableKib() / 1024);
+        }
+        return memory;
+    }
+
+    /**
+     * Forgets what is known of the domain {@code uuid}, so its definition
+     * is read again, as is needed once it has been resized.
+     */
+    public void forget(String uuid) {
+        ceilings.remove(uuid);
+    }
+
+    /**
+     * Moves the balloon of one VM towards its target and returns the KiB
+     * it holds back from the VM afterwards, or null if the VM is not
+     * ballooned.
+     */
+    private Long resize(String uri, String name, Domain domain, double headroom) throws LibvirtException {
+        long maxKib = ceilings.computeIfAbsent(domain.getUUIDString(), uuid -> readCeiling(domain));
+        if (maxKib == 0) {
+            return null;
+        }
+
+        Map<Integer, Long> stats = new HashMap<>();
+        for (MemoryStatistic stat : domain.memoryStats(STAT_NR)) {
+            stats.put(stat.getTag(), stat.getValue());
+        }
+
+        Long actualKib = stats.get(STAT_ACTUAL_BALLOON);
+        Long freeKib = stats.containsKey(STAT_USABLE) ? stats.get(STAT_USABLE) : stats.get(STAT_UNUSED);
+        if (actualKib == null || freeKib == null) {
+            return null;
+        }
+
+        long targetKib;
+        Long lastUpdate = stats.get(STAT_LAST_UPDATE);
+        long staleAfter = (long) Math.max(1, balloonConfig.getStatsPeriodSeconds()) * STALE_PERIODS;
+        if (lastUpdate != null && Instant.now().getEpochSecond() - lastUpdate > staleAfter) {
+            // Without fresh reports there is no telling what the guest needs, so give it all back
+            targetKib = maxKib;
+        } else {
+            targetKib = target(maxKib, actualKib, freeKib, headroom);
+        }
+
+        // Small changes are not worth making, except to hand a VM all of its memory back
+        long changeKib = targetKib - actualKib;
+        if (changeKib == 0 || (Math.abs(changeKib) < balloonConfig.getMinChangeMb() * 1024 && targetKib != maxKib)) {
+            return Math.max(0, maxKib - actualKib);
+        }
+
+        domain.setMemory(targetKib);
+        String direction = changeKib < 0 ? "inflate" : "deflate";
+        meterRegistry.counter("balloon.adjustments", "hypervisor", uri, "direction", direction).increment();
+        Counter.builder("balloon.adjusted").tags("hypervisor", uri, "direction", direction).baseUnit("bytes")
+                .register(meterRegistry).increment(Math.abs(changeKib) * 1024.0);
+        logger.debug("Balloon of {}: {} -> {} MiB of {} MiB ({} MiB free in guest)", name, actualKib / 1024,
+                targetKib / 1024, maxKib / 1024, freeKib / 1024);
+        return maxKib - targetKib;
+    }
+
+    /** KSM runs only while the host is low enough on memory to be worth the CPU it costs. */
+    private void configureKsm(String uri, LibvirtUtil.HostMemory memory) {
+        boolean run = memory.availableKib() < memory.totalKib() * balloonConfig.getKsmRunBelowFraction();
+        try {
+            long shared = sshUtil.configureKsm(SshTarget.fromLibvirtUri(uri), run,
+                    balloonConfig.getKsmPagesToScan(), balloonConfig.getKsmSleepMs());
+            hostState(uri).ksmSharedBytes.set(shared);
+        } catch (IOException e) {
+            logger.warn("Failed to configure KSM on {}: {}", uri, e.getMessage());
+        }
+    }
+
+    /**
+     * The memory {@code domain} is defined with, which the balloon never
+     * goes above even if the domain may be resized to more. 0 for
+     * hugepage-backed domains.
+     */
+    private static long readCeiling(Domain domain) {
+        try {
+            String xml = domain.getXMLDesc(XML_INACTIVE);
+            if (xml.contains("<hugepages")) {
+                return 0;
+            }
+            Matcher current = CURRENT_MEMORY.matcher(xml);
+            return current.find() ? Long.parseLong(current.group(1)) : domain.getMaxMemory();
+        } catch (LibvirtException e) {
+            return 0;
+        }
+    }
+
+    private HostState hostState(String uri) {
+        return hosts.computeIfAbsent(uri, key -> {
+            HostState state = new HostState();
+            Gauge.builder("balloon.host.available", state.availableBytes, AtomicLong::get)
+                    .tag("hypervisor", key).baseUnit("bytes").register(meterRegistry);
+            Gauge.builder("balloon.reclaimed", state.reclaimedBytes, AtomicLong::get)
+                    .tag("hypervisor", key).baseUnit("bytes").register(meterRegistry);
+            Gauge.builder("balloon.vms", state.ballooned, AtomicLong::get)
+                    .tag("hypervisor", key).register(meterRegistry);
+            if (balloonConfig.isKsmEnabled()) {
+                Gauge.builder("balloon.ksm.shared", state.ksmSharedBytes, AtomicLong::get)
+                        .tag("hypervisor", key).baseUnit("bytes").register(meterRegistry);
+            }
+            return state;
+        });
+    }
+}
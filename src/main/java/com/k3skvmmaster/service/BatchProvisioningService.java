@@ -0,0 +1,280 @@
+package com.k3skvmmaster.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.JobConfig;
+import com.k3skvmmaster.config.ReadinessConfig;
+import com.k3skvmmaster.model.dto.CreateNodeRequest;
+import com.k3skvmmaster.model.job.BatchNode;
+import com.k3skvmmaster.model.job.BatchStage;
+import com.k3skvmmaster.model.job.JobStatus;
+import com.k3skvmmaster.model.job.ProvisioningBatch;
+import com.k3skvmmaster.model.rto.VmResponse;
+import com.k3skvmmaster.util.StageTimer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Provisions many nodes at once by running them through a pipeline of
+ * stages instead of one full create after another. Each stage has its own
+ * small executor, so at most that many nodes are in a stage at a time while
+ * the other stages keep working on other nodes. Waiting for boot uses no
+ * thread at all.
+ *
+ * <p>As with single jobs, at most {@code jobs.executor.queue-capacity}
+ * nodes are in the pipeline at once, across all batches. A batch that
+ * would go over that is rejected as a whole, so a stage's queue can never
+ * overflow part-way through a node.
+ */
+@Service
+public class BatchProvisioningService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchProvisioningService.class);
+
+    private static final double WEIGHT = 0.2;
+
+    @Autowired
+    private JobConfig jobConfig;
+
+    @Autowired
+    private ReadinessConfig readinessConfig;
+
+    @Autowired
+    private VmService vmService;
+
+    @Autowired
+    private K3sService k3sService;
+
+    @Autowired
+    private VmReadinessService vmReadinessService;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    @Autowired
+    private PlacementService placementService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, ProvisioningBatch> batches = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Moving average of how long a node takes through the pipeline
+    private double avgNodeMs;
+
+    private ExecutorService diskExecutor;
+    private ExecutorService seedExecutor;
+    private ExecutorService defineExecutor;
+    private ExecutorService joinExecutor;
+
+    private record Prepared(String diskPath, String isoPath) {
+    }
+
+    @PostConstruct
+    public void init() {
+        diskExecutor = createExecutor("disk", jobConfig.getBatchDiskConcurrency());
+        seedExecutor = createExecutor("seed", jobConfig.getBatchSeedConcurrency());
+        defineExecutor = createExecutor("define", jobConfig.getBatchDefineConcurrency());
+        joinExecutor = createExecutor("join", jobConfig.getBatchJoinConcurrency());
+    }
+
+    /**
+     * Places every node and starts its pipeline.
+     *
+     * @throws IllegalArgumentException   if the batch is too large or names a
+     *                                    node twice
+     * @throws RejectedExecutionException if the pipeline has no room for the
+     *                                    batch right now
+     * @throws IllegalStateException      if a node cannot be placed
+     */
+    public ProvisioningBatch submit(List<CreateNodeRequest> requests) {
+        if (requests.size() > jobConfig.getBatchMaxNodes()) {
+            throw new IllegalArgumentException(
+                    "A batch may contain at most " + jobConfig.getBatchMaxNodes() + " nodes");
+        }
+        if (requests.stream().map(CreateNodeRequest::getName).distinct().count() != requests.size()) {
+            throw new IllegalArgumentException("Node names in a batch must be unique");
+        }
+
+        if (inFlight.addAndGet(requests.size()) > jobConfig.getQueueCapacity()) {
+            inFlight.addAndGet(-requests.size());
+            logger.warn("Batch pipeline is full, rejecting a batch of {} nodes", requests.size());
+            throw new RejectedExecutionException("Batch pipeline is full");
+        }
+
+        // Place every node up front so the batch is either fully placed or rejected
+        List<CreateNodeRequest> placed = new ArrayList<>();
+        try {
+            for (CreateNodeRequest request : requests) {
+                placementService.place(request);
+                placed.add(request);
+            }
+        } catch (RuntimeException e) {
+            placed.forEach(request -> placementService.release(request.getName()));
+            inFlight.addAndGet(-requests.size());
+            throw e;
+        }
+
+        ProvisioningBatch batch = new ProvisioningBatch(requests.stream()
+                .map(request -> new BatchNode(request, new StageTimer(meterRegistry)))
+                .toList());
+        batches.put(batch.getId(), batch);
+        evictFinishedBatches();
+
+        CompletableFuture<?>[] pipelines = batch.getNodes().stream()
+                .map(this::startPipeline)
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(pipelines).whenComplete((ignored, error) -> {
+            batch.markFinished();
+            logger.info("Batch {} finished: {} of {} nodes joined", batch.getId(),
+                    batch.count(JobStatus.SUCCEEDED), batch.getNodes().size());
+        });
+
+        logger.info("Queued batch {} with {} nodes", batch.getId(), requests.size());
+        return batch;
+    }
+
+    public Optional<ProvisioningBatch> getBatch(String id) {
+        return Optional.ofNullable(batches.get(id));
+    }
+
+    /**
+     * A guess at how long until the pipeline has room again: one average
+     * node's time spread over its narrowest stage, at least a second. Used
+     * as the Retry-After of a rejected batch.
+     */
+    public synchronized long retryAfterSeconds() {
+        int threads = Math.min(Math.min(jobConfig.getBatchDiskConcurrency(), jobConfig.getBatchSeedConcurrency()),
+                Math.min(jobConfig.getBatchDefineConcurrency(), jobConfig.getBatchJoinConcurrency()));
+        long waitMs = Math.round(avgNodeMs) / Math.max(1, threads);
+        return Math.max(1, (waitMs + 999) / 1000);
+    }
+
+    private synchronized void finished(long nodeMs) {
+        avgNodeMs = avgNodeMs == 0 ? nodeMs : avgNodeMs + WEIGHT * (nodeMs - avgNodeMs);
+    }
+
+    private CompletableFuture<Void> startPipeline(BatchNode node) {
+        CreateNodeRequest request = node.getRequest();
+        StageTimer timer = node.getTimer();
+
+        return CompletableFuture
+                .supplyAsync(() -> inStage(node, BatchStage.DISK, () -> vmService.prepareDisk(request, timer)),
+                        diskExecutor)
+                .thenApplyAsync(disk -> inStage(node, BatchStage.SEED,
+                        () -> new Prepared(disk, vmService.prepareSeed(request, timer))), seedExecutor)
+                .thenApplyAsync(prepared -> inStage(node, BatchStage.DEFINE,
+                        () -> vmService.defineAndStart(request, prepared.diskPath(), prepared.isoPath(), timer)),
+                        defineExecutor)
+                .thenCompose(response -> awaitBoot(node, response))
+                .thenApplyAsync(response -> inStage(node, BatchStage.JOIN, () -> {
+                    vmService.finishGuest(request, timer);
+                    String output = k3sService.joinNode(request, vmService.resolveHypervisor(request), timer);
+                    // Only a node that joined is ready; a failed join is recorded as a failure below
+                    stateStoreService.recordReady(request.getName(), timer);
+                    return output;
+                }), joinExecutor)
+                .handle((result, error) -> {
+                    placementService.release(node.getName());
+                    inFlight.decrementAndGet();
+                    finished(timer.getTotalMs());
+                    if (error == null) {
+                        node.markSucceeded(String.format("%s has successfully joined cluster", node.getName()));
+                        logger.info("Batch node {} joined in {} ms ({})", node.getName(), timer.getTotalMs(), timer);
+                    } else {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause()
+                                : error;
+                        node.markFailed(cause.getMessage());
+                        stateStoreService.recordFailure(node.getName(), cause.getMessage());
+                        logger.error("Batch node {} failed in stage {}: {}", node.getName(), node.getStage(),
+                                cause.getMessage(), cause);
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<VmResponse> awaitBoot(BatchNode node, VmResponse response) {
+        node.enter(BatchStage.READINESS);
+        StageTimer.Stage stage = node.getTimer().start("boot");
+
+        CreateNodeRequest request = node.getRequest();
+        return vmReadinessService
+                .readyWithin(request.getLibvirtUri(), request.getName(), request.getIpAddress(), 22,
+                        Duration.ofSeconds(readinessConfig.getTimeoutSeconds()))
+                .whenComplete((source, error) -> stage.close())
+                // Off the readiness thread, which must not wait on the store
+                .thenApplyAsync(source -> {
+                    vmService.recordBooted(request);
+                    return response;
+                }, joinExecutor);
+    }
+
+    private static <T> T inStage(BatchNode node, BatchStage stage, Callable<T> work) {
+        node.enter(stage);
+        try {
+            return work.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void evictFinishedBatches() {
+        List<ProvisioningBatch> finished = batches.values().stream()
+                .filter(batch -> batch.getFinishedAt() != null)
+                .sorted(Comparator.comparing(ProvisioningBatch::getFinishedAt))
+                .toList();
+
+        int excess = finished.size() - jobConfig.getMaxFinishedJobs();
+        finished.stream().limit(Math.max(excess, 0)).forEach(batch -> batches.remove(batch.getId()));
+    }
+
+    private ExecutorService createExecutor(String stage, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "batch-" + stage + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        // Never full: no more nodes than this are admitted to the pipeline
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(jobConfig.getQueueCapacity()), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "batch." + stage, List.of()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List.of(diskExecutor, seedExecutor, defineExecutor, joinExecutor).forEach(ExecutorService::shutdownNow);
+    }
+}
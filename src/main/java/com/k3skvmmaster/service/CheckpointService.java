@@ -0,0 +1,103 @@
+package com.k3skvmmaster.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.model.entity.CheckpointStage;
+import com.k3skvmmaster.model.entity.ProvisioningCheckpointEntity;
+import com.k3skvmmaster.repository.ProvisioningCheckpointRepository;
+
+/**
+ * Durable per-stage checkpoints for provisioning, so a retried or resumed
+ * create can skip the stages whose results are still in place. A checkpoint
+ * only applies to a request identical to the one it was recorded for, and
+ * redoing a stage drops the checkpoints of every stage after it.
+ */
+@Service
+public class CheckpointService {
+
+    @Autowired
+    private ProvisioningCheckpointRepository checkpointRepository;
+
+    /**
+     * The checkpoint for {@code stage} if one was recorded for this exact
+     * request on this hypervisor. Callers still have to verify it.
+     */
+    public Optional<ProvisioningCheckpointEntity> find(VmRequest request, String hypervisorUri,
+            CheckpointStage stage) {
+        String fingerprint = fingerprint(request, hypervisorUri);
+        return checkpointRepository.findByVmNameAndStage(request.getName(), stage)
+                .filter(checkpoint -> checkpoint.getRequestFingerprint().equals(fingerprint));
+    }
+
+    @Transactional
+    public void record(VmRequest request, String hypervisorUri, CheckpointStage stage,
+            Consumer<ProvisioningCheckpointEntity> details) {
+        ProvisioningCheckpointEntity checkpoint = checkpointRepository
+                .findByVmNameAndStage(request.getName(), stage)
+                .orElseGet(ProvisioningCheckpointEntity::new);
+
+        checkpoint.setVmName(request.getName());
+        checkpoint.setStage(stage);
+        checkpoint.setHypervisorUri(hypervisorUri);
+        checkpoint.setRequestFingerprint(fingerprint(request, hypervisorUri));
+        checkpoint.setRecordedAt(LocalDateTime.now());
+        details.accept(checkpoint);
+        checkpointRepository.save(checkpoint);
+    }
+
+    @Transactional
+    public void record(VmRequest request, String hypervisorUri, CheckpointStage stage) {
+        record(request, hypervisorUri, stage, checkpoint -> {
+        });
+    }
+
+    /**
+     * Drops the checkpoints of {@code stage} and every later stage, before
+     * that stage is redone.
+     */
+    @Transactional
+    public void invalidateFrom(String vmName, CheckpointStage stage) {
+        checkpointRepository.deleteByVmNameAndStageIn(vmName, EnumSet.range(stage, CheckpointStage.GUEST));
+    }
+
+    @Transactional
+    public void clear(String vmName) {
+        checkpointRepository.deleteByVmName(vmName);
+    }
+
+    private static String fingerprint(VmRequest request, String hypervisorUri) {
+        String canonical = String.join("\n",
+                hypervisorUri,
+                request.getName(),
+                String.valueOf(request.getVcpu()),
+                String.valueOf(request.getMemory()),
+                request.getIpAddress(),
+                request.getGateway(),
+                request.getSystemUser(),
+                request.getIsoPath(),
+                request.getUser(),
+                request.getRootPassword(),
+                String.valueOf(request.getDiskMode()),
+                String.valueOf(request.getCustomizationMode()),
+                String.valueOf(request.getInstallNfsDeps()));
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.k3skvmmaster.service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.libvirt.LibvirtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.SchedulerConfig;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+/**
+ * Samples the capacity of every schedulable hypervisor through libvirt: CPU
+ * count, total and free memory, and CPU utilization and I/O wait between
+ * two samples. The latest sample of each host is kept in memory for
+ * placement and admission and written to the state store.
+ */
+@Service
+public class HypervisorInventoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HypervisorInventoryService.class);
+
+    @Autowired
+    private SchedulerConfig schedulerConfig;
+
+    @Autowired
+    private LibvirtService libvirtService;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    /**
+     * {@code cpuLoad} and {@code ioWait} are fractions of CPU time between
+     * the last two samples, null until there are two.
+     */
+    public record HostSnapshot(String uri, int cpus, long memoryMb, long freeMemoryMb, Double cpuLoad,
+            Double ioWait, LocalDateTime sampledAt) {
+    }
+
+    private final Map<String, HostSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> lastCpuTimes = new ConcurrentHashMap<>();
+    private final Set<String> tracked = ConcurrentHashMap.newKeySet();
+
+    public List<String> getHypervisorUris() {
+        List<String> configured = schedulerConfig.getHypervisors().stream()
+                .filter(uri -> !uri.isBlank())
+                .toList();
+        return configured.isEmpty() ? List.of(libvirtUtil.resolveUri(null)) : configured;
+    }
+
+    /**
+     * The latest sample of {@code uri}, taking one now if there is none yet.
+     * Empty if the host cannot be reached.
+     */
+    public Optional<HostSnapshot> getSnapshot(String uri) {
+        HostSnapshot snapshot = snapshots.get(uri);
+        if (snapshot != null) {
+            return Optional.of(snapshot);
+        }
+
+        try {
+            return Optional.of(sample(uri));
+        } catch (LibvirtException | RuntimeException e) {
+            logger.warn("Hypervisor {} is unavailable: {}", uri, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Keeps sampling {@code uri} on every refresh even if it is not one of
+     * the schedulable hypervisors, as happens for hosts named explicitly in
+     * a request.
+     */
+    public void track(String uri) {
+        tracked.add(uri);
+    }
+
+    @Scheduled(fixedDelayString = "${scheduler.refresh-interval-ms:15000}")
+    public void refresh() {
+        Set<String> uris = new LinkedHashSet<>(getHypervisorUris());
+        uris.addAll(tracked);
+        for (String uri : uris) {
+            try {
+                sample(uri);
+            } catch (LibvirtException | RuntimeException e) {
+                if (snapshots.remove(uri) != null) {
+                    logger.warn("Hypervisor {} became unavailable: {}", uri, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private HostSnapshot sample(String uri) throws LibvirtException {
+        LibvirtUtil.HostCapacity capacity = libvirtService.execute(uri, "node.capacity", libvirtUtil::readHostCapacity);
+
+        Double cpuLoad = null;
+        Double ioWait = null;
+        Map<String, Long> previous = capacity.cpuTimes().isEmpty()
+                ? null
+                : lastCpuTimes.put(uri, capacity.cpuTimes());
+        if (previous != null) {
+            cpuLoad = busyShare(previous, capacity.cpuTimes());
+            ioWait = fieldShare(previous, capacity.cpuTimes(), "iowait");
+        }
+
+        HostSnapshot snapshot = new HostSnapshot(uri, capacity.cpus(), capacity.memoryMb(),
+                capacity.freeMemoryMb(), cpuLoad, ioWait, LocalDateTime.now());
+        snapshots.put(uri, snapshot);
+        stateStoreService.recordHypervisorCapacity(uri, capacity.cpus(), capacity.memoryMb(),
+                capacity.freeMemoryMb(), cpuLoad);
+        return snapshot;
+    }
+
+    /** The share of CPU time between two samples spent neither idle nor waiting for I/O. */
+    private static Double busyShare(Map<String, Long> previous, Map<String, Long> current) {
+        return share(previous, current, field -> !field.equals("idle") && !field.equals("iowait"));
+    }
+
+    /** The share of CPU time between two samples spent in {@code field}. */
+    private static Double fieldShare(Map<String, Long> previous, Map<String, Long> current, String field) {
+        return share(previous, current, field::equals);
+    }
+
+    private static Double share(Map<String, Long> previous, Map<String, Long> current, Predicate<String> counted) {
+        long total = 0;
+        long matched = 0;
+        for (Map.Entry<String, Long> field : current.entrySet()) {
+            long delta = field.getValue() - previous.getOrDefault(field.getKey(), field.getValue());
+            total += delta;
+            if (counted.test(field.getKey())) {
+                matched += delta;
+            }
+        }
+        return total <= 0 ? null : Math.max(0, Math.min(1, (double) matched / total));
+    }
+}
@@ -0,0 +1,241 @@
+package com.k3skvmmaster.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.libvirt.LibvirtException;
+import org.libvirt.StoragePool;
+import org.libvirt.StorageVol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.LibvirtConfig;
+import com.k3skvmmaster.util.ImageTransferUtil;
+import com.k3skvmmaster.util.LibvirtUtil;
+import com.k3skvmmaster.util.SshTarget;
+import com.k3skvmmaster.util.StorageVolumeUtil;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Tracks base images by content hash and which hypervisors already hold each
+ * one. The base volume in a host's storage pool is named after the hash, so a
+ * changed golden image becomes a new volume while existing overlays keep
+ * their old backing file, and an unchanged image is never sent twice.
+ */
+@Service
+public class ImageRegistryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageRegistryService.class);
+
+    @Autowired
+    private LibvirtConfig libvirtConfig;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    @Autowired
+    private ImageTransferUtil imageTransferUtil;
+
+    public record ImageDescriptor(String sha256, long size, String localPath, String volumeName) {
+    }
+
+    private record FileStamp(String path, long size, long modified) {
+    }
+
+    private final Map<FileStamp, CompletableFuture<ImageDescriptor>> descriptors = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> holdings = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private ExecutorService hashExecutor;
+
+    /**
+     * Hashes the configured base image. The result is cached by path, size and
+     * modification time so the multi-gigabyte file is only read again after
+     * it actually changes, and concurrent callers share one hash.
+     */
+    public ImageDescriptor describeBaseImage() throws IOException, LibvirtException {
+        return await(hash(baseImageStamp()));
+    }
+
+    /**
+     * The base image's descriptor if it has already been hashed in its
+     * current state. Otherwise hashing starts in the background and this
+     * returns empty, so callers never wait for the file to be read.
+     */
+    public Optional<ImageDescriptor> findBaseImage() throws IOException {
+        CompletableFuture<ImageDescriptor> descriptor = hash(baseImageStamp());
+        return descriptor.isDone() && !descriptor.isCompletedExceptionally()
+                ? Optional.of(descriptor.join())
+                : Optional.empty();
+    }
+
+    private FileStamp baseImageStamp() throws IOException {
+        Path path = Path.of(libvirtConfig.getBaseImagePath());
+        return new FileStamp(path.toString(), Files.size(path), Files.getLastModifiedTime(path).toMillis());
+    }
+
+    private CompletableFuture<ImageDescriptor> hash(FileStamp stamp) {
+        CompletableFuture<ImageDescriptor> descriptor = descriptors.computeIfAbsent(stamp,
+                key -> CompletableFuture.supplyAsync(() -> computeDescriptor(key), hashExecutor()));
+        descriptors.keySet().removeIf(key -> !key.equals(stamp));
+
+        // A failed hash is not kept, so the next caller tries again
+        descriptor.whenComplete((result, e) -> {
+            if (e != null) {
+                descriptors.remove(stamp, descriptor);
+            }
+        });
+        return descriptor;
+    }
+
+    private ImageDescriptor computeDescriptor(FileStamp stamp) {
+        Path path = Path.of(stamp.path());
+        logger.info("Hashing base image {}", path);
+        try {
+            String sha256 = sha256(path);
+            logger.info("Base image {} has sha256 {}", path, sha256);
+            return new ImageDescriptor(sha256, stamp.size(), stamp.path(),
+                    "base-" + sha256.substring(0, 16) + ".qcow2");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the path of the current base image's volume on the hypervisor
+     * behind {@code libvirtUri}, uploading it first if the host lacks it.
+     * Concurrent callers for the same host and image share one upload.
+     */
+    public String ensureImage(String libvirtUri) throws IOException, LibvirtException {
+        ImageDescriptor image = describeBaseImage();
+        String key = libvirtUri + "#" + image.sha256();
+
+        CompletableFuture<String> upload = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, upload);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            upload.complete(locateOrUpload(libvirtUri, image));
+        } catch (IOException | LibvirtException | RuntimeException e) {
+            upload.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key);
+        }
+
+        return await(upload);
+    }
+
+    public Map<String, Set<String>> getHoldings() {
+        return Map.copyOf(holdings);
+    }
+
+    private String locateOrUpload(String libvirtUri, ImageDescriptor image) throws IOException, LibvirtException {
+        String path = libvirtUtil.withConnection(libvirtUri, "volume.lookup", conn -> {
+            StoragePool pool = conn.storagePoolLookupByName(libvirtConfig.getStoragePool());
+            StorageVol vol = StorageVolumeUtil.findVolume(pool, image.volumeName());
+            if (vol == null && !isHeld(libvirtUri, image)) {
+                pool.refresh(0);
+                vol = StorageVolumeUtil.findVolume(pool, image.volumeName());
+            }
+            return vol != null ? vol.getPath() : null;
+        });
+
+        if (path != null) {
+            recordHolding(libvirtUri, image);
+            return path;
+        }
+
+        String poolPath = libvirtUtil.withConnection(libvirtUri, "pool.describe",
+                conn -> StorageVolumeUtil.poolTargetPath(conn.storagePoolLookupByName(libvirtConfig.getStoragePool())));
+
+        logger.info("Hypervisor {} does not hold image {}, uploading", libvirtUri, image.sha256());
+        imageTransferUtil.upload(Path.of(image.localPath()), image.size(), image.sha256(),
+                SshTarget.fromLibvirtUri(libvirtUri), poolPath + "/" + image.volumeName());
+
+        path = libvirtUtil.withConnection(libvirtUri, "pool.refresh", conn -> {
+            StoragePool pool = conn.storagePoolLookupByName(libvirtConfig.getStoragePool());
+            pool.refresh(0);
+            return pool.storageVolLookupByName(image.volumeName()).getPath();
+        });
+
+        recordHolding(libvirtUri, image);
+        return path;
+    }
+
+    private boolean isHeld(String libvirtUri, ImageDescriptor image) {
+        return holdings.getOrDefault(libvirtUri, Set.of()).contains(image.sha256());
+    }
+
+    private void recordHolding(String libvirtUri, ImageDescriptor image) {
+        holdings.computeIfAbsent(libvirtUri, uri -> ConcurrentHashMap.newKeySet()).add(image.sha256());
+    }
+
+    private synchronized ExecutorService hashExecutor() {
+        if (hashExecutor == null) {
+            hashExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "image-hash");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return hashExecutor;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, LibvirtException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for image", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof LibvirtException le) {
+                throw le;
+            }
+            throw new IOException("Image operation failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static String sha256(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1024 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (hashExecutor != null) {
+            hashExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.k3skvmmaster.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.JobConfig;
+import com.k3skvmmaster.model.job.JobStatus;
+import com.k3skvmmaster.model.job.JobType;
+import com.k3skvmmaster.model.job.ProvisioningJob;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs provisioning work off the request thread. Each hypervisor gets its own
+ * bounded executor so a slow host cannot starve jobs targeting another one.
+ */
+@Service
+public class JobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobService.class);
+
+    @Autowired
+    private JobConfig jobConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    private final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+    private final Map<String, ProvisioningJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, QueueTimes> queueTimes = new ConcurrentHashMap<>();
+
+    /**
+     * The state of one hypervisor's queue. Wait and run times are moving
+     * averages over recent jobs; {@code maxQueuedMs} is the longest wait
+     * since startup.
+     */
+    public record QueueStats(int queued, int running, int capacity, long avgQueuedMs, long maxQueuedMs,
+            long avgRunMs) {
+    }
+
+    private static final class QueueTimes {
+        private static final double WEIGHT = 0.2;
+
+        private double avgQueuedMs;
+        private double avgRunMs;
+        private long maxQueuedMs;
+
+        synchronized void started(long queuedMs) {
+            avgQueuedMs = avgQueuedMs == 0 ? queuedMs : avgQueuedMs + WEIGHT * (queuedMs - avgQueuedMs);
+            maxQueuedMs = Math.max(maxQueuedMs, queuedMs);
+        }
+
+        synchronized void finished(long runMs) {
+            avgRunMs = avgRunMs == 0 ? runMs : avgRunMs + WEIGHT * (runMs - avgRunMs);
+        }
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        for (JobStatus status : List.of(JobStatus.QUEUED, JobStatus.RUNNING)) {
+            Gauge.builder("jobs.active", () -> countJobs(status))
+                    .tag("status", status.name().toLowerCase())
+                    .description("Provisioning jobs waiting for or holding an executor thread")
+                    .register(meterRegistry);
+        }
+    }
+
+    /** Jobs do not survive a restart, so neither do the attempts they were running. */
+    @PostConstruct
+    public void failInterruptedAttempts() {
+        stateStoreService.failInterruptedAttempts();
+    }
+
+    public ProvisioningJob submit(JobType type, String target, String hypervisor, Callable<Object> work) {
+        ProvisioningJob job = new ProvisioningJob(type, target, hypervisor);
+        ExecutorService executor = executors.computeIfAbsent(hypervisor, this::createExecutor);
+
+        try {
+            job.setFuture(executor.submit(() -> run(job, work)));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Job queue for hypervisor {} is full, rejecting {} for {}", hypervisor, type, target);
+            throw e;
+        }
+
+        jobs.put(job.getId(), job);
+        evictFinishedJobs();
+
+        logger.info("Queued {} job {} for {} on {}", type, job.getId(), target, hypervisor);
+        return job;
+    }
+
+    public Optional<ProvisioningJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<ProvisioningJob> listJobs(JobStatus status) {
+        return jobs.values().stream()
+                .filter(job -> status == null || job.getStatus() == status)
+                .sorted(Comparator.comparing(ProvisioningJob::getCreatedAt).reversed())
+                .toList();
+    }
+
+    public long countJobs(JobStatus status) {
+        return jobs.values().stream().filter(job -> job.getStatus() == status).count();
+    }
+
+    public Map<String, QueueStats> getQueueStats() {
+        Map<String, QueueStats> stats = new TreeMap<>();
+        executors.keySet().forEach(hypervisor -> stats.put(hypervisor, getQueueStats(hypervisor)));
+        return stats;
+    }
+
+    public QueueStats getQueueStats(String hypervisor) {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) executors.get(hypervisor);
+        QueueTimes times = queueTimes.computeIfAbsent(hypervisor, h -> new QueueTimes());
+        synchronized (times) {
+            return new QueueStats(
+                    executor == null ? 0 : executor.getQueue().size(),
+                    executor == null ? 0 : executor.getActiveCount(),
+                    jobConfig.getQueueCapacity(),
+                    Math.round(times.avgQueuedMs),
+                    times.maxQueuedMs,
+                    Math.round(times.avgRunMs));
+        }
+    }
+
+    /**
+     * A guess at how long until {@code hypervisor}'s queue has room again:
+     * one average job's run time spread over its threads, at least a second.
+     * Used as the Retry-After of a rejected submission.
+     */
+    public long retryAfterSeconds(String hypervisor) {
+        QueueStats stats = getQueueStats(hypervisor);
+        long waitMs = stats.avgRunMs() / Math.max(1, jobConfig.getThreadsPerHypervisor());
+        return Math.max(1, (waitMs + 999) / 1000);
+    }
+
+    public boolean cancel(String id) {
+        ProvisioningJob job = jobs.get(id);
+        if (job == null || !job.markCancelled()) {
+            return false;
+        }
+
+        if (job.getFuture() != null) {
+            job.getFuture().cancel(true);
+        }
+
+        logger.info("Cancelled job {} for {}", id, job.getTarget());
+        return true;
+    }
+
+    private void run(ProvisioningJob job, Callable<Object> work) {
+        if (!job.markRunning()) {
+            return;
+        }
+
+        QueueTimes times = queueTimes.computeIfAbsent(job.getHypervisor(), h -> new QueueTimes());
+        Duration queued = Duration.between(job.getCreatedAt(), job.getStartedAt());
+        times.started(queued.toMillis());
+        meterRegistry.timer("jobs.queue.wait", "type", job.getType().name().toLowerCase()).record(queued);
+        long startedAt = System.nanoTime();
+
+        logger.info("Starting {} job {} for {}", job.getType(), job.getId(), job.getTarget());
+
+        try {
+            job.markSucceeded(work.call());
+            logger.info("{} job {} for {} succeeded", job.getType(), job.getId(), job.getTarget());
+        } catch (InterruptedException | CancellationException e) {
+            Thread.currentThread().interrupt();
+            job.markCancelled();
+        } catch (Exception e) {
+            logger.error("{} job {} for {} failed: {}", job.getType(), job.getId(), job.getTarget(),
+                    e.getMessage(), e);
+            job.markFailed(e.getMessage());
+        } finally {
+            times.finished((System.nanoTime() - startedAt) / 1_000_000);
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Collection<ProvisioningJob> finished = jobs.values().stream()
+                .filter(job -> job.getStatus().isTerminal() && job.getFinishedAt() != null)
+                .sorted(Comparator.comparing(ProvisioningJob::getFinishedAt))
+                .toList();
+
+        int excess = finished.size() - jobConfig.getMaxFinishedJobs();
+        finished.stream().limit(Math.max(excess, 0)).forEach(job -> jobs.remove(job.getId()));
+    }
+
+    private ExecutorService createExecutor(String hypervisor) {
+        int threads = jobConfig.getThreadsPerHypervisor();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "provision-" + hypervisor.hashCode() + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        logger.info("Creating job executor for hypervisor {} with {} threads", hypervisor, threads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(jobConfig.getQueueCapacity()), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "jobs", List.of(Tag.of("hypervisor", hypervisor))).bindTo(meterRegistry);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ExecutorService::shutdownNow);
+    }
+}
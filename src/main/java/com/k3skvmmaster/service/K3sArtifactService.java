@@ -0,0 +1,203 @@
+package com.k3skvmmaster.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.K3sConfig;
+
+/**
+ * Keeps the k3s install script, binary and airgap image tarball for the
+ * cluster's k3s version on local disk, so nodes can be installed without
+ * reaching the internet. Files already in the cache directory are used as
+ * they are, which also allows seeding the cache by hand on an offline host;
+ * anything missing is fetched once from upstream and checked against the
+ * release's sha256 list.
+ */
+@Service
+public class K3sArtifactService {
+
+    private static final Logger logger = LoggerFactory.getLogger(K3sArtifactService.class);
+
+    public static final String INSTALL_SCRIPT = "install.sh";
+
+    @Autowired
+    private K3sConfig k3sConfig;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    private final Map<String, Object> versionLocks = new ConcurrentHashMap<>();
+
+    /**
+     * A cached artifact. Upstream publishes no checksum for the install
+     * script, so its {@code sha256} is that of the cached copy, which is
+     * enough for nodes to tell whether they already hold it.
+     */
+    public record Artifact(String name, Path path, String sha256) {
+    }
+
+    /**
+     * The artifacts for one k3s version, keyed by role: {@code script},
+     * {@code binary} and {@code images}.
+     */
+    public record ArtifactSet(String version, Artifact script, Artifact binary, Artifact images) {
+
+        public List<Artifact> all() {
+            return List.of(script, binary, images);
+        }
+    }
+
+    public ArtifactSet ensureArtifacts() throws IOException {
+        return ensureArtifacts(k3sConfig.getMasterVersion());
+    }
+
+    /**
+     * Makes sure every artifact for {@code version} is in the cache and
+     * returns them. Concurrent callers for the same version share one fill.
+     */
+    public ArtifactSet ensureArtifacts(String version) throws IOException {
+        synchronized (versionLocks.computeIfAbsent(version, v -> new Object())) {
+            Path dir = versionDirectory(version);
+            Files.createDirectories(dir);
+
+            String arch = k3sConfig.getArtifactsArch();
+            Map<String, String> checksums = readChecksums(version, dir.resolve("sha256sum-" + arch + ".txt"));
+
+            String binaryName = "amd64".equals(arch) ? "k3s" : "k3s-" + arch;
+            String imagesName = List.of(".tar.zst", ".tar.gz", ".tar").stream()
+                    .map(ext -> "k3s-airgap-images-" + arch + ext)
+                    .filter(checksums::containsKey)
+                    .findFirst()
+                    .orElseThrow(() -> new IOException("No airgap image tarball listed for " + arch + " in k3s "
+                            + version));
+
+            Artifact binary = ensureVerified(version, dir, binaryName, checksums.get(binaryName));
+            Artifact images = ensureVerified(version, dir, imagesName, checksums.get(imagesName));
+
+            Path script = dir.resolve(INSTALL_SCRIPT);
+            if (!Files.exists(script)) {
+                download(URI.create(k3sConfig.getArtifactsInstallScriptUrl()), script);
+            }
+
+            return new ArtifactSet(version, new Artifact(INSTALL_SCRIPT, script, sha256(script)), binary, images);
+        }
+    }
+
+    /**
+     * Resolves a file inside a version's cache directory, refusing anything
+     * that would escape it.
+     */
+    public Path resolve(String version, String name) {
+        Path dir = versionDirectory(version);
+        Path path = dir.resolve(name).normalize();
+        if (!path.startsWith(dir) || path.equals(dir)) {
+            throw new IllegalArgumentException("Invalid artifact name: " + name);
+        }
+        return path;
+    }
+
+    public Path versionDirectory(String version) {
+        Path root = Path.of(k3sConfig.getArtifactsDirectory()).toAbsolutePath().normalize();
+        Path dir = root.resolve(version).normalize();
+        if (!dir.getParent().equals(root)) {
+            throw new IllegalArgumentException("Invalid k3s version: " + version);
+        }
+        return dir;
+    }
+
+    private Map<String, String> readChecksums(String version, Path file) throws IOException {
+        if (!Files.exists(file)) {
+            download(releaseUri(version, file.getFileName().toString()), file);
+        }
+
+        Map<String, String> checksums = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 2) {
+                checksums.put(parts[1], parts[0]);
+            }
+        }
+        return checksums;
+    }
+
+    private Artifact ensureVerified(String version, Path dir, String name, String sha256) throws IOException {
+        Path path = dir.resolve(name);
+
+        if (!Files.exists(path)) {
+            Path part = dir.resolve(name + ".part");
+            download(releaseUri(version, name), part);
+            String actual = sha256(part);
+            if (!actual.equals(sha256)) {
+                Files.deleteIfExists(part);
+                throw new IOException("Checksum mismatch for " + name + ": expected " + sha256 + " but got "
+                        + actual);
+            }
+            Files.move(part, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return new Artifact(name, path, sha256);
+    }
+
+    private URI releaseUri(String version, String name) {
+        return URI.create(String.format("%s/%s/%s", k3sConfig.getArtifactsReleaseUrl().replaceAll("/+$", ""),
+                URLEncoder.encode(version, StandardCharsets.UTF_8), name));
+    }
+
+    private void download(URI uri, Path target) throws IOException {
+        logger.info("Downloading {} into the k3s artifact cache", uri);
+
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        try {
+            HttpResponse<Path> response = httpClient.send(request, HttpResponse.BodyHandlers.ofFile(target));
+            if (response.statusCode() != 200) {
+                Files.deleteIfExists(target);
+                throw new IOException("Failed to download " + uri + ", HTTP " + response.statusCode());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Files.deleteIfExists(target);
+            throw new IOException("Interrupted downloading " + uri, e);
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw new IOException("Failed to download " + uri + " and it is not in the cache at " + target, e);
+        }
+    }
+
+    private static String sha256(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1024 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,47 +1,116 @@
 package com.k3skvmmaster.service;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.k3skvmmaster.config.K3sConfig;
+import com.k3skvmmaster.model.dto.VmRequest;
 import com.k3skvmmaster.util.K3sUtil;
+import com.k3skvmmaster.util.StageTimer;
 
+import io.kubernetes.client.custom.V1Patch;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1Node;
 import io.kubernetes.client.openapi.models.V1NodeList;
 import io.kubernetes.client.util.Config;
+import io.kubernetes.client.util.PatchUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 
 @Service
 public class K3sService {
     @Autowired
     private K3sUtil k3sUtil;
 
+    @Autowired
+    private K3sConfig k3sConfig;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private CoreV1Api client;
 
-    public K3sService() throws IOException {
-        ApiClient client = Config.defaultClient();
+    @PostConstruct
+    public void init() throws IOException {
+        ApiClient client = k3sConfig.getApiUrl().isBlank()
+                ? Config.defaultClient()
+                : Config.fromUrl(k3sConfig.getApiUrl(), false);
         io.kubernetes.client.openapi.Configuration.setDefaultApiClient(client);
         this.client = new CoreV1Api(client);
     }
 
     public void deletePod(String podName) throws Exception {
-        client.deleteNamespacedPod(podName, "default").execute();
+        callApi("deletePod", () -> client.deleteNamespacedPod(podName, "default").execute());
     }
 
     public void deleteNode(String nodeName) throws Exception {
-        client.deleteNode(nodeName).execute();
+        callApi("deleteNode", () -> client.deleteNode(nodeName).execute());
+    }
+
+    /**
+     * Marks {@code nodeName} unschedulable, or schedulable again, and
+     * returns whether it was unschedulable before.
+     */
+    public boolean cordonNode(String nodeName, boolean unschedulable) throws Exception {
+        V1Node node = callApi("readNode", () -> client.readNode(nodeName).execute());
+        boolean was = node.getSpec() != null && Boolean.TRUE.equals(node.getSpec().getUnschedulable());
+        if (was != unschedulable) {
+            V1Patch patch = new V1Patch("{\"spec\":{\"unschedulable\":" + unschedulable + "}}");
+            callApi("patchNode", () -> PatchUtils.patch(V1Node.class,
+                    () -> client.patchNode(nodeName, patch).buildCall(null),
+                    V1Patch.PATCH_FORMAT_STRATEGIC_MERGE_PATCH, client.getApiClient()));
+        }
+        return was;
     }
 
     public String joinCluster(String nodeIp) throws Exception {
         return k3sUtil.joinCluster(nodeIp);
     }
 
+    /**
+     * Joins the VM provisioned for {@code request} as an agent and records
+     * the new node.
+     */
+    public String joinNode(VmRequest request, String hypervisorUri) throws Exception {
+        return joinNode(request, hypervisorUri, new StageTimer(meterRegistry));
+    }
+
+    /** Same as above, timing the join as the {@code join} stage of {@code timer}. */
+    public String joinNode(VmRequest request, String hypervisorUri, StageTimer timer) throws Exception {
+        String output;
+        try (StageTimer.Stage stage = timer.start("join")) {
+            output = joinCluster(request.getIpAddress());
+        }
+        stateStoreService.recordNodeJoined(request, hypervisorUri, k3sConfig.getMasterVersion());
+        return output;
+    }
+
     public String getJoinToken() throws Exception {
         return k3sUtil.getJoinToken();
     }
 
     public V1NodeList getNodes() throws Exception {
-        return client.listNode().execute();
+        return callApi("listNodes", () -> client.listNode().execute());
+    }
+
+    /** Times a Kubernetes API call as {@code kubernetes.api}, tagged with {@code operation}. */
+    private <T> T callApi(String operation, Callable<T> call) throws Exception {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(meterRegistry.timer("kubernetes.api", "operation", operation, "outcome", outcome));
+        }
     }
 }
@@ -1,25 +1,266 @@
 package com.k3skvmmaster.service;
 
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
 import org.libvirt.Connect;
+import org.libvirt.Error.ErrorNumber;
+import org.libvirt.LibvirtException;
+import org.libvirt.Library;
+import org.libvirt.event.LifecycleListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.k3skvmmaster.config.LibvirtConfig;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Owns one long-lived libvirt connection per URI. Connections are opened on
+ * first use with keepalive enabled, reopened when libvirt reports them closed
+ * or dead, and shared by all callers up to a per-connection concurrency cap.
+ */
 @Service
 public class LibvirtService {
 
     private static final Logger logger = LoggerFactory.getLogger(LibvirtService.class);
 
-    public Connect connect(String uri) throws Exception {
+    // Only errors that mean the call never reached the hypervisor. System
+    // and RPC errors can come after a call took effect, so retrying them
+    // could run a non-idempotent call twice.
+    private static final Set<ErrorNumber> CONNECTION_ERRORS = EnumSet.of(
+            ErrorNumber.VIR_ERR_NO_CONNECT,
+            ErrorNumber.VIR_ERR_INVALID_CONN);
+
+    @Autowired
+    private LibvirtConfig libvirtConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, PooledConnection> connections = new ConcurrentHashMap<>();
+    private final Map<String, List<LifecycleListener>> lifecycleListeners = new ConcurrentHashMap<>();
+
+    private volatile Thread eventLoopThread;
+
+    @FunctionalInterface
+    public interface LibvirtCallback<T> {
+        T doWithConnection(Connect conn) throws LibvirtException;
+    }
+
+    /**
+     * Runs {@code callback} against the pooled connection for {@code uri}. A
+     * call that fails because there was no usable connection is retried once
+     * on a fresh connection; any other libvirt error is passed through, and a
+     * connection that died meanwhile is reopened by the next call. Each
+     * call is timed as {@code libvirt.calls}, tagged with {@code operation},
+     * and includes the wait for a connection slot.
+     *
+     * @throws CancellationException if the thread is interrupted while
+     *         waiting for a connection slot
+     */
+    public <T> T execute(String uri, String operation, LibvirtCallback<T> callback) throws LibvirtException {
+        PooledConnection pooled = connections.computeIfAbsent(uri, this::createPooledConnection);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+
+        try {
+            pooled.permits.acquire();
+        } catch (InterruptedException e) {
+            // The job was cancelled while waiting for a slot, so give up instead of queueing on
+            Thread.currentThread().interrupt();
+            sample.stop(meterRegistry.timer("libvirt.calls", "operation", operation, "hypervisor", uri,
+                    "outcome", "interrupted"));
+            throw new CancellationException("Interrupted waiting for a libvirt connection to " + uri);
+        }
+        try {
+            Connect conn = pooled.get();
+            try {
+                T result = callback.doWithConnection(conn);
+                outcome = "success";
+                return result;
+            } catch (LibvirtException e) {
+                if (!isConnectionError(e)) {
+                    throw e;
+                }
+
+                logger.warn("Libvirt connection to {} failed ({}), reconnecting", uri, e.getMessage());
+                pooled.invalidate(conn);
+                T result = callback.doWithConnection(pooled.get());
+                outcome = "success";
+                return result;
+            }
+        } finally {
+            pooled.permits.release();
+            sample.stop(meterRegistry.timer("libvirt.calls", "operation", operation, "hypervisor", uri,
+                    "outcome", outcome));
+        }
+    }
+
+    /** The URIs a connection has been opened to so far. */
+    public Set<String> getKnownUris() {
+        return Set.copyOf(connections.keySet());
+    }
+
+    /**
+     * Subscribes {@code listener} to domain lifecycle events from {@code uri}.
+     * The subscription survives reconnects: it is re-registered on every new
+     * connection to that URI.
+     */
+    public void addLifecycleListener(String uri, LifecycleListener listener) throws LibvirtException {
+        lifecycleListeners.computeIfAbsent(uri, u -> new CopyOnWriteArrayList<>()).add(listener);
+        execute(uri, "connect", conn -> null);
+    }
+
+    /**
+     * Libvirt only dispatches keepalives and domain events while an event
+     * loop implementation is registered and running, and it must be
+     * registered before the connections that rely on it are opened.
+     */
+    private synchronized void ensureEventLoop() throws LibvirtException {
+        if (eventLoopThread != null) {
+            return;
+        }
+
+        Library.initEventLoop();
+
+        Thread thread = new Thread(() -> {
+            try {
+                Library.runEventLoop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (LibvirtException e) {
+                logger.error("Libvirt event loop stopped: {}", e.getMessage(), e);
+            }
+        }, "libvirt-event-loop");
+        thread.setDaemon(true);
+        thread.start();
+
+        eventLoopThread = thread;
+        logger.info("Libvirt event loop started");
+    }
+
+    private Connect open(String uri) throws LibvirtException {
         logger.info("Attempting to connect to libvirt at: {}", uri);
 
         try {
+            ensureEventLoop();
+
             Connect conn = new Connect(uri);
+            conn.setKeepAlive(libvirtConfig.getKeepaliveIntervalSeconds(), libvirtConfig.getKeepaliveCount());
+            conn.registerCloseListener((closed, reason) -> {
+                logger.warn("Libvirt connection to {} closed: {}", uri, reason);
+                PooledConnection pooled = connections.get(uri);
+                if (pooled != null) {
+                    pooled.forget(closed);
+                }
+            });
+
             logger.info("Connected to libvirt.");
             return conn;
-        } catch (Exception e) {
+        } catch (LibvirtException e) {
             logger.error("Failed to connect to libvirt: {}", e.getMessage(), e);
             throw e;
         }
     }
-}
\ No newline at end of file
+
+    private PooledConnection createPooledConnection(String uri) {
+        int maxCalls = libvirtConfig.getMaxConcurrentCalls();
+        PooledConnection pooled = new PooledConnection(uri, new Semaphore(maxCalls, true));
+        Gauge.builder("libvirt.calls.active", pooled, p -> maxCalls - p.permits.availablePermits())
+                .tag("hypervisor", uri)
+                .description("Libvirt calls holding a slot on the hypervisor's connection")
+                .register(meterRegistry);
+        return pooled;
+    }
+
+    private static boolean isConnectionError(LibvirtException e) {
+        return e.getError() != null && CONNECTION_ERRORS.contains(e.getError().getCode());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connections.values().forEach(pooled -> pooled.invalidate(pooled.conn));
+        connections.clear();
+
+        if (eventLoopThread != null) {
+            try {
+                Library.stopEventLoop();
+            } catch (LibvirtException e) {
+                logger.warn("Failed to stop libvirt event loop: {}", e.getMessage());
+            }
+        }
+    }
+
+    private final class PooledConnection {
+        private final String uri;
+        private final Semaphore permits;
+        private volatile Connect conn;
+        private final Set<LifecycleListener> registeredListeners = new HashSet<>();
+
+        private PooledConnection(String uri, Semaphore permits) {
+            this.uri = uri;
+            this.permits = permits;
+        }
+
+        private synchronized Connect get() throws LibvirtException {
+            if (conn == null || !conn.isAlive()) {
+                if (conn != null) {
+                    invalidate(conn);
+                }
+
+                conn = open(uri);
+                registeredListeners.clear();
+            }
+
+            for (LifecycleListener listener : lifecycleListeners.getOrDefault(uri, List.of())) {
+                if (!registeredListeners.contains(listener)) {
+                    conn.addLifecycleListener(listener);
+                    registeredListeners.add(listener);
+                }
+            }
+            return conn;
+        }
+
+        /**
+         * Called from the close callback, where the connection is already
+         * gone and must not be closed again from inside libvirt's dispatch.
+         */
+        private synchronized void forget(Connect closed) {
+            if (conn != null && conn.equals(closed)) {
+                conn = null;
+            }
+        }
+
+        /**
+         * Drops {@code stale} if it is still the current connection, so a
+         * caller that saw an old connection fail cannot close a newer one.
+         */
+        private synchronized void invalidate(Connect stale) {
+            if (stale == null || conn != stale) {
+                return;
+            }
+
+            conn = null;
+            try {
+                stale.unregisterCloseListener();
+                stale.close();
+            } catch (LibvirtException e) {
+                logger.debug("Ignoring error closing libvirt connection to {}: {}", uri, e.getMessage());
+            }
+        }
+    }
+}
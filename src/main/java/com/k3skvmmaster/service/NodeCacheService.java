@@ -0,0 +1,191 @@
+package com.k3skvmmaster.service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.k3skvmmaster.config.K3sConfig;
+import com.k3skvmmaster.util.mapper.KubernetesDataMapper;
+
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.models.V1Node;
+import io.kubernetes.client.openapi.models.V1NodeList;
+import io.kubernetes.client.openapi.models.V1NodeStatus;
+import io.kubernetes.client.util.Config;
+import io.kubernetes.client.util.generic.GenericKubernetesApi;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps the cluster's nodes in memory, fed by a list-then-watch informer, so
+ * reading them never touches the API server. Alongside the raw objects it
+ * keeps the mapped view the API returns, updated one node at a time, and
+ * pushes every change of that view to subscribed event streams. Status
+ * heartbeats that leave the view unchanged are not pushed.
+ */
+@Service
+public class NodeCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeCacheService.class);
+
+    @Autowired
+    private K3sConfig k3sConfig;
+
+    @Autowired
+    private KubernetesDataMapper kMapper;
+
+    private SharedInformerFactory informerFactory;
+    private SharedIndexInformer<V1Node> informer;
+
+    private final Map<String, Map<String, String>> view = new TreeMap<>();
+    private volatile Map<String, Map<String, String>> snapshot = Map.of();
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!k3sConfig.isNodeCacheEnabled()) {
+            return;
+        }
+
+        // Watches are long-lived, so this client must not time out idle reads
+        ApiClient client = k3sConfig.getApiUrl().isBlank()
+                ? Config.defaultClient()
+                : Config.fromUrl(k3sConfig.getApiUrl(), false);
+        client.setHttpClient(client.getHttpClient().newBuilder().readTimeout(0, TimeUnit.SECONDS).build());
+
+        GenericKubernetesApi<V1Node, V1NodeList> nodeApi = new GenericKubernetesApi<>(V1Node.class,
+                V1NodeList.class, "", "v1", "nodes", client);
+
+        informerFactory = new SharedInformerFactory(client);
+        informer = informerFactory.sharedIndexInformerFor(nodeApi, V1Node.class, 0);
+        informer.addEventHandler(new ResourceEventHandler<>() {
+            @Override
+            public void onAdd(V1Node node) {
+                put(node, "added");
+            }
+
+            @Override
+            public void onUpdate(V1Node oldNode, V1Node newNode) {
+                put(newNode, "updated");
+            }
+
+            @Override
+            public void onDelete(V1Node node, boolean deletedFinalStateUnknown) {
+                remove(node.getMetadata().getName());
+            }
+        });
+
+        informerFactory.startAllRegisteredInformers();
+        logger.info("Started node informer");
+    }
+
+    /**
+     * True once the informer has completed its initial list; until then
+     * callers should fall back to listing nodes directly.
+     */
+    public boolean isSynced() {
+        return informer != null && informer.hasSynced();
+    }
+
+    /** The mapped node view, keyed by node name. Never blocks. */
+    public Map<String, Map<String, String>> getNodes() {
+        return snapshot;
+    }
+
+    /**
+     * Opens an event stream that starts with the current view and then
+     * receives {@code added}, {@code updated} and {@code deleted} events.
+     * The snapshot is sent under the view's lock, so no event for a change
+     * it misses can reach the stream before it.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(k3sConfig.getNodeStreamTimeoutMs());
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+
+        synchronized (view) {
+            try {
+                emitter.send(SseEmitter.event().name("snapshot").data(snapshot));
+                emitters.add(emitter);
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        }
+        return emitter;
+    }
+
+    private void put(V1Node node, String event) {
+        String name = node.getMetadata().getName();
+        if (!hasStatus(node)) {
+            // A node that has just registered may not report status yet
+            logger.debug("Skipping node {} without status", name);
+            return;
+        }
+        Map<String, String> mapped = Collections.unmodifiableMap(kMapper.mapNodeToRto(node));
+
+        synchronized (view) {
+            if (Objects.equals(view.put(name, mapped), mapped)) {
+                return;
+            }
+            publishSnapshot();
+        }
+
+        broadcast(event, Map.of("name", name, "node", mapped));
+    }
+
+    private void remove(String name) {
+        synchronized (view) {
+            if (view.remove(name) == null) {
+                return;
+            }
+            publishSnapshot();
+        }
+
+        broadcast("deleted", Map.of("name", name));
+    }
+
+    private static boolean hasStatus(V1Node node) {
+        V1NodeStatus status = node.getStatus();
+        return status != null && status.getConditions() != null && status.getAddresses() != null
+                && status.getNodeInfo() != null;
+    }
+
+    private void publishSnapshot() {
+        snapshot = Collections.unmodifiableMap(new LinkedHashMap<>(view));
+    }
+
+    private void broadcast(String event, Object data) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (IOException | IllegalStateException e) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (informerFactory != null) {
+            informerFactory.stopAllRegisteredInformers();
+        }
+        emitters.forEach(SseEmitter::complete);
+    }
+}
@@ -0,0 +1,241 @@
+package com.k3skvmmaster.service;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.libvirt.Connect;
+import org.libvirt.LibvirtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import com.k3skvmmaster.config.NumaConfig;
+import com.k3skvmmaster.model.domain.NumaPlacement;
+import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.util.HostTopology;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+/**
+ * Gives pinned VMs dedicated host cores and memory from a single NUMA cell.
+ * A core counts as taken when any of its threads is pinned by a domain on
+ * the host, or has been handed out here for a VM that is not defined yet.
+ * Hugepage use is worked out the same way, from the memory of domains bound
+ * to the cell.
+ */
+@Service
+public class NumaPlacementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NumaPlacementService.class);
+
+    @Autowired
+    private NumaConfig numaConfig;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    /** What one VM holds on its host. */
+    private record Usage(int cell, Set<Integer> cpus, long hugepageKib, long memoryKib) {
+    }
+
+    private final Map<String, HostTopology> topologies = new ConcurrentHashMap<>();
+
+    // Placements handed out by this process, by hypervisor and VM name
+    private final Map<String, Map<String, Usage>> reservations = new HashMap<>();
+
+    public boolean isRequested(VmRequest request) {
+        return request.getNumaPinning() != null ? request.getNumaPinning() : numaConfig.isPinning();
+    }
+
+    /**
+     * Picks a NUMA cell on {@code hypervisor} with enough free cores, and
+     * hugepages if enabled, for {@code request} and reserves them. Returns
+     * null if the request is not to be pinned.
+     *
+     * @throws IllegalStateException if no cell can take the VM
+     */
+    public NumaPlacement place(String hypervisor, VmRequest request) throws LibvirtException {
+        if (!isRequested(request)) {
+            return null;
+        }
+
+        Map<String, Usage> usage = libvirtUtil.withConnection(hypervisor, "domain.pinning", conn -> {
+            if (!topologies.containsKey(hypervisor)) {
+                topologies.put(hypervisor, HostTopology.parse(conn.getCapabilities()));
+            }
+            return readUsage(conn);
+        });
+        HostTopology topology = topologies.get(hypervisor);
+
+        synchronized (reservations) {
+            Map<String, Usage> reserved = reservations.computeIfAbsent(hypervisor, h -> new HashMap<>());
+            reserved.forEach(usage::putIfAbsent);
+            usage.remove(request.getName());
+
+            Set<Integer> housekeeping = HostTopology.parseCpuset(numaConfig.getReservedCpus());
+            Set<Integer> taken = new TreeSet<>(housekeeping);
+            usage.values().forEach(u -> taken.addAll(u.cpus()));
+
+            // Emptiest cell first, which spreads pinned VMs across sockets
+            List<HostTopology.Cell> cells = new ArrayList<>(topology.cells());
+            cells.sort(Comparator.comparingLong((HostTopology.Cell cell) -> freeCores(cell, taken)).reversed());
+
+            for (HostTopology.Cell cell : cells) {
+                NumaPlacement placement = fit(cell, request, taken, housekeeping, usage);
+                if (placement != null) {
+                    long memoryKib = request.getMemory() * 1024L;
+                    reserved.put(request.getName(), new Usage(cell.id(), new TreeSet<>(coresOf(cell, placement)),
+                            placement.hugepageSizeKib() != null ? memoryKib : 0, memoryKib));
+                    logger.info("Pinned VM {} to NUMA cell {} on {}: vCPUs on {}", request.getName(), cell.id(),
+                            hypervisor, placement.vcpuPins());
+                    return placement;
+                }
+            }
+        }
+
+        throw new IllegalStateException(String.format(
+                "No NUMA cell on %s has %d free dedicated CPUs and %d MiB of %s memory for %s", hypervisor,
+                request.getVcpu(), request.getMemory(), numaConfig.isHugepages() ? "hugepage" : "local",
+                request.getName()));
+    }
+
+    /** Frees what was reserved for {@code vmName}, e.g. once it has been deleted. */
+    public void release(String vmName) {
+        synchronized (reservations) {
+            reservations.values().forEach(reserved -> reserved.remove(vmName));
+        }
+    }
+
+    private NumaPlacement fit(HostTopology.Cell cell, VmRequest request, Set<Integer> taken,
+            Set<Integer> housekeeping, Map<String, Usage> usage) {
+        long memoryKib = request.getMemory() * 1024L;
+        long boundKib = usage.values().stream().filter(u -> u.cell() == cell.id())
+                .mapToLong(Usage::memoryKib).sum();
+        if (cell.memoryKib() - boundKib < memoryKib) {
+            return null;
+        }
+
+        Long pageSize = null;
+        if (numaConfig.isHugepages()) {
+            pageSize = numaConfig.getHugepageSizeKib();
+            if (memoryKib % pageSize != 0) {
+                logger.warn("{} MiB is not a multiple of the {} KiB hugepage size", request.getMemory(), pageSize);
+                return null;
+            }
+            long usedKib = usage.values().stream().filter(u -> u.cell() == cell.id())
+                    .mapToLong(Usage::hugepageKib).sum();
+            long totalKib = cell.hugepages().getOrDefault(pageSize, 0L) * pageSize;
+            if (totalKib - usedKib < memoryKib) {
+                return null;
+            }
+        }
+
+        // Whole cores only, so no other VM shares a core's caches and execution units
+        List<HostTopology.Core> free = cell.cores().stream()
+                .filter(core -> core.cpus().stream().noneMatch(taken::contains))
+                .toList();
+        int threads = cell.cores().stream().mapToInt(core -> core.cpus().size()).min().orElse(1);
+        int coresNeeded = (request.getVcpu() + threads - 1) / threads;
+        if (free.size() < coresNeeded) {
+            return null;
+        }
+
+        List<Integer> pins = new ArrayList<>();
+        for (HostTopology.Core core : free.subList(0, coresNeeded)) {
+            core.cpus().stream().sorted().limit(threads).forEach(pins::add);
+        }
+        pins = pins.subList(0, request.getVcpu());
+
+        // The guest sees SMT siblings as such only when its vCPUs fill whole cores
+        boolean wholeCores = request.getVcpu() % threads == 0;
+
+        Set<Integer> cellHousekeeping = new TreeSet<>(housekeeping);
+        cellHousekeeping.retainAll(cell.cores().stream().flatMap(core -> core.cpus().stream()).toList());
+        String housekeepingCpuset = HostTopology.formatCpuset(!cellHousekeeping.isEmpty() ? cellHousekeeping
+                : !housekeeping.isEmpty() ? housekeeping : pins);
+
+        return new NumaPlacement(cell.id(), List.copyOf(pins), housekeepingCpuset,
+                wholeCores ? request.getVcpu() / threads : request.getVcpu(), wholeCores ? threads : 1, pageSize);
+    }
+
+    /** All threads of the cores {@code placement} uses, idle siblings included. */
+    private static Set<Integer> coresOf(HostTopology.Cell cell, NumaPlacement placement) {
+        Set<Integer> cpus = new TreeSet<>();
+        for (HostTopology.Core core : cell.cores()) {
+            if (core.cpus().stream().anyMatch(placement.vcpuPins()::contains)) {
+                cpus.addAll(core.cpus());
+            }
+        }
+        return cpus;
+    }
+
+    private static long freeCores(HostTopology.Cell cell, Set<Integer> taken) {
+        return cell.cores().stream().filter(core -> core.cpus().stream().noneMatch(taken::contains)).count();
+    }
+
+    /**
+     * Reads the pinning of every domain defined on the host, running or
+     * not, since a stopped domain gets its CPUs back when it starts.
+     */
+    private Map<String, Usage> readUsage(Connect conn) throws LibvirtException {
+        Map<String, Usage> usage = new HashMap<>();
+        XPath xpath = XPathFactory.newInstance().newXPath();
+
+        for (LibvirtUtil.DomainSummary summary : libvirtUtil.listAllDomains(conn)) {
+            String xml = conn.domainLookupByUUIDString(summary.uuid()).getXMLDesc(0);
+            try {
+                Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                        .parse(new InputSource(new StringReader(xml)));
+
+                Set<Integer> cpus = new TreeSet<>();
+                NodeList pins = (NodeList) xpath.evaluate("/domain/cputune/vcpupin/@cpuset", doc,
+                        XPathConstants.NODESET);
+                for (int i = 0; i < pins.getLength(); i++) {
+                    cpus.addAll(HostTopology.parseCpuset(pins.item(i).getNodeValue()));
+                }
+
+                String nodeset = xpath.evaluate("/domain/numatune/memory/@nodeset", doc);
+                if (cpus.isEmpty() && nodeset.isEmpty()) {
+                    continue;
+                }
+
+                // Only single-cell bindings, as made here, count against a cell's memory
+                Set<Integer> nodes = HostTopology.parseCpuset(nodeset);
+                int cell = nodes.size() == 1 ? nodes.iterator().next() : -1;
+                long memoryKib = toKib(Long.parseLong(xpath.evaluate("/domain/memory", doc).trim()),
+                        xpath.evaluate("/domain/memory/@unit", doc));
+                boolean hugepages = (Boolean) xpath.evaluate("boolean(/domain/memoryBacking/hugepages)", doc,
+                        XPathConstants.BOOLEAN);
+
+                usage.put(summary.name(), new Usage(cell, cpus, hugepages ? memoryKib : 0, memoryKib));
+            } catch (Exception e) {
+                logger.warn("Failed to read pinning of domain {}: {}", summary.name(), e.getMessage());
+            }
+        }
+        return usage;
+    }
+
+    private static long toKib(long value, String unit) {
+        return switch (unit.isEmpty() ? "KiB" : unit) {
+            case "b", "bytes" -> value / 1024;
+            case "M", "MiB" -> value * 1024;
+            case "G", "GiB" -> value * 1024 * 1024;
+            default -> value;
+        };
+    }
+}
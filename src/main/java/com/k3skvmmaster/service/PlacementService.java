@@ -0,0 +1,191 @@
+package com.k3skvmmaster.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.SchedulerConfig;
+import com.k3skvmmaster.model.dto.PlacementPolicy;
+import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.model.entity.VmEntity;
+import com.k3skvmmaster.model.rto.HypervisorResponse;
+import com.k3skvmmaster.repository.VmRepository;
+
+/**
+ * Chooses the hypervisor a new VM runs on. A host qualifies if its committed
+ * vCPUs and memory stay within the configured overcommit, it has the memory
+ * free right now and it is not too busy; among those the placement policy
+ * decides. A placed VM holds a reservation on its host until its job ends,
+ * so concurrent placements do not all pick the same host before any of them
+ * shows up in the store.
+ */
+@Service
+public class PlacementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlacementService.class);
+
+    @Autowired
+    private SchedulerConfig schedulerConfig;
+
+    @Autowired
+    private HypervisorInventoryService hypervisorInventoryService;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    private record Reservation(String hypervisorUri, int vcpu, int memory) {
+    }
+
+    private record Candidate(HypervisorInventoryService.HostSnapshot host, double memoryHeadroom) {
+    }
+
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+    /** Thrown when a VM of the requested name is still being created. */
+    public static class AlreadyPlacedException extends IllegalStateException {
+        public AlreadyPlacedException(String vmName) {
+            super("VM " + vmName + " is already being created");
+        }
+    }
+
+    /**
+     * Picks a hypervisor for {@code request}, routes the request to it and
+     * returns its URI. A request that already names a hypervisor is left
+     * there.
+     *
+     * @throws AlreadyPlacedException if a VM of the same name still holds a
+     *         reservation, so its job has not ended yet
+     * @throws IllegalStateException if no hypervisor has room for the VM
+     */
+    public synchronized String place(VmRequest request) {
+        if (reservations.containsKey(request.getName())) {
+            throw new AlreadyPlacedException(request.getName());
+        }
+
+        if (request.getLibvirtUri() != null && !request.getLibvirtUri().isBlank()) {
+            reserve(request, request.getLibvirtUri());
+            return request.getLibvirtUri();
+        }
+
+        Map<String, HypervisorResponse> status = describe();
+        List<Candidate> candidates = new ArrayList<>();
+        for (String uri : hypervisorInventoryService.getHypervisorUris()) {
+            Optional<HypervisorInventoryService.HostSnapshot> host = hypervisorInventoryService.getSnapshot(uri);
+            if (host.isEmpty()) {
+                continue;
+            }
+
+            HypervisorResponse committed = status.get(uri);
+            double vcpuCapacity = host.get().cpus() * schedulerConfig.getCpuOvercommit();
+            double memoryCapacity = host.get().memoryMb() * schedulerConfig.getMemoryOvercommit()
+                    - schedulerConfig.getReservedMemoryMb();
+
+            boolean fits = committed.getCommittedVcpu() + request.getVcpu() <= vcpuCapacity
+                    && committed.getCommittedMemoryMb() + request.getMemory() <= memoryCapacity
+                    && host.get().freeMemoryMb() - schedulerConfig.getReservedMemoryMb() >= request.getMemory()
+                    && (host.get().cpuLoad() == null || host.get().cpuLoad() <= schedulerConfig.getMaxCpuLoad());
+            if (fits) {
+                double headroom = (memoryCapacity - committed.getCommittedMemoryMb() - request.getMemory())
+                        / memoryCapacity;
+                candidates.add(new Candidate(host.get(), headroom));
+            }
+        }
+
+        Comparator<Candidate> byHeadroom = Comparator.comparingDouble(Candidate::memoryHeadroom);
+        if (schedulerConfig.getPolicy() == PlacementPolicy.SPREAD) {
+            byHeadroom = byHeadroom.reversed();
+        }
+
+        Candidate chosen = candidates.stream()
+                .min(byHeadroom
+                        .thenComparingDouble(candidate -> Optional.ofNullable(candidate.host().cpuLoad()).orElse(0.0))
+                        .thenComparing(candidate -> candidate.host().uri()))
+                .orElseThrow(() -> new IllegalStateException(String.format(
+                        "No hypervisor has room for a VM with %d vCPU and %d MiB", request.getVcpu(),
+                        request.getMemory())));
+
+        String uri = chosen.host().uri();
+        request.setLibvirtUri(uri);
+        reserve(request, uri);
+        logger.info("Placed VM {} on {} ({}, {} of {} hypervisors qualified)", request.getName(), uri,
+                schedulerConfig.getPolicy(), candidates.size(), hypervisorInventoryService.getHypervisorUris().size());
+        return uri;
+    }
+
+    /** Drops the reservation of {@code vmName} once its job has ended. */
+    public void release(String vmName) {
+        reservations.remove(vmName);
+    }
+
+    /** Wraps a job's work so the VM's reservation is released when it ends. */
+    public Callable<Object> releasingAfter(String vmName, Callable<Object> work) {
+        return () -> {
+            try {
+                return work.call();
+            } finally {
+                release(vmName);
+            }
+        };
+    }
+
+    /**
+     * Every schedulable hypervisor with its latest sample and what is
+     * committed on it, counting both stored VMs and pending placements.
+     */
+    public Map<String, HypervisorResponse> describe() {
+        Map<String, VmRepository.HostCommitment> stored = stateStoreService.findCommitments();
+
+        Map<String, HypervisorResponse> hosts = new LinkedHashMap<>();
+        for (String uri : hypervisorInventoryService.getHypervisorUris()) {
+            HypervisorResponse response = new HypervisorResponse();
+            response.setUri(uri);
+
+            VmRepository.HostCommitment commitment = stored.get(uri);
+            if (commitment != null) {
+                response.setCommittedVcpu(commitment.getVcpu() == null ? 0 : commitment.getVcpu());
+                response.setCommittedMemoryMb(commitment.getMemory() == null ? 0 : commitment.getMemory());
+                response.setVms(commitment.getVms());
+            }
+
+            hypervisorInventoryService.getSnapshot(uri).ifPresent(host -> {
+                response.setReachable(true);
+                response.setCpus(host.cpus());
+                response.setMemoryMb(host.memoryMb());
+                response.setFreeMemoryMb(host.freeMemoryMb());
+                response.setCpuLoad(host.cpuLoad());
+                response.setIoWait(host.ioWait());
+                response.setSampledAt(host.sampledAt());
+            });
+            hosts.put(uri, response);
+        }
+
+        // A reservation only counts until its VM is in the store on that host
+        reservations.forEach((name, reservation) -> {
+            HypervisorResponse host = hosts.get(reservation.hypervisorUri());
+            boolean inStore = stateStoreService.findVm(name)
+                    .map(VmEntity::getHypervisorUri)
+                    .filter(reservation.hypervisorUri()::equals)
+                    .isPresent();
+            if (host != null && !inStore) {
+                host.setCommittedVcpu(host.getCommittedVcpu() + reservation.vcpu());
+                host.setCommittedMemoryMb(host.getCommittedMemoryMb() + reservation.memory());
+                host.setVms(host.getVms() + 1);
+            }
+        });
+        return hosts;
+    }
+
+    private void reserve(VmRequest request, String uri) {
+        reservations.put(request.getName(), new Reservation(uri, request.getVcpu(), request.getMemory()));
+    }
+}
@@ -0,0 +1,287 @@
+package com.k3skvmmaster.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.model.entity.HypervisorEntity;
+import com.k3skvmmaster.model.entity.NodeEntity;
+import com.k3skvmmaster.model.entity.ProvisioningAttemptEntity;
+import com.k3skvmmaster.model.entity.VmEntity;
+import com.k3skvmmaster.model.entity.VmStatus;
+import com.k3skvmmaster.model.job.JobStatus;
+import com.k3skvmmaster.repository.HypervisorRepository;
+import com.k3skvmmaster.repository.NodeRepository;
+import com.k3skvmmaster.repository.ProvisioningAttemptRepository;
+import com.k3skvmmaster.repository.VmRepository;
+import com.k3skvmmaster.util.StageTimer;
+
+/**
+ * Records what this service knows about hypervisors, VMs, nodes and
+ * provisioning attempts in the local database, so it survives restarts and
+ * can be read back without asking libvirt or the guests.
+ */
+@Service
+public class StateStoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateStoreService.class);
+
+    public static final String ROLE_AGENT = "agent";
+
+    @Autowired
+    private HypervisorRepository hypervisorRepository;
+
+    @Autowired
+    private VmRepository vmRepository;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private ProvisioningAttemptRepository attemptRepository;
+
+    /**
+     * Starts a provisioning attempt for the VM described by {@code request}
+     * on {@code hypervisorUri}, replacing whatever was recorded for a VM of
+     * the same name.
+     */
+    @Transactional
+    public void beginProvisioning(VmRequest request, String hypervisorUri) {
+        LocalDateTime now = LocalDateTime.now();
+        touchHypervisor(hypervisorUri, now);
+
+        attemptRepository.findFirstByVmNameAndStatusOrderByStartedAtDesc(request.getName(), JobStatus.RUNNING)
+                .ifPresent(stale -> finishAttempt(stale, JobStatus.CANCELLED, "Superseded by a new attempt", now));
+
+        VmEntity vm = vmRepository.findByName(request.getName()).orElseGet(VmEntity::new);
+        vm.setName(request.getName());
+        vm.setDomainName(request.getName());
+        vm.setHypervisorUri(hypervisorUri);
+        vm.setIpAddress(request.getIpAddress());
+        vm.setVcpu(request.getVcpu());
+        vm.setMemory(request.getMemory());
+        vm.setStatus(VmStatus.PROVISIONING);
+        vm.setStage(null);
+        if (vm.getCreatedAt() == null) {
+            vm.setCreatedAt(now);
+        }
+        vm.setUpdatedAt(now);
+        vmRepository.save(vm);
+
+        ProvisioningAttemptEntity attempt = new ProvisioningAttemptEntity();
+        attempt.setVmName(request.getName());
+        attempt.setHypervisorUri(hypervisorUri);
+        attempt.setStatus(JobStatus.RUNNING);
+        attempt.setStartedAt(now);
+        attemptRepository.save(attempt);
+    }
+
+    /**
+     * Records that {@code stage} completed for {@code vmName}, applying
+     * {@code update} to the VM's record first.
+     */
+    @Transactional
+    public void recordStage(String vmName, String stage, Consumer<VmEntity> update) {
+        vmRepository.findByName(vmName).ifPresent(vm -> {
+            update.accept(vm);
+            vm.setStage(stage);
+            vm.setUpdatedAt(LocalDateTime.now());
+        });
+        attemptRepository.findFirstByVmNameAndStatusOrderByStartedAtDesc(vmName, JobStatus.RUNNING)
+                .ifPresent(attempt -> attempt.setStage(stage));
+    }
+
+    @Transactional
+    public void recordStage(String vmName, String stage) {
+        recordStage(vmName, stage, vm -> {
+        });
+    }
+
+    @Transactional
+    public void recordReady(String vmName, StageTimer timer) {
+        LocalDateTime now = LocalDateTime.now();
+        vmRepository.findByName(vmName).ifPresent(vm -> {
+            vm.setStatus(VmStatus.READY);
+            vm.setUpdatedAt(now);
+        });
+        attemptRepository.findFirstByVmNameAndStatusOrderByStartedAtDesc(vmName, JobStatus.RUNNING)
+                .ifPresent(attempt -> {
+                    attempt.setStageTimings(timer.toString());
+                    attempt.setTotalMs(timer.getTotalMs());
+                    finishAttempt(attempt, JobStatus.SUCCEEDED, null, now);
+                });
+    }
+
+    /**
+     * Records that provisioning {@code vmName} failed. A VM that is not being
+     * provisioned keeps its status, so a request refused because the VM
+     * already exists does not mark the existing VM failed.
+     */
+    @Transactional
+    public void recordFailure(String vmName, String message) {
+        LocalDateTime now = LocalDateTime.now();
+        vmRepository.findByName(vmName).filter(vm -> vm.getStatus() == VmStatus.PROVISIONING).ifPresent(vm -> {
+            vm.setStatus(VmStatus.FAILED);
+            vm.setUpdatedAt(now);
+        });
+        attemptRepository.findFirstByVmNameAndStatusOrderByStartedAtDesc(vmName, JobStatus.RUNNING)
+                .ifPresent(attempt -> finishAttempt(attempt, JobStatus.FAILED, message, now));
+    }
+
+    /**
+     * Points the VM record for the warm domain {@code domainName} at the name
+     * and address it was claimed under.
+     */
+    @Transactional
+    public void recordClaim(VmRequest request, String hypervisorUri, String domainName) {
+        LocalDateTime now = LocalDateTime.now();
+        VmEntity vm = vmRepository.findByHypervisorUriAndDomainName(hypervisorUri, domainName)
+                .orElseGet(() -> {
+                    VmEntity created = new VmEntity();
+                    created.setDomainName(domainName);
+                    created.setHypervisorUri(hypervisorUri);
+                    created.setCreatedAt(now);
+                    return created;
+                });
+
+        vmRepository.findByName(request.getName())
+                .filter(existing -> !existing.getId().equals(vm.getId()))
+                .ifPresent(existing -> {
+                    vmRepository.delete(existing);
+                    vmRepository.flush();
+                });
+
+        vm.setName(request.getName());
+        vm.setIpAddress(request.getIpAddress());
+        vm.setStatus(VmStatus.READY);
+        vm.setStage("claimed");
+        vm.setUpdatedAt(now);
+        vmRepository.save(vm);
+    }
+
+    @Transactional
+    public void recordNodeJoined(VmRequest request, String hypervisorUri, String k3sVersion) {
+        LocalDateTime now = LocalDateTime.now();
+        vmRepository.findByName(request.getName()).ifPresent(vm -> {
+            vm.setK3sRole(ROLE_AGENT);
+            vm.setUpdatedAt(now);
+        });
+
+        NodeEntity node = nodeRepository.findByName(request.getName()).orElseGet(NodeEntity::new);
+        node.setName(request.getName());
+        node.setVmName(request.getName());
+        node.setHypervisorUri(hypervisorUri);
+        node.setIpAddress(request.getIpAddress());
+        node.setRole(ROLE_AGENT);
+        node.setK3sVersion(k3sVersion);
+        node.setJoinedAt(now);
+        nodeRepository.save(node);
+    }
+
+    @Transactional
+    public void recordResized(String vmName, int vcpu, int memory) {
+        vmRepository.findByName(vmName).ifPresent(vm -> {
+            vm.setVcpu(vcpu);
+            vm.setMemory(memory);
+            vm.setUpdatedAt(LocalDateTime.now());
+        });
+    }
+
+    @Transactional
+    public void recordDeleted(String vmName) {
+        nodeRepository.deleteByVmName(vmName);
+        vmRepository.deleteByName(vmName);
+    }
+
+    @Transactional
+    public void recordHypervisorCapacity(String uri, int cpus, long memoryMb, long freeMemoryMb, Double cpuLoad) {
+        LocalDateTime now = LocalDateTime.now();
+        HypervisorEntity hypervisor = touchHypervisor(uri, now);
+        hypervisor.setCpus(cpus);
+        hypervisor.setMemoryMb(memoryMb);
+        hypervisor.setFreeMemoryMb(freeMemoryMb);
+        hypervisor.setCpuLoad(cpuLoad);
+    }
+
+    /** Committed vCPUs, memory and VM count per hypervisor, from one grouped query. */
+    public Map<String, VmRepository.HostCommitment> findCommitments() {
+        return vmRepository.sumCommitmentsByHypervisor().stream()
+                .collect(Collectors.toMap(VmRepository.HostCommitment::getHypervisorUri, c -> c));
+    }
+
+    public Optional<VmEntity> findVm(String name) {
+        return vmRepository.findByName(name);
+    }
+
+    public List<VmEntity> findVmsByDomainNames(Collection<String> domainNames) {
+        return domainNames.isEmpty() ? List.of() : vmRepository.findByDomainNameIn(domainNames);
+    }
+
+    public List<VmEntity> findVmsByDomainPrefix(String hypervisorUri, String prefix) {
+        return vmRepository.findByHypervisorUriAndDomainNameStartingWith(hypervisorUri, prefix);
+    }
+
+    /**
+     * Whether the last provisioning attempt for {@code vmName} on
+     * {@code hypervisorUri} failed or was cancelled, so what it left behind
+     * may be replaced. An attempt that is still running is not, its job may
+     * be writing to that disk right now.
+     */
+    public boolean hasUnfinishedAttempt(String vmName, String hypervisorUri) {
+        return attemptRepository.findByVmNameOrderByStartedAtDesc(vmName).stream()
+                .findFirst()
+                .filter(attempt -> hypervisorUri.equals(attempt.getHypervisorUri()))
+                .filter(attempt -> attempt.getStatus() == JobStatus.FAILED
+                        || attempt.getStatus() == JobStatus.CANCELLED)
+                .isPresent();
+    }
+
+    /**
+     * Marks attempts still recorded as running failed. Called at startup,
+     * when no job can be running yet, so these were cut short by a restart
+     * and their leftovers may be replaced.
+     */
+    @Transactional
+    public void failInterruptedAttempts() {
+        LocalDateTime now = LocalDateTime.now();
+        List<ProvisioningAttemptEntity> interrupted = attemptRepository.findByStatus(JobStatus.RUNNING);
+        interrupted.forEach(attempt -> finishAttempt(attempt, JobStatus.FAILED, "Interrupted by a restart", now));
+        if (!interrupted.isEmpty()) {
+            logger.info("Marked {} provisioning attempts interrupted by a restart as failed", interrupted.size());
+        }
+    }
+
+    public List<ProvisioningAttemptEntity> findAttempts(String vmName) {
+        return attemptRepository.findByVmNameOrderByStartedAtDesc(vmName);
+    }
+
+    private HypervisorEntity touchHypervisor(String uri, LocalDateTime now) {
+        HypervisorEntity hypervisor = hypervisorRepository.findByUri(uri).orElseGet(() -> {
+            HypervisorEntity created = new HypervisorEntity();
+            created.setUri(uri);
+            created.setCreatedAt(now);
+            logger.info("Recording new hypervisor {}", uri);
+            return created;
+        });
+        hypervisor.setLastSeenAt(now);
+        return hypervisorRepository.save(hypervisor);
+    }
+
+    private static void finishAttempt(ProvisioningAttemptEntity attempt, JobStatus status, String message,
+            LocalDateTime now) {
+        attempt.setStatus(status);
+        attempt.setMessage(message);
+        attempt.setFinishedAt(now);
+    }
+}
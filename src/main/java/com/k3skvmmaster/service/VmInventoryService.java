@@ -0,0 +1,270 @@
+package com.k3skvmmaster.service;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.libvirt.Domain;
+import org.libvirt.LibvirtException;
+import org.libvirt.event.DomainEvent;
+import org.libvirt.event.DomainEventType;
+import org.libvirt.event.LifecycleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.model.common.PageResponse;
+import com.k3skvmmaster.model.dto.VmState;
+import com.k3skvmmaster.model.entity.VmEntity;
+import com.k3skvmmaster.model.rto.VmInventoryResponse;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+/**
+ * Keeps an in-memory inventory of the domains on every hypervisor in use, so
+ * listing VMs does not go to libvirt at all. Each hypervisor is listed in
+ * bulk once, kept current from its lifecycle events, and relisted
+ * periodically to catch anything the events missed.
+ */
+@Service
+public class VmInventoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VmInventoryService.class);
+
+    @Autowired
+    private LibvirtService libvirtService;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    @Autowired
+    private HypervisorInventoryService hypervisorInventoryService;
+
+    private final Map<String, HypervisorIndex> hypervisors = new ConcurrentHashMap<>();
+
+    private record Entry(String name, String uuid, VmState state, String hypervisor, LocalDateTime updatedAt) {
+    }
+
+    private static final class HypervisorIndex {
+        private final NavigableMap<String, Entry> domains = new ConcurrentSkipListMap<>();
+        private final Map<String, LocalDateTime> undefined = new HashMap<>();
+        private final LifecycleListener listener;
+        private final Object loadLock = new Object();
+        private volatile boolean synced;
+
+        private HypervisorIndex(LifecycleListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Returns one page of VMs, sorted by domain name and then hypervisor.
+     * Every filter is optional; {@code name} matches a domain name prefix.
+     * Only a hypervisor that has not been listed yet costs a libvirt call.
+     */
+    public PageResponse<VmInventoryResponse> list(VmState state, String hypervisor, String name, int page,
+            int size) throws LibvirtException {
+        List<String> uris;
+        if (hypervisor != null && !hypervisor.isEmpty()) {
+            uris = List.of(libvirtUtil.resolveUri(hypervisor));
+            ensureIndexed(uris.get(0));
+        } else {
+            ensureIndexed(libvirtUtil.resolveUri(null));
+            uris = List.copyOf(hypervisors.keySet());
+        }
+
+        List<Entry> matches = uris.stream()
+                .flatMap(uri -> matching(hypervisors.get(uri), name))
+                .filter(entry -> state == null || entry.state() == state)
+                .sorted(Comparator.comparing(Entry::name).thenComparing(Entry::hypervisor))
+                .toList();
+
+        List<Entry> pageEntries = matches.stream()
+                .skip((long) page * size)
+                .limit(size)
+                .toList();
+
+        // One indexed lookup for the whole page fills in what only the store knows
+        Map<String, VmEntity> stored = new HashMap<>();
+        for (VmEntity vm : stateStoreService.findVmsByDomainNames(
+                pageEntries.stream().map(Entry::name).collect(Collectors.toSet()))) {
+            stored.put(vm.getHypervisorUri() + "#" + vm.getDomainName(), vm);
+        }
+
+        List<VmInventoryResponse> items = pageEntries.stream()
+                .map(entry -> toResponse(entry, stored.get(entry.hypervisor() + "#" + entry.name())))
+                .toList();
+
+        return new PageResponse<>(items, page, size, matches.size());
+    }
+
+    /**
+     * The last known state of a domain, if its hypervisor has been listed.
+     * Never calls libvirt.
+     */
+    public Optional<VmState> findState(String hypervisorUri, String domainName) {
+        HypervisorIndex index = hypervisors.get(hypervisorUri);
+        if (index == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(index.domains.get(domainName)).map(Entry::state);
+    }
+
+    /**
+     * Relists every hypervisor the service knows of. A failure on one
+     * hypervisor leaves its previous inventory in place.
+     */
+    @Scheduled(fixedDelayString = "${vm.inventory.resync-interval-ms:300000}")
+    public void resyncAll() {
+        Set<String> uris = new LinkedHashSet<>();
+        uris.add(libvirtUtil.resolveUri(null));
+        uris.addAll(hypervisorInventoryService.getHypervisorUris());
+        uris.addAll(libvirtService.getKnownUris());
+        uris.addAll(hypervisors.keySet());
+
+        for (String uri : uris) {
+            try {
+                resync(index(uri), uri);
+            } catch (LibvirtException | RuntimeException e) {
+                logger.warn("Failed to refresh VM inventory for {}: {}", uri, e.getMessage());
+            }
+        }
+    }
+
+    private Stream<Entry> matching(HypervisorIndex index, String prefix) {
+        if (index == null) {
+            return Stream.empty();
+        }
+        if (prefix == null || prefix.isEmpty()) {
+            return index.domains.values().stream();
+        }
+        return index.domains.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values().stream();
+    }
+
+    private void ensureIndexed(String uri) throws LibvirtException {
+        HypervisorIndex index = index(uri);
+        if (!index.synced) {
+            synchronized (index.loadLock) {
+                if (!index.synced) {
+                    resync(index, uri);
+                }
+            }
+        }
+    }
+
+    private HypervisorIndex index(String uri) {
+        return hypervisors.computeIfAbsent(uri, u -> {
+            HypervisorIndex index = new HypervisorIndex((domain, event) -> onLifecycleChange(u, domain, event));
+            try {
+                libvirtService.addLifecycleListener(u, index.listener);
+            } catch (LibvirtException e) {
+                logger.warn("Could not subscribe to lifecycle events on {}, inventory will lag until the next "
+                        + "refresh: {}", u, e.getMessage());
+            }
+            return index;
+        });
+    }
+
+    /**
+     * Replaces the inventory of {@code uri} with a fresh listing. Entries
+     * changed by an event while the listing was in flight are newer than the
+     * listing and are kept as they are.
+     */
+    private void resync(HypervisorIndex index, String uri) throws LibvirtException {
+        LocalDateTime listedAt = LocalDateTime.now();
+        List<LibvirtUtil.DomainSummary> listed = libvirtService.execute(uri, "domain.list",
+                libvirtUtil::listAllDomains);
+
+        synchronized (index) {
+            Set<String> seen = new HashSet<>();
+            for (LibvirtUtil.DomainSummary domain : listed) {
+                seen.add(domain.name());
+
+                Entry current = index.domains.get(domain.name());
+                LocalDateTime removedAt = index.undefined.get(domain.name());
+                if ((current != null && current.updatedAt().isAfter(listedAt))
+                        || (removedAt != null && removedAt.isAfter(listedAt))) {
+                    continue;
+                }
+                index.domains.put(domain.name(),
+                        new Entry(domain.name(), domain.uuid(), domain.state(), uri, listedAt));
+            }
+
+            index.domains.values()
+                    .removeIf(entry -> !seen.contains(entry.name()) && !entry.updatedAt().isAfter(listedAt));
+            index.undefined.values().removeIf(removedAt -> !removedAt.isAfter(listedAt));
+            index.synced = true;
+        }
+
+        logger.debug("VM inventory for {} holds {} domains", uri, index.domains.size());
+    }
+
+    private int onLifecycleChange(String uri, Domain domain, DomainEvent event) {
+        HypervisorIndex index = hypervisors.get(uri);
+        if (index == null) {
+            return 0;
+        }
+
+        try {
+            String name = domain.getName();
+            LocalDateTime now = LocalDateTime.now();
+
+            synchronized (index) {
+                Entry current = index.domains.get(name);
+                VmState state = switch (event.getType()) {
+                    case STARTED, RESUMED -> VmState.RUNNING;
+                    case SUSPENDED -> VmState.PAUSED;
+                    case STOPPED -> VmState.SHUTOFF;
+                    case CRASHED -> VmState.CRASHED;
+                    case PMSUSPENDED -> VmState.PMSUSPENDED;
+                    // Redefining a running domain does not change its state
+                    case DEFINED -> current != null ? current.state() : VmState.SHUTOFF;
+                    default -> null;
+                };
+
+                if (event.getType() == DomainEventType.UNDEFINED) {
+                    index.domains.remove(name);
+                    index.undefined.put(name, now);
+                } else if (state != null) {
+                    String uuid = current != null ? current.uuid() : domain.getUUIDString();
+                    index.domains.put(name, new Entry(name, uuid, state, uri, now));
+                    index.undefined.remove(name);
+                }
+            }
+        } catch (LibvirtException e) {
+            logger.debug("Ignoring lifecycle event for unknown domain: {}", e.getMessage());
+        }
+        return 0;
+    }
+
+    private static VmInventoryResponse toResponse(Entry entry, VmEntity stored) {
+        VmInventoryResponse response = new VmInventoryResponse();
+        response.setName(stored != null ? stored.getName() : entry.name());
+        response.setDomainName(entry.name());
+        response.setUuid(entry.uuid());
+        response.setState(entry.state());
+        response.setHypervisor(entry.hypervisor());
+        response.setUpdatedAt(entry.updatedAt());
+        if (stored != null) {
+            response.setIpAddress(stored.getIpAddress());
+            response.setK3sRole(stored.getK3sRole());
+            response.setCreatedAt(stored.getCreatedAt());
+        }
+        return response;
+    }
+}
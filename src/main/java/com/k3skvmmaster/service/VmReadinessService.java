@@ -0,0 +1,370 @@
+package com.k3skvmmaster.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.libvirt.Domain;
+import org.libvirt.LibvirtException;
+import org.libvirt.event.DomainEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.ReadinessConfig;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Tells callers when a freshly started VM can be logged into. A VM counts as
+ * ready as soon as either cloud-init phones home or its SSH port accepts a
+ * connection. Port probes for all pending VMs share one selector thread, and
+ * libvirt lifecycle events restart probing the moment a domain starts and
+ * fail the wait straight away if it stops or crashes instead.
+ *
+ * <p>The phone-home callback is only accepted with the token generated into
+ * that VM's user-data, an HMAC of its hypervisor and domain name under a key
+ * created at startup. A VM seeded before a restart can no longer phone home
+ * and is found ready by its port probe instead.
+ */
+@Service
+public class VmReadinessService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VmReadinessService.class);
+
+    @Autowired
+    private ReadinessConfig readinessConfig;
+
+    @Autowired
+    private LibvirtService libvirtService;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    private final Map<VmKey, PendingVm> pending = new ConcurrentHashMap<>();
+    private final Queue<PendingVm> registrations = new ConcurrentLinkedQueue<>();
+    private final Set<String> subscribedUris = ConcurrentHashMap.newKeySet();
+    private final SecretKeySpec tokenKey = newTokenKey();
+
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running = true;
+
+    /** Domain names are only unique per hypervisor. */
+    private record VmKey(String libvirtUri, String domainName) {
+    }
+
+    private static final class PendingVm {
+        private final VmKey key;
+        private final String name;
+        private final InetSocketAddress address;
+        private final CompletableFuture<String> ready = new CompletableFuture<>();
+        private volatile long nextProbeAt;
+        private SocketChannel channel;
+        private long probeDeadline;
+
+        private PendingVm(VmKey key, InetSocketAddress address) {
+            this.key = key;
+            this.name = key.domainName();
+            this.address = address;
+        }
+    }
+
+    /**
+     * Blocks until the domain {@code domainName} on {@code libvirtUri} is
+     * reachable at {@code ip:port}, using the configured timeout.
+     */
+    public void awaitReady(String libvirtUri, String domainName, String ip, int port) throws IOException {
+        awaitReady(libvirtUri, domainName, ip, port, Duration.ofSeconds(readinessConfig.getTimeoutSeconds()));
+    }
+
+    public void awaitReady(String libvirtUri, String domainName, String ip, int port, Duration timeout)
+            throws IOException {
+        CompletableFuture<String> ready = whenReady(libvirtUri, domainName, ip, port);
+        try {
+            String source = ready.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            logger.info("VM {} is ready ({})", domainName, source);
+        } catch (TimeoutException e) {
+            throw new IOException("VM " + domainName + " not ready after " + timeout.toSeconds() + " seconds");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for VM " + domainName, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io
+                    : new IOException("VM " + domainName + " failed to become ready", e.getCause());
+        } finally {
+            ready.cancel(false);
+        }
+    }
+
+    /**
+     * Non-blocking form of {@link #awaitReady}: the returned future fails with
+     * an IOException on timeout, and the watch is dropped either way.
+     */
+    public CompletableFuture<String> readyWithin(String libvirtUri, String domainName, String ip, int port,
+            Duration timeout) {
+        CompletableFuture<String> ready = whenReady(libvirtUri, domainName, ip, port);
+        return ready.copy()
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(e instanceof TimeoutException
+                        ? new IOException("VM " + domainName + " not ready after " + timeout.toSeconds() + " seconds")
+                        : e))
+                .whenComplete((source, error) -> ready.cancel(false));
+    }
+
+    /**
+     * Starts watching the domain and returns a future that completes with the
+     * signal that found it ready. Callers that do not go through
+     * {@link #awaitReady} must cancel the future when they stop waiting.
+     */
+    public CompletableFuture<String> whenReady(String libvirtUri, String domainName, String ip, int port) {
+        VmKey key = new VmKey(libvirtUtil.resolveUri(libvirtUri), domainName);
+        subscribe(key.libvirtUri());
+        ensureSelector();
+
+        PendingVm vm = new PendingVm(key, new InetSocketAddress(ip, port));
+        PendingVm previous = pending.put(key, vm);
+        if (previous != null) {
+            previous.ready.cancel(false);
+        }
+
+        vm.ready.whenComplete((source, error) -> {
+            pending.remove(key, vm);
+            selector.wakeup();
+        });
+        registrations.add(vm);
+        selector.wakeup();
+        return vm.ready;
+    }
+
+    /**
+     * The token the VM {@code domainName} on {@code libvirtUri} has to present
+     * when it phones home. It only holds until this service restarts.
+     */
+    public String phoneHomeToken(String libvirtUri, String domainName) {
+        return token(new VmKey(libvirtUtil.resolveUri(libvirtUri), domainName));
+    }
+
+    /**
+     * Marks a VM ready on a signal from inside the guest, such as cloud-init's
+     * phone-home. Returns false if nobody is waiting for a VM of that name
+     * with that token.
+     */
+    public boolean signalReady(String domainName, String token, String source) {
+        if (token == null) {
+            return false;
+        }
+
+        byte[] presented = token.getBytes(StandardCharsets.UTF_8);
+        return pending.values().stream()
+                .filter(vm -> vm.name.equals(domainName))
+                .filter(vm -> MessageDigest.isEqual(presented, token(vm.key).getBytes(StandardCharsets.UTF_8)))
+                .findFirst()
+                .map(vm -> vm.ready.complete(source))
+                .orElse(false);
+    }
+
+    private String token(VmKey key) {
+        try {
+            Mac mac = Mac.getInstance(tokenKey.getAlgorithm());
+            mac.init(tokenKey);
+            byte[] digest = mac.doFinal((key.libvirtUri() + "\n" + key.domainName())
+                    .getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to compute phone-home token", e);
+        }
+    }
+
+    private static SecretKeySpec newTokenKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new SecretKeySpec(key, "HmacSHA256");
+    }
+
+    private void subscribe(String libvirtUri) {
+        if (!subscribedUris.add(libvirtUri)) {
+            return;
+        }
+
+        try {
+            libvirtService.addLifecycleListener(libvirtUri,
+                    (domain, event) -> onLifecycleChange(libvirtUri, domain, event));
+        } catch (LibvirtException e) {
+            subscribedUris.remove(libvirtUri);
+            logger.warn("Could not subscribe to lifecycle events on {}, relying on probes: {}", libvirtUri,
+                    e.getMessage());
+        }
+    }
+
+    private int onLifecycleChange(String libvirtUri, Domain domain, DomainEvent event) {
+        try {
+            PendingVm vm = pending.get(new VmKey(libvirtUri, domain.getName()));
+            if (vm == null) {
+                return 0;
+            }
+
+            switch (event.getType()) {
+                case STARTED, RESUMED -> {
+                    vm.nextProbeAt = 0;
+                    selector.wakeup();
+                }
+                case STOPPED, SHUTDOWN, CRASHED -> vm.ready.completeExceptionally(
+                        new IOException("VM " + vm.name + " " + event.getType().name().toLowerCase()
+                                + " before becoming ready"));
+                default -> {
+                }
+            }
+        } catch (LibvirtException e) {
+            logger.debug("Ignoring lifecycle event for unknown domain: {}", e.getMessage());
+        }
+        return 0;
+    }
+
+    private synchronized void ensureSelector() {
+        if (selectorThread != null) {
+            return;
+        }
+
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open readiness selector", e);
+        }
+
+        selectorThread = new Thread(this::runSelector, "vm-readiness");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Only this thread touches probe channels. VMs are handed over through
+     * {@code registrations} and dropped here once their wait is over.
+     */
+    private void runSelector() {
+        List<PendingVm> active = new ArrayList<>();
+
+        while (running) {
+            try {
+                PendingVm added;
+                while ((added = registrations.poll()) != null) {
+                    active.add(added);
+                }
+
+                long now = System.currentTimeMillis();
+                long wait = readinessConfig.getProbeIntervalMs();
+
+                Iterator<PendingVm> it = active.iterator();
+                while (it.hasNext()) {
+                    PendingVm vm = it.next();
+                    if (vm.ready.isDone()) {
+                        closeProbe(vm);
+                        it.remove();
+                        continue;
+                    }
+
+                    if (vm.channel == null && vm.nextProbeAt <= now) {
+                        startProbe(vm, now);
+                    } else if (vm.channel != null && vm.probeDeadline <= now) {
+                        retryLater(vm, now);
+                    }
+
+                    long due = vm.channel != null ? vm.probeDeadline : vm.nextProbeAt;
+                    wait = Math.max(1, Math.min(wait, due - now));
+                }
+
+                selector.select(wait);
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    PendingVm vm = (PendingVm) key.attachment();
+                    try {
+                        if (key.isValid() && ((SocketChannel) key.channel()).finishConnect()) {
+                            closeProbe(vm);
+                            vm.ready.complete("port " + vm.address.getPort() + " open");
+                        }
+                    } catch (IOException e) {
+                        retryLater(vm, System.currentTimeMillis());
+                    }
+                }
+                selector.selectedKeys().clear();
+
+            } catch (IOException | RuntimeException e) {
+                logger.error("Readiness selector failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void startProbe(PendingVm vm, long now) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            vm.channel = channel;
+            vm.probeDeadline = now + readinessConfig.getProbeTimeoutMs();
+
+            if (channel.connect(vm.address)) {
+                closeProbe(vm);
+                vm.ready.complete("port " + vm.address.getPort() + " open");
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, vm);
+            }
+        } catch (IOException e) {
+            retryLater(vm, now);
+        }
+    }
+
+    private void retryLater(PendingVm vm, long now) {
+        closeProbe(vm);
+        vm.nextProbeAt = now + readinessConfig.getProbeIntervalMs();
+    }
+
+    private void closeProbe(PendingVm vm) {
+        if (vm.channel == null) {
+            return;
+        }
+
+        try {
+            vm.channel.close();
+        } catch (IOException e) {
+            logger.debug("Ignoring error closing probe for {}: {}", vm.name, e.getMessage());
+        }
+        vm.channel = null;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        running = false;
+        pending.values().forEach(vm -> vm.ready.cancel(false));
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("Ignoring error closing readiness selector: {}", e.getMessage());
+            }
+        }
+    }
+}
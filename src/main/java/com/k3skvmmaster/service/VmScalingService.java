@@ -0,0 +1,147 @@
+package com.k3skvmmaster.service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.libvirt.Domain;
+import org.libvirt.LibvirtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.ScalingConfig;
+import com.k3skvmmaster.config.SchedulerConfig;
+import com.k3skvmmaster.model.dto.VmResizeRequest;
+import com.k3skvmmaster.model.entity.VmEntity;
+import com.k3skvmmaster.model.rto.VmResponse;
+import com.k3skvmmaster.util.LibvirtUtil;
+
+/**
+ * Resizes running VMs in place by hot-plugging vCPUs and moving the memory
+ * balloon, up to the maximums the domain was defined with. The new size is
+ * written to the domain's persistent definition and the state store, so it
+ * holds across restarts and counts against the host in placement.
+ */
+@Service
+public class VmScalingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VmScalingService.class);
+
+    @Autowired
+    private ScalingConfig scalingConfig;
+
+    @Autowired
+    private SchedulerConfig schedulerConfig;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    @Autowired
+    private HypervisorInventoryService hypervisorInventoryService;
+
+    @Autowired
+    private BalloonService balloonService;
+
+    @Autowired
+    private K3sService k3sService;
+
+    @Autowired
+    private VmService vmService;
+
+    private record Limits(String uuid, int maxVcpu, long maxMemoryKib) {
+    }
+
+    // One resize per VM at a time, so limit checks, cordoning and the store update do not interleave
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Resizes the VM {@code name} as {@code request} says. Returns empty if
+     * there is no such VM.
+     *
+     * @throws IllegalStateException if the VM is not running, the new size
+     *                               is above its maximums or the host has
+     *                               not got the memory to grow it
+     */
+    public Optional<VmResponse> resize(String name, VmResizeRequest request) throws Exception {
+        synchronized (locks.computeIfAbsent(name, key -> new Object())) {
+            return resizeLocked(name, request);
+        }
+    }
+
+    private Optional<VmResponse> resizeLocked(String name, VmResizeRequest request) throws Exception {
+        Optional<VmEntity> found = stateStoreService.findVm(name);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        VmEntity vm = found.get();
+
+        int vcpu = request.getVcpu() != null ? request.getVcpu() : vm.getVcpu();
+        int memory = request.getMemory() != null ? request.getMemory() : vm.getMemory();
+        if (vcpu == vm.getVcpu() && memory == vm.getMemory()) {
+            return vmService.getVm(name);
+        }
+
+        Limits limits = libvirtUtil.withConnection(vm.getHypervisorUri(), "domain.limits", conn -> {
+            Domain domain = libvirtUtil.getDomainByName(vm.getDomainName(), conn);
+            if (domain.isActive() != 1) {
+                throw new IllegalStateException("VM " + name + " is not running");
+            }
+            return new Limits(domain.getUUIDString(), domain.getMaxVcpus(), domain.getMaxMemory());
+        });
+
+        if (vcpu > limits.maxVcpu()) {
+            throw new IllegalStateException(String.format("VM %s can have at most %d vCPUs", name,
+                    limits.maxVcpu()));
+        }
+        if (memory * 1024L > limits.maxMemoryKib()) {
+            throw new IllegalStateException(String.format("VM %s can have at most %d MiB", name,
+                    limits.maxMemoryKib() / 1024));
+        }
+
+        int growth = memory - vm.getMemory();
+        if (growth > 0) {
+            hypervisorInventoryService.getSnapshot(vm.getHypervisorUri())
+                    .filter(host -> host.freeMemoryMb() - schedulerConfig.getReservedMemoryMb() < growth)
+                    .ifPresent(host -> {
+                        throw new IllegalStateException(String.format("%s has %d MiB free, too little to add %d MiB",
+                                vm.getHypervisorUri(), host.freeMemoryMb(), growth));
+                    });
+        }
+
+        boolean cordon = vm.getK3sRole() != null
+                && (request.getCordon() != null ? request.getCordon() : scalingConfig.isCordon());
+        boolean wasCordoned = cordon && k3sService.cordonNode(name, true);
+
+        try {
+            libvirtUtil.withConnection(vm.getHypervisorUri(), "domain.resize", conn -> {
+                Domain domain = conn.domainLookupByUUIDString(limits.uuid());
+                libvirtUtil.resizeDomain(domain, vcpu != vm.getVcpu() ? vcpu : null,
+                        memory != vm.getMemory() ? memory * 1024L : null);
+                return null;
+            });
+        } finally {
+            if (cordon && !wasCordoned) {
+                uncordon(name);
+            }
+        }
+
+        balloonService.forget(limits.uuid());
+        stateStoreService.recordResized(name, vcpu, memory);
+        logger.info("Resized VM {} from {} vCPU/{} MiB to {} vCPU/{} MiB", name, vm.getVcpu(), vm.getMemory(),
+                vcpu, memory);
+        return vmService.getVm(name);
+    }
+
+    private void uncordon(String name) {
+        try {
+            k3sService.cordonNode(name, false);
+        } catch (Exception e) {
+            logger.warn("Failed to uncordon node {} after resizing it: {}", name, e.getMessage());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.k3skvmmaster.service;
 
-import org.libvirt.Connect;
+import java.util.Optional;
+
 import org.libvirt.Domain;
 import org.libvirt.LibvirtException;
 import org.slf4j.Logger;
@@ -8,17 +9,32 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.k3skvmmaster.config.LibvirtConfig;
+import com.k3skvmmaster.model.domain.NumaPlacement;
+import com.k3skvmmaster.model.dto.CustomizationMode;
 import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.model.entity.CheckpointStage;
+import com.k3skvmmaster.model.entity.ProvisioningCheckpointEntity;
+import com.k3skvmmaster.model.entity.VmEntity;
+import com.k3skvmmaster.model.job.AdmissionStage;
 import com.k3skvmmaster.model.rto.VmResponse;
 import com.k3skvmmaster.util.CloudInitUtil;
 import com.k3skvmmaster.util.LibvirtUtil;
+import com.k3skvmmaster.util.SshTarget;
 import com.k3skvmmaster.util.SshUtil;
+import com.k3skvmmaster.util.StageTimer;
+import com.k3skvmmaster.util.StorageVolumeUtil;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Service
 public class VmService {
 
     private static final Logger logger = LoggerFactory.getLogger(VmService.class);
 
+    @Autowired
+    private LibvirtConfig libvirtConfig;
+
     @Autowired
     private LibvirtUtil libvirtUtil;
 
@@ -28,44 +44,290 @@ public class VmService {
     @Autowired
     private SshUtil sshUtil;
 
+    @Autowired
+    private StorageVolumeUtil storageVolumeUtil;
+
+    @Autowired
+    private VmReadinessService vmReadinessService;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    @Autowired
+    private VmInventoryService vmInventoryService;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    @Autowired
+    private NumaPlacementService numaPlacementService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Provisions a VM. Every stage leaves a checkpoint, so calling this again
+     * for the same request, also after a restart, picks up after the last
+     * stage whose result can still be verified.
+     */
     public VmResponse createVm(VmRequest request) throws Exception {
-        // 1. Prepare disk image (copy base image and customize it)
+        StageTimer timer = new StageTimer(meterRegistry);
+
+        try {
+            // 1. Prepare disk image (clone the base volume, customize it offline if requested)
+            String diskPath = prepareDisk(request, timer);
+
+            // 2. Generate cloud-init ISO on remote system
+            String cloudInitIsoPath = prepareSeed(request, timer);
+
+            // 3. Define and start VM
+            VmResponse response = defineAndStart(request, diskPath, cloudInitIsoPath, timer);
+
+            // 4. Wait for VM to be ready
+            try (StageTimer.Stage stage = timer.start("boot")) {
+                vmReadinessService.awaitReady(request.getLibvirtUri(), request.getName(), request.getIpAddress(), 22);
+            }
+            recordBooted(request);
+
+            finishGuest(request, timer);
+            stateStoreService.recordReady(request.getName(), timer);
+
+            logger.info("VM {} provisioned in {} ms ({})", request.getName(), timer.getTotalMs(), timer);
+            response.setStageTimings(timer.getTimings());
+            return response;
+        } catch (Exception e) {
+            stateStoreService.recordFailure(request.getName(), e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the VM's disk and, in virt-customize mode, customizes it
+     * offline. Returns the disk path. A disk from an earlier attempt is kept
+     * if it still matches its checkpoint.
+     */
+    public String prepareDisk(VmRequest request, StageTimer timer) throws Exception {
+        String hypervisor = resolveHypervisor(request);
+
+        Optional<ProvisioningCheckpointEntity> checkpoint = checkpointService.find(request, hypervisor,
+                CheckpointStage.DISK);
+        if (checkpoint.isPresent()) {
+            Optional<StorageVolumeUtil.DiskVolume> disk = storageVolumeUtil.describeVmDisk(hypervisor,
+                    request.getName());
+            if (disk.isPresent() && disk.get().equals(new StorageVolumeUtil.DiskVolume(
+                    checkpoint.get().getDiskPath(), checkpoint.get().getDiskCapacity(),
+                    checkpoint.get().getDiskBackingPath()))) {
+                stateStoreService.beginProvisioning(request, hypervisor);
+                logger.info("Resuming VM {}: disk {} verified", request.getName(), disk.get().path());
+                stateStoreService.recordStage(request.getName(), "disk", vm -> vm.setDiskPath(disk.get().path()));
+                return disk.get().path();
+            }
+            logger.info("Disk checkpoint for VM {} no longer matches, recreating the disk", request.getName());
+        }
+
+        // Checked before the store is touched, so a refused request leaves the existing VM's record alone
+        if (libvirtUtil.withConnection(hypervisor, "domain.lookup",
+                conn -> libvirtUtil.isDomainDefined(request.getName(), conn))) {
+            throw new IllegalStateException("A domain named " + request.getName() + " is already defined on "
+                    + hypervisor);
+        }
+        boolean replaceDisk = stateStoreService.hasUnfinishedAttempt(request.getName(), hypervisor);
+
+        stateStoreService.beginProvisioning(request, hypervisor);
+        checkpointService.invalidateFrom(request.getName(), CheckpointStage.DISK);
+
         logger.info("Preparing disk image for VM: {}", request.getName());
-        sshUtil.prepareDiskImage(request.getName(), request.getName(), request.getRootPassword());
+        StorageVolumeUtil.DiskVolume disk;
+        try (AdmissionService.Permit permit = admissionService.acquire(hypervisor, AdmissionStage.DISK);
+                StageTimer.Stage stage = timer.start("disk")) {
+            disk = storageVolumeUtil.createVmDisk(hypervisor, request.getName(), request.getDiskMode(),
+                    replaceDisk);
+        }
+
+        if (resolveCustomizationMode(request) == CustomizationMode.VIRT_CUSTOMIZE) {
+            try (AdmissionService.Permit permit = admissionService.acquire(hypervisor, AdmissionStage.CUSTOMIZE);
+                    StageTimer.Stage stage = timer.start("virt-customize")) {
+                sshUtil.customizeDiskImage(SshTarget.fromLibvirtUri(hypervisor), disk.path(), request.getName(),
+                        request.getName(), request.getRootPassword());
+            }
+        }
+
+        checkpointService.record(request, hypervisor, CheckpointStage.DISK, c -> {
+            c.setDiskPath(disk.path());
+            c.setDiskCapacity(disk.capacity());
+            c.setDiskBackingPath(disk.backingPath());
+        });
+        stateStoreService.recordStage(request.getName(), "disk", vm -> vm.setDiskPath(disk.path()));
+        return disk.path();
+    }
 
-        // 2. Generate cloud-init files on remote system
-        String cloudInitIsoPath = cloudInitUtil.createRemoteCloudInitIso(request);
+    public String prepareSeed(VmRequest request, StageTimer timer) throws Exception {
+        String hypervisor = resolveHypervisor(request);
+        String knownSha256 = checkpointService.find(request, hypervisor, CheckpointStage.SEED)
+                .map(ProvisioningCheckpointEntity::getIsoSha256)
+                .orElse(null);
 
-        // 3. Create VM domain XML
-        String domainXml = libvirtUtil.generateDomainXml(request, cloudInitIsoPath);
+        CloudInitUtil.SeedIso iso;
+        try (AdmissionService.Permit permit = admissionService.acquire(hypervisor, AdmissionStage.SEED);
+                StageTimer.Stage stage = timer.start("cloud-init")) {
+            iso = cloudInitUtil.ensureRemoteCloudInitIso(request, knownSha256);
+        }
 
-        // 4. Define and start VM
-        Connect conn = libvirtUtil.createLibvirtConnection(request.getLibvirtUri());
-        Domain domain = libvirtUtil.defineAndStartDomain(domainXml, conn);
+        // Later stages only need redoing if the seed's content changed
+        if (!iso.sha256().equals(knownSha256)) {
+            checkpointService.invalidateFrom(request.getName(), CheckpointStage.SEED);
+            checkpointService.record(request, hypervisor, CheckpointStage.SEED, c -> {
+                c.setIsoPath(iso.path());
+                c.setIsoSha256(iso.sha256());
+            });
+        }
 
-        conn.close();
+        stateStoreService.recordStage(request.getName(), "cloud-init", vm -> vm.setSeedIsoPath(iso.path()));
+        return iso.path();
+    }
 
-        // 5. Wait for VM to be ready
-        libvirtUtil.waitForVmReady(request.getIpAddress(), 22, 300);
+    /**
+     * Defines and starts the domain. A domain from an earlier attempt is
+     * reused, and started if it is not running, as long as its UUID matches
+     * the checkpoint.
+     */
+    public VmResponse defineAndStart(VmRequest request, String diskPath, String cloudInitIsoPath, StageTimer timer)
+            throws Exception {
+        String hypervisor = resolveHypervisor(request);
 
-        if (request.getInstallNfsDeps()) {
-            sshUtil.downloadNfsDependencies(request.getUser(), request.getIpAddress());
+        Optional<ProvisioningCheckpointEntity> checkpoint = checkpointService.find(request, hypervisor,
+                CheckpointStage.DEFINE);
+        if (checkpoint.isPresent() && resumeDomain(hypervisor, request.getName(), checkpoint.get().getDomainUuid())) {
+            logger.info("Resuming VM {}: domain {} verified", request.getName(), checkpoint.get().getDomainUuid());
+            stateStoreService.recordStage(request.getName(), "define",
+                    vm -> vm.setUuid(checkpoint.get().getDomainUuid()));
+            return getVm(request.getName()).orElseThrow();
         }
+        checkpointService.invalidateFrom(request.getName(), CheckpointStage.DEFINE);
 
-        return buildVmResponse(domain);
+        String uuid;
+        try (AdmissionService.Permit permit = admissionService.acquire(hypervisor, AdmissionStage.DEFINE);
+                StageTimer.Stage stage = timer.start("define")) {
+            NumaPlacement numa = numaPlacementService.place(hypervisor, request);
+            String domainXml = libvirtUtil.generateDomainXml(request, diskPath, cloudInitIsoPath, numa);
+            try {
+                uuid = libvirtUtil.withConnection(hypervisor, "domain.define",
+                        conn -> libvirtUtil.defineAndStartDomain(domainXml, conn).getUUIDString());
+            } catch (LibvirtException | RuntimeException e) {
+                numaPlacementService.release(request.getName());
+                throw e;
+            }
+        }
+
+        checkpointService.record(request, hypervisor, CheckpointStage.DEFINE, c -> c.setDomainUuid(uuid));
+        stateStoreService.recordStage(request.getName(), "define", vm -> vm.setUuid(uuid));
+        return getVm(request.getName()).orElseThrow();
     }
 
-    public void deleteVm(String vmName, String libvirtUri) {
+    private boolean resumeDomain(String hypervisor, String name, String uuid) {
         try {
-            Connect conn = libvirtUtil.createLibvirtConnection(libvirtUri);
+            return libvirtUtil.withConnection(hypervisor, "domain.resume", conn -> {
+                Domain domain = conn.domainLookupByUUIDString(uuid);
+                if (!domain.getName().equals(name)) {
+                    return false;
+                }
+                if (domain.isActive() != 1) {
+                    domain.create();
+                }
+                return true;
+            });
+        } catch (LibvirtException e) {
+            logger.info("Domain checkpoint for VM {} no longer matches: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Records that the guest came up. The boot wait itself is never skipped
+     * on a resume, since it returns at once for a guest that is already up.
+     */
+    public void recordBooted(VmRequest request) {
+        checkpointService.record(request, resolveHypervisor(request), CheckpointStage.BOOT);
+        stateStoreService.recordStage(request.getName(), "boot");
+    }
+
+    /**
+     * Post-boot setup inside the guest, skipped if it already completed on
+     * the current domain.
+     */
+    public void finishGuest(VmRequest request, StageTimer timer) throws Exception {
+        String hypervisor = resolveHypervisor(request);
+        if (checkpointService.find(request, hypervisor, CheckpointStage.GUEST).isPresent()) {
+            logger.info("Resuming VM {}: guest setup already done", request.getName());
+            return;
+        }
+
+        if (request.getInstallNfsDeps()) {
+            try (AdmissionService.Permit permit = admissionService.acquire(hypervisor, AdmissionStage.GUEST);
+                    StageTimer.Stage stage = timer.start("nfs")) {
+                sshUtil.downloadNfsDependencies(request.getUser(), request.getIpAddress());
+            }
+        }
+        checkpointService.record(request, hypervisor, CheckpointStage.GUEST);
+    }
+
+    private CustomizationMode resolveCustomizationMode(VmRequest request) {
+        return request.getCustomizationMode() != null
+                ? request.getCustomizationMode()
+                : libvirtConfig.getCustomizationMode();
+    }
 
+    public String resolveHypervisor(VmRequest request) {
+        return libvirtUtil.resolveUri(request.getLibvirtUri());
+    }
+
+    /**
+     * Records that the VM requested as {@code request} lives in the libvirt
+     * domain {@code domainName}, as happens when a pre-built VM is claimed.
+     */
+    public void registerAlias(VmRequest request, String domainName) {
+        stateStoreService.recordClaim(request, resolveHypervisor(request), domainName);
+    }
+
+    public String resolveDomainName(String vmName) {
+        return stateStoreService.findVm(vmName).map(VmEntity::getDomainName).orElse(vmName);
+    }
+
+    /**
+     * Reads a VM from the local store. The status is the domain's state from
+     * the inventory when it has one, otherwise the provisioning status.
+     */
+    public Optional<VmResponse> getVm(String name) {
+        return stateStoreService.findVm(name).map(this::buildVmResponse);
+    }
+
+    /**
+     * Deletes the VM {@code name} with its disk and records. Without
+     * {@code libvirtUri} the VM is deleted from the hypervisor the store
+     * says it is on, falling back to the default one.
+     */
+    public void deleteVm(String name, String libvirtUri) {
+        String vmName = resolveDomainName(name);
+        String hypervisor = libvirtUri != null && !libvirtUri.isBlank()
+                ? libvirtUri
+                : stateStoreService.findVm(name).map(VmEntity::getHypervisorUri).orElse(null);
+        try {
             // Delete the VM domain
-            libvirtUtil.deleteDomain(vmName, conn);
-            conn.close();
+            libvirtUtil.withConnection(hypervisor, "domain.delete", conn -> {
+                libvirtUtil.deleteDomain(vmName, conn);
+                return null;
+            });
 
             // Clean up the disk image
             logger.info("Cleaning up disk image for VM: {}", vmName);
-            sshUtil.deleteDiskImage(vmName);
+            storageVolumeUtil.deleteVmDisk(hypervisor, vmName);
+            cloudInitUtil.forgetRemoteCloudInitIso(hypervisor, vmName);
+            numaPlacementService.release(vmName);
+            stateStoreService.recordDeleted(name);
+            checkpointService.clear(name);
 
         } catch (Exception e) {
             logger.error("Error deleting VM {}: {}", vmName, e.getMessage(), e);
@@ -73,16 +335,17 @@ public class VmService {
         }
     }
 
-    private VmResponse buildVmResponse(Domain domain) {
-        try {
-            VmResponse response = new VmResponse();
-            response.setName(domain.getName());
-            response.setStatus(domain.isActive() == 1 ? "running" : "stopped");
-            response.setVcpu(domain.getMaxVcpus());
-            response.setMemory((int) domain.getMaxMemory());
-            return response;
-        } catch (LibvirtException e) {
-            throw new RuntimeException(e);
-        }
+    private VmResponse buildVmResponse(VmEntity vm) {
+        VmResponse response = new VmResponse();
+        response.setName(vm.getName());
+        response.setStatus(vmInventoryService.findState(vm.getHypervisorUri(), vm.getDomainName())
+                .map(state -> state.name().toLowerCase())
+                .orElse(vm.getStatus().name().toLowerCase()));
+        response.setIpAddress(vm.getIpAddress());
+        response.setVcpu(vm.getVcpu());
+        response.setMemory(vm.getMemory());
+        response.setCreatedAt(vm.getCreatedAt());
+        response.setK3sRole(vm.getK3sRole());
+        return response;
     }
-}
\ No newline at end of file
+}
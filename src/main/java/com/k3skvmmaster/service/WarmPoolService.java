@@ -0,0 +1,449 @@
+package com.k3skvmmaster.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.k3skvmmaster.config.WarmPoolConfig;
+import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.model.dto.VmState;
+import com.k3skvmmaster.model.entity.VmEntity;
+import com.k3skvmmaster.model.entity.VmStatus;
+import com.k3skvmmaster.model.job.JobType;
+import com.k3skvmmaster.model.rto.VmResponse;
+import com.k3skvmmaster.util.CloudInitUtil;
+import com.k3skvmmaster.util.K3sUtil;
+import com.k3skvmmaster.util.LibvirtUtil;
+import com.k3skvmmaster.util.SshUtil;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Keeps a number of fully built, idle VMs per hypervisor and size. They are
+ * provisioned exactly like regular VMs on a staging address and have the k3s
+ * agent installed but not started. Claiming one only renames the host,
+ * moves it to the requested address, sets the requested password and lets
+ * the caller join it, after which the pool is topped up in the background.
+ *
+ * <p>Pool membership lives in memory, so after a restart each hypervisor's
+ * {@code warm-} domains are reconciled with the state store before the pool
+ * is refilled: ready ones are adopted with their staging IPs, the rest are
+ * deleted, and claimed ones are left alone.
+ */
+@Service
+public class WarmPoolService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmPoolService.class);
+
+    private static final String WARM_PREFIX = "warm-";
+
+    @Autowired
+    private WarmPoolConfig warmPoolConfig;
+
+    @Autowired
+    private VmService vmService;
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private VmReadinessService vmReadinessService;
+
+    @Autowired
+    private NumaPlacementService numaPlacementService;
+
+    @Autowired
+    private StateStoreService stateStoreService;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    @Autowired
+    private CloudInitUtil cloudInitUtil;
+
+    @Autowired
+    private SshUtil sshUtil;
+
+    @Autowired
+    private K3sUtil k3sUtil;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public enum WarmState {
+        BUILDING,
+        READY,
+        CLAIMED
+    }
+
+    public record PoolKey(String hypervisor, int vcpu, int memory) {
+    }
+
+    public static final class WarmVm {
+        private final String domainName;
+        private final PoolKey key;
+        private final String stagingIp;
+        private volatile WarmState state = WarmState.BUILDING;
+        private volatile boolean suspended;
+
+        private WarmVm(String domainName, PoolKey key, String stagingIp) {
+            this.domainName = domainName;
+            this.key = key;
+            this.stagingIp = stagingIp;
+        }
+
+        public String getDomainName() {
+            return domainName;
+        }
+
+        public PoolKey getKey() {
+            return key;
+        }
+
+        public WarmState getState() {
+            return state;
+        }
+
+        public boolean isSuspended() {
+            return suspended;
+        }
+    }
+
+    private final Map<String, WarmVm> vms = new ConcurrentHashMap<>();
+    private final Deque<String> freeStagingIps = new ArrayDeque<>();
+    private final Set<String> recoveredHypervisors = new HashSet<>();
+
+    @PostConstruct
+    public void init() {
+        freeStagingIps.addAll(warmPoolConfig.getStagingIps().stream().filter(ip -> !ip.isBlank()).toList());
+
+        for (WarmState state : WarmState.values()) {
+            Gauge.builder("warmpool.vms", vms, v -> v.values().stream().filter(vm -> vm.state == state).count())
+                    .tag("state", state.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return warmPoolConfig.isEnabled();
+    }
+
+    public List<WarmVm> getVms() {
+        return List.copyOf(vms.values());
+    }
+
+    /**
+     * Hands a ready VM matching the request's hypervisor and size to the
+     * caller, re-identified as the requested VM. Returns empty when the pool
+     * is disabled or has nothing matching, in which case the caller should
+     * build the VM from scratch.
+     */
+    public Optional<VmResponse> claim(VmRequest request) throws Exception {
+        if (!warmPoolConfig.isEnabled()) {
+            return Optional.empty();
+        }
+
+        // Warm VMs are built with the default profile and unpinned, and cannot be changed after the fact
+        if (libvirtUtil.resolveProfile(request.getProfile()) != libvirtUtil.resolveProfile(null)
+                || numaPlacementService.isRequested(request)) {
+            return Optional.empty();
+        }
+
+        // Warm VMs get the configured resize maximums, which are fixed once they are defined
+        VmRequest defaults = new VmRequest();
+        defaults.setVcpu(request.getVcpu());
+        defaults.setMemory(request.getMemory());
+        if (libvirtUtil.resolveMaxVcpu(request) != libvirtUtil.resolveMaxVcpu(defaults)
+                || libvirtUtil.resolveMaxMemory(request) != libvirtUtil.resolveMaxMemory(defaults)) {
+            return Optional.empty();
+        }
+
+        // Nor can the login user or the installed packages be changed; the password is set on claim
+        if (!Objects.equals(request.getUser(), defaults.getUser())
+                || !Objects.equals(request.getInstallNfsDeps(), defaults.getInstallNfsDeps())) {
+            return Optional.empty();
+        }
+
+        PoolKey key = new PoolKey(vmService.resolveHypervisor(request), request.getVcpu(), request.getMemory());
+        WarmVm vm = takeReady(key);
+        if (vm == null) {
+            logger.info("No warm VM available for {}, provisioning {} from scratch", key, request.getName());
+            return Optional.empty();
+        }
+
+        logger.info("Claiming warm VM {} as {}", vm.domainName, request.getName());
+
+        try {
+            if (vm.suspended) {
+                libvirtUtil.withConnection(key.hypervisor(), "domain.resume", conn -> {
+                    libvirtUtil.getDomainByName(vm.domainName, conn).resume();
+                    return null;
+                });
+                vm.suspended = false;
+            }
+
+            String netplan = "network:\n" + cloudInitUtil.generateNetworkConfig(request).indent(2);
+            sshUtil.reconfigureGuest(request.getUser(), vm.stagingIp, request.getName(), netplan,
+                    request.getRootPassword());
+            vmReadinessService.awaitReady(key.hypervisor(), vm.domainName, request.getIpAddress(), 22,
+                    Duration.ofSeconds(120));
+        } catch (Exception e) {
+            logger.error("Failed to claim warm VM {}: {}", vm.domainName, e.getMessage(), e);
+            discard(vm);
+            return Optional.empty();
+        } finally {
+            refill();
+        }
+
+        vmService.registerAlias(request, vm.domainName);
+        vms.remove(vm.domainName);
+        releaseStagingIp(vm.stagingIp);
+
+        return vmService.getVm(request.getName());
+    }
+
+    /**
+     * Tops every pool up to its target by queueing build jobs. Builds go
+     * through the JobService so they share each hypervisor's concurrency
+     * limit with regular provisioning. Runs from the schedule and after
+     * every claim, so it is synchronized: the deficit and the staging IPs
+     * for it are worked out by one caller at a time.
+     */
+    @Scheduled(fixedDelayString = "${warmpool.refill-interval-ms:30000}")
+    public synchronized void refill() {
+        if (!warmPoolConfig.isEnabled()) {
+            return;
+        }
+
+        // Staging IPs are shared by all hypervisors, so none are handed out
+        // while any host may still run warm VMs from before a restart
+        List<PoolKey> keys = poolKeys();
+        boolean recovered = true;
+        for (String hypervisor : keys.stream().map(PoolKey::hypervisor).distinct().toList()) {
+            recovered &= recover(hypervisor, keys);
+        }
+        if (!recovered) {
+            return;
+        }
+
+        Map<PoolKey, Long> counts = vms.values().stream()
+                .filter(vm -> vm.state != WarmState.CLAIMED)
+                .collect(Collectors.groupingBy(WarmVm::getKey, Collectors.counting()));
+
+        for (PoolKey key : keys) {
+            long deficit = warmPoolConfig.getTargetPerSize() - counts.getOrDefault(key, 0L);
+            for (long i = 0; i < deficit; i++) {
+                String stagingIp = allocateStagingIp();
+                if (stagingIp == null) {
+                    logger.warn("No free staging IP left for warm pool {}", key);
+                    return;
+                }
+
+                WarmVm vm = new WarmVm(WARM_PREFIX + UUID.randomUUID().toString().substring(0, 8), key, stagingIp);
+                vms.put(vm.domainName, vm);
+
+                try {
+                    jobService.submit(JobType.WARM_POOL_BUILD, vm.domainName, key.hypervisor(), () -> build(vm));
+                } catch (RejectedExecutionException e) {
+                    vms.remove(vm.domainName);
+                    releaseStagingIp(stagingIp);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconciles {@code hypervisor}'s {@code warm-} domains with the store
+     * once. A VM the store has as ready under its own name, of a pooled size
+     * and on a free staging IP is adopted and re-prestaged in a job; other
+     * unclaimed ones are deleted. Returns whether the host has been
+     * reconciled.
+     */
+    private boolean recover(String hypervisor, List<PoolKey> keys) {
+        if (recoveredHypervisors.contains(hypervisor)) {
+            return true;
+        }
+
+        Map<String, VmState> domains;
+        try {
+            domains = libvirtUtil.withConnection(hypervisor, "domain.list", libvirtUtil::listAllDomains)
+                    .stream()
+                    .filter(domain -> domain.name().startsWith(WARM_PREFIX))
+                    .collect(Collectors.toMap(LibvirtUtil.DomainSummary::name, LibvirtUtil.DomainSummary::state));
+        } catch (Exception e) {
+            logger.warn("Cannot list warm VMs on {} yet, not refilling: {}", hypervisor, e.getMessage());
+            return false;
+        }
+
+        Map<String, VmEntity> records = stateStoreService.findVmsByDomainPrefix(hypervisor, WARM_PREFIX).stream()
+                .collect(Collectors.toMap(VmEntity::getDomainName, vm -> vm));
+        Set<String> names = new HashSet<>(domains.keySet());
+        names.addAll(records.keySet());
+
+        for (String name : names) {
+            VmEntity record = records.get(name);
+            if (record != null && !name.equals(record.getName())) {
+                // Claimed: now a regular VM under another name
+                continue;
+            }
+            if (vms.containsKey(name)) {
+                continue;
+            }
+
+            VmState state = domains.get(name);
+            PoolKey key = record == null ? null
+                    : new PoolKey(hypervisor, record.getVcpu(), record.getMemory());
+            if (state != null && record != null && record.getStatus() == VmStatus.READY && keys.contains(key)
+                    && freeStagingIps.remove(record.getIpAddress())) {
+                WarmVm vm = new WarmVm(name, key, record.getIpAddress());
+                vm.suspended = state == VmState.PAUSED;
+                vms.put(name, vm);
+                try {
+                    jobService.submit(JobType.WARM_POOL_BUILD, name, hypervisor, () -> adopt(vm));
+                    logger.info("Adopting warm VM {} on {} at {}", name, hypervisor, vm.stagingIp);
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    vms.remove(name);
+                    releaseStagingIp(vm.stagingIp);
+                    return false;
+                }
+            }
+
+            logger.info("Deleting leftover warm VM {} on {}", name, hypervisor);
+            try {
+                if (state != null) {
+                    vmService.deleteVm(name, hypervisor);
+                } else {
+                    stateStoreService.recordDeleted(name);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to delete leftover warm VM {}: {}", name, e.getMessage());
+                return false;
+            }
+        }
+
+        recoveredHypervisors.add(hypervisor);
+        return true;
+    }
+
+    /** Brings an adopted VM back to the state a fresh build leaves it in. */
+    private Object adopt(WarmVm vm) throws Exception {
+        try {
+            if (vm.suspended) {
+                libvirtUtil.withConnection(vm.key.hypervisor(), "domain.resume", conn -> {
+                    libvirtUtil.getDomainByName(vm.domainName, conn).resume();
+                    return null;
+                });
+                vm.suspended = false;
+            }
+            return finishBuild(vm);
+        } catch (Exception e) {
+            discard(vm);
+            throw e;
+        }
+    }
+
+    private Object build(WarmVm vm) throws Exception {
+        VmRequest request = new VmRequest();
+        request.setName(vm.domainName);
+        request.setVcpu(vm.key.vcpu());
+        request.setMemory(vm.key.memory());
+        request.setIpAddress(vm.stagingIp);
+        request.setGateway(warmPoolConfig.getGateway());
+        request.setSystemUser(warmPoolConfig.getSystemUser());
+        request.setIsoPath(warmPoolConfig.getIsoPath());
+        request.setLibvirtUri(vm.key.hypervisor());
+        // Idle VMs must not hold dedicated cores and hugepages
+        request.setNumaPinning(false);
+
+        try {
+            vmService.createVm(request);
+            return finishBuild(vm);
+        } catch (Exception e) {
+            discard(vm);
+            throw e;
+        }
+    }
+
+    private Object finishBuild(WarmVm vm) throws Exception {
+        k3sUtil.prestageAgent(vm.stagingIp);
+
+        if (warmPoolConfig.isSuspendIdle()) {
+            libvirtUtil.withConnection(vm.key.hypervisor(), "domain.suspend", conn -> {
+                libvirtUtil.getDomainByName(vm.domainName, conn).suspend();
+                return null;
+            });
+            vm.suspended = true;
+        }
+
+        vm.state = WarmState.READY;
+        logger.info("Warm VM {} ready for {}", vm.domainName, vm.key);
+        return vm.domainName;
+    }
+
+    private synchronized WarmVm takeReady(PoolKey key) {
+        for (WarmVm vm : vms.values()) {
+            if (vm.key.equals(key) && vm.state == WarmState.READY) {
+                vm.state = WarmState.CLAIMED;
+                return vm;
+            }
+        }
+        return null;
+    }
+
+    private void discard(WarmVm vm) {
+        vms.remove(vm.domainName);
+        try {
+            vmService.deleteVm(vm.domainName, vm.key.hypervisor());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to clean up warm VM {}: {}", vm.domainName, e.getMessage());
+        }
+        releaseStagingIp(vm.stagingIp);
+    }
+
+    private List<PoolKey> poolKeys() {
+        List<String> hypervisors = warmPoolConfig.getHypervisors().stream().filter(h -> !h.isBlank()).toList();
+        if (hypervisors.isEmpty()) {
+            hypervisors = List.of(libvirtUtil.resolveUri(null));
+        }
+
+        List<PoolKey> keys = new ArrayList<>();
+        for (String hypervisor : hypervisors) {
+            for (String size : warmPoolConfig.getSizes()) {
+                String[] parts = size.trim().toLowerCase().split("x");
+                keys.add(new PoolKey(hypervisor, Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+            }
+        }
+        return keys;
+    }
+
+    private synchronized String allocateStagingIp() {
+        return freeStagingIps.pollFirst();
+    }
+
+    private synchronized void releaseStagingIp(String ip) {
+        if (!freeStagingIps.contains(ip)) {
+            freeStagingIps.addLast(ip);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.k3skvmmaster.util;
+
+/**
+ * A counting gate whose limit can move at runtime between one and a fixed
+ * maximum. Callers past the limit block in {@link #acquire()} until a permit
+ * is released or the limit is raised. Lowering the limit never interrupts
+ * work that already holds a permit; it only holds back new callers until
+ * enough of it has finished.
+ */
+public class AdaptiveLimiter {
+
+    private final int maxLimit;
+    private int limit;
+    private int inFlight;
+    private int waiting;
+
+    private long admitted;
+    private long totalWaitMs;
+    private long maxWaitMs;
+
+    public record Stats(int limit, int maxLimit, int inFlight, int waiting, long admitted, long avgWaitMs,
+            long maxWaitMs) {
+    }
+
+    public AdaptiveLimiter(int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * Blocks until a permit is free and takes it.
+     *
+     * @return how long the caller waited, in milliseconds
+     */
+    public synchronized long acquire() throws InterruptedException {
+        long startedAt = System.nanoTime();
+        waiting++;
+        try {
+            while (inFlight >= limit) {
+                wait();
+            }
+        } finally {
+            waiting--;
+        }
+        inFlight++;
+
+        long waitedMs = (System.nanoTime() - startedAt) / 1_000_000;
+        admitted++;
+        totalWaitMs += waitedMs;
+        maxWaitMs = Math.max(maxWaitMs, waitedMs);
+        return waitedMs;
+    }
+
+    public synchronized void release() {
+        inFlight = Math.max(0, inFlight - 1);
+        notifyAll();
+    }
+
+    /** Halves the limit, never below one. */
+    public synchronized void decrease() {
+        limit = Math.max(1, limit / 2);
+    }
+
+    /**
+     * Raises the limit by one, up to the maximum, but only while callers are
+     * actually held back by it. An idle gate keeps its limit, so it does not
+     * drift back to the maximum on a host that is still overloaded by other
+     * work.
+     */
+    public synchronized void increase() {
+        if (limit < maxLimit && waiting > 0) {
+            limit++;
+            notifyAll();
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(limit, maxLimit, inFlight, waiting, admitted,
+                admitted == 0 ? 0 : totalWaitMs / admitted, maxWaitMs);
+    }
+}
@@ -2,79 +2,38 @@ package com.k3skvmmaster.util;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.k3skvmmaster.config.SshConfig;
 
+/**
+ * A lease on a pooled SSH session. Closing it tears down the channels this
+ * lease opened and hands the underlying session back to the pool.
+ */
 public class AutoCloseSshSession implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(AutoCloseSshSession.class);
 
-    private final String privateKeyPath = "/root/.ssh/id_rsa";
-
+    private final SshSessionPool pool;
+    private final SshSessionPool.PooledSession pooled;
     private final Session session;
-    private final ChannelSftp channel;
-
-    private static final String DEFAULT_USERNAME = "jayden";
-    private static final String DEFAULT_HOST = "192.168.50.201";
-
-    public AutoCloseSshSession() throws JSchException {
-        this(DEFAULT_USERNAME, DEFAULT_HOST, false);
-    }
+    private ChannelSftp channel;
 
-    public AutoCloseSshSession(String username, String host) throws JSchException {
-        this(username, host, false);
-    }
-
-    public AutoCloseSshSession(String username, String host, Boolean usePassword) throws JSchException {
-        logger.info("Trying to connect to server: {}", host);
-
-        if (username == null || username.isEmpty()) {
-            username = DEFAULT_USERNAME;
-        }
-
-        if (host == null || host.isEmpty()) {
-            host = DEFAULT_HOST;
-        }
-
-        JSch jsch = new JSch();
-        jsch.addIdentity(privateKeyPath);
-
-        try {
-            session = jsch.getSession(username.trim(), host.trim(), 22);
-            session.setConfig("StrictHostKeyChecking", "no");
-
-            if (usePassword) {
-                session.setConfig("PreferredAuthentications", "password");
-                session.setPassword("ubuntu");
-            }
-
-            session.setTimeout(30000);
-            session.connect();
-
-            if (!session.isConnected()) {
-                throw new JSchException("SSH session failed to connect to " + host);
-            }
-
-            channel = (ChannelSftp) session.openChannel("sftp");
-            channel.connect();
-
-            if (!channel.isConnected()) {
-                throw new JSchException("SFTP channel failed to connect on " + host);
-            }
-
-            logger.info("SSH session and SFTP channel established with {}@{}", username, host);
-        } catch (Exception e) {
-            logger.error("Failed to establish SSH session: {}", e.getMessage(), e);
-            throw new JSchException("SSH session setup failed for " + username + "@" + host, e);
-        }
+    AutoCloseSshSession(SshSessionPool pool, SshSessionPool.PooledSession pooled, Session session) {
+        this.pool = pool;
+        this.pooled = pooled;
+        this.session = session;
     }
 
     @Override
@@ -82,73 +41,122 @@ public class AutoCloseSshSession implements AutoCloseable {
         if (channel != null && channel.isConnected()) {
             channel.disconnect();
         }
-        if (session != null && session.isConnected()) {
-            session.disconnect();
-        }
+        pool.release(pooled, session);
     }
 
     public Session getSession() {
         return session;
     }
 
-    public ChannelSftp getChannel() {
+    /**
+     * Returns this lease's SFTP channel, opening it on first use so that
+     * exec-only callers never pay for the subsystem startup.
+     */
+    public ChannelSftp getChannel() throws JSchException {
+        if (channel == null || !channel.isConnected()) {
+            channel = (ChannelSftp) session.openChannel("sftp");
+            channel.connect();
+
+            if (!channel.isConnected()) {
+                throw new JSchException("SFTP channel failed to connect on " + pooled.getKey());
+            }
+        }
         return channel;
     }
 
     /**
-     * Executes a command over SSH and returns the result with logging.
+     * Executes a command over SSH and returns the result with logging. The
+     * command is timed as {@code ssh.commands}, tagged with {@code operationName}.
      */
     public SshCommandResult executeSshCommand(String command, String operationName) throws IOException {
+        return executeSshCommand(command, operationName, null, null);
+    }
+
+    /**
+     * Executes a command over SSH, streaming its output as it arrives.
+     * stdout and stderr are pushed by the transport thread into bounded
+     * captures and {@code lineListener} sees each stdout/stderr line as soon as
+     * it is complete; it runs on the shared session thread, so it must not block.
+     * Completion is signalled by the channel closing both streams, which
+     * happens only after the exit status has been received.
+     */
+    public SshCommandResult executeSshCommand(String command, String operationName, Consumer<String> lineListener,
+            Duration timeout) throws IOException {
+        return executeSshCommand(command, operationName, null, lineListener, timeout);
+    }
+
+    /**
+     * Same as above, additionally feeding {@code input} to the command's stdin
+     * and closing it once the stream is exhausted.
+     */
+    public SshCommandResult executeSshCommand(String command, String operationName, InputStream input,
+            Consumer<String> lineListener, Duration timeout) throws IOException {
+        SshConfig config = pool.getConfig();
+        long timeoutMs = timeout != null ? timeout.toMillis() : config.getExecDefaultTimeoutMs();
+        Path spillDirectory = Path.of(config.getExecSpillDirectory());
+
+        Consumer<String> listener = lineListener != null
+                ? lineListener
+                : logger.isDebugEnabled() ? line -> logger.debug("[{}] {}", operationName, line) : null;
+
+        CountDownLatch streamsClosed = new CountDownLatch(2);
+        String captureName = operationName.replaceAll("[^A-Za-z0-9_-]", "_");
+        SshOutputCapture output = new SshOutputCapture(captureName + "-out", config.getExecTailBytes(),
+                spillDirectory, listener, streamsClosed);
+        SshOutputCapture error = new SshOutputCapture(captureName + "-err", config.getExecTailBytes(),
+                spillDirectory, listener, streamsClosed);
+
         ChannelExec channelExec = null;
+        long started = System.nanoTime();
+        String outcome = "error";
         try {
-            logger.info("Executing {} command: {}", operationName, command);
+            logger.info("Executing {} command", operationName);
+            logger.debug("{} command: {}", operationName, command);
 
             channelExec = (ChannelExec) session.openChannel("exec");
             channelExec.setCommand(command);
-            InputStream in = channelExec.getInputStream();
-            InputStream err = channelExec.getErrStream();
+            channelExec.setOutputStream(output);
+            channelExec.setErrStream(error);
+            if (input != null) {
+                channelExec.setInputStream(input);
+            }
             channelExec.connect();
 
-            while (!channelExec.isClosed()) {
-                Thread.sleep(100);
-            }
-
-            byte[] buffer = new byte[1024];
-            StringBuilder output = new StringBuilder();
-            StringBuilder error = new StringBuilder();
-
-            while (in.available() > 0) {
-                int len = in.read(buffer, 0, buffer.length);
-                if (len < 0)
-                    break;
-                output.append(new String(buffer, 0, len, StandardCharsets.UTF_8));
-            }
-            while (err.available() > 0) {
-                int len = err.read(buffer, 0, buffer.length);
-                if (len < 0)
-                    break;
-                error.append(new String(buffer, 0, len, StandardCharsets.UTF_8));
+            if (!streamsClosed.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                logger.error("{} command timed out after {} ms", operationName, timeoutMs);
+                throw new IOException(operationName + " command timed out after " + timeoutMs + " ms");
             }
 
             int exitCode = channelExec.getExitStatus();
-            logger.info("{} command exit code: {}", operationName, exitCode);
+            logger.info("{} command exit code: {} ({} ms, {} bytes stdout, {} bytes stderr)", operationName,
+                    exitCode, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), output.getTotalBytes(),
+                    error.getTotalBytes());
 
-            if (!output.isEmpty()) {
-                logger.info("{} command output: {}", operationName, output);
+            if (exitCode != 0 && error.getTotalBytes() > 0) {
+                logger.error("{} command error: {}", operationName, error.getTail());
             }
-            if (!error.isEmpty()) {
-                logger.error("{} command error: {}", operationName, error);
+
+            if (exitCode == 0) {
+                output.discardSpillFile();
+                error.discardSpillFile();
             }
+            outcome = exitCode == 0 ? "success" : "failure";
 
-            return new SshCommandResult(exitCode, output.toString(), error.toString());
+            return new SshCommandResult(exitCode, output.getTail(), error.getTail(), output.getSpillFile(),
+                    error.getSpillFile(), output.isTruncated() || error.isTruncated());
 
-        } catch (JSchException | InterruptedException e) {
+        } catch (JSchException e) {
             logger.error("Failed to execute {} command: {}", operationName, e.getMessage(), e);
             throw new IOException("Failed to execute " + operationName + " command", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while executing " + operationName + " command", e);
         } finally {
             if (channelExec != null && channelExec.isConnected()) {
                 channelExec.disconnect();
             }
+            pool.getMeterRegistry().timer("ssh.commands", "operation", operationName, "outcome", outcome)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         }
     }
 
@@ -156,11 +164,22 @@ public class AutoCloseSshSession implements AutoCloseable {
         private final int exitCode;
         private final String output;
         private final String error;
+        private final Path outputFile;
+        private final Path errorFile;
+        private final boolean truncated;
 
         public SshCommandResult(int exitCode, String output, String error) {
+            this(exitCode, output, error, null, null, false);
+        }
+
+        public SshCommandResult(int exitCode, String output, String error, Path outputFile, Path errorFile,
+                boolean truncated) {
             this.exitCode = exitCode;
             this.output = output;
             this.error = error;
+            this.outputFile = outputFile;
+            this.errorFile = errorFile;
+            this.truncated = truncated;
         }
 
         public int getExitCode() {
@@ -175,6 +194,22 @@ public class AutoCloseSshSession implements AutoCloseable {
             return error;
         }
 
+        /**
+         * Full stdout of a failed command whose output outgrew the in-memory
+         * tail, or null.
+         */
+        public Path getOutputFile() {
+            return outputFile;
+        }
+
+        public Path getErrorFile() {
+            return errorFile;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
         public boolean isSuccess() {
             return exitCode == 0;
         }
@@ -1,25 +1,63 @@
 package com.k3skvmmaster.util;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-
-import org.apache.commons.io.FileUtils;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.k3skvmmaster.config.ReadinessConfig;
+import com.k3skvmmaster.config.SshConfig;
 import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.service.VmReadinessService;
 
 @Component
 public class CloudInitUtil {
 
+  private static final Logger logger = LoggerFactory.getLogger(CloudInitUtil.class);
+
   @Autowired
   private SshUtil sshUtil;
 
-  public String generateUserData(VmRequest request) {
+  @Autowired
+  private LibvirtUtil libvirtUtil;
+
+  @Autowired
+  private SshConfig sshConfig;
+
+  @Autowired
+  private ReadinessConfig readinessConfig;
+
+  @Autowired
+  private VmReadinessService vmReadinessService;
+
+  private volatile String publicKey;
+
+  public record SeedIso(String path, String sha256) {
+  }
+
+  private final Map<String, SeedIso> uploaded = new ConcurrentHashMap<>();
+
+  /**
+   * Besides the login user, the user-data carries everything virt-customize
+   * used to bake into the disk: the hostname, the root password and this
+   * server's SSH key, so a VM can be provisioned without touching its disk.
+   */
+  public String generateUserData(VmRequest request) throws IOException {
     return String.format("""
         #cloud-config
+        hostname: %s
+        preserve_hostname: false
         users:
           - name: %s
             sudo: ['ALL=(ALL) NOPASSWD:ALL']
@@ -27,9 +65,20 @@ public class CloudInitUtil {
             shell: /bin/bash
             lock_passwd: false
             passwd: "%s"
+            ssh_authorized_keys:
+              - %s
+        chpasswd:
+          expire: false
+          users:
+            - name: root
+              password: "%s"
+              type: text
         """,
+        request.getName(),
         request.getUser(),
-        request.getRootPassword());
+        yamlEscape(request.getRootPassword()),
+        publicKey(),
+        yamlEscape(request.getRootPassword())) + phoneHome(request);
   }
 
   public String generateMetaData(VmRequest request) {
@@ -59,56 +108,101 @@ public class CloudInitUtil {
         request.getGateway());
   }
 
-  public String createCloudInitIso(VmRequest request) throws IOException {
-    String tempDir = Files.createTempDirectory("cloud-init-" + request.getName()).toString();
+  /**
+   * Builds the NoCloud seed ISO for {@code request} in memory.
+   */
+  public byte[] buildCloudInitIso(VmRequest request) throws IOException {
+    Map<String, byte[]> files = new LinkedHashMap<>();
+    files.put("user-data", generateUserData(request).getBytes(StandardCharsets.UTF_8));
+    files.put("meta-data", generateMetaData(request).getBytes(StandardCharsets.UTF_8));
+    files.put("network-config", generateNetworkConfig(request).getBytes(StandardCharsets.UTF_8));
+    return NoCloudIsoBuilder.build(files);
+  }
+
+  /**
+   * Places the VM's seed ISO on its hypervisor with a single upload. The
+   * image is keyed per VM, so concurrent creations never share files, and
+   * the upload is skipped when the same content is already there.
+   */
+  public String createRemoteCloudInitIso(VmRequest request) throws IOException {
+    return ensureRemoteCloudInitIso(request, null).path();
+  }
 
-    // Create cloud-init files
-    Files.write(Path.of(tempDir, "user-data"), generateUserData(request).getBytes());
-    Files.write(Path.of(tempDir, "meta-data"), generateMetaData(request).getBytes());
-    Files.write(Path.of(tempDir, "network-config"), generateNetworkConfig(request).getBytes());
+  /**
+   * Uploads the seed ISO for {@code request} unless the hypervisor already
+   * has it. Besides what this process uploaded itself, a file whose content
+   * hashes to {@code knownSha256}, e.g. from a provisioning checkpoint, is
+   * taken as current.
+   */
+  public SeedIso ensureRemoteCloudInitIso(VmRequest request, String knownSha256) throws IOException {
+    String hypervisor = libvirtUtil.resolveUri(request.getLibvirtUri());
+    String isoPath = String.format(request.getIsoPath(), request.getSystemUser(), request.getName());
+
+    byte[] iso = buildCloudInitIso(request);
+    SeedIso seed = new SeedIso(isoPath, sha256(iso));
+    String key = hypervisor + "#" + request.getName();
+
+    if (seed.equals(uploaded.get(key))) {
+      logger.info("Cloud-init ISO for {} is unchanged, skipping upload", request.getName());
+      return seed;
+    }
 
-    // Create ISO
-    String isoPath = "/tmp/" + request.getName() + "-cloud-init.iso";
-    createIso(tempDir, isoPath);
+    SshTarget target = SshTarget.fromLibvirtUri(hypervisor);
+    if (seed.sha256().equals(knownSha256)
+        && seed.sha256().equals(sshUtil.remoteSha256(target, isoPath).orElse(null))) {
+      logger.info("Cloud-init ISO for {} is already on the hypervisor, skipping upload", request.getName());
+    } else {
+      sshUtil.uploadBytes(iso, target, isoPath);
+    }
 
-    // Cleanup temp directory
-    FileUtils.deleteDirectory(new File(tempDir));
+    uploaded.put(key, seed);
+    return seed;
+  }
 
-    return isoPath;
+  /**
+   * Drops what is known about a VM's uploaded ISO, e.g. once the VM is gone.
+   */
+  public void forgetRemoteCloudInitIso(String libvirtUri, String vmName) {
+    uploaded.remove(libvirtUtil.resolveUri(libvirtUri) + "#" + vmName);
   }
 
-  private void createIso(String sourceDir, String isoPath) throws IOException {
-    ProcessBuilder pb = new ProcessBuilder(
-        "genisoimage", "-output", isoPath,
-        "-volid", "cidata", "-joliet", "-rock",
-        sourceDir);
-    Process process = pb.start();
-    try {
-      int exitCode = process.waitFor();
-      if (exitCode != 0) {
-        throw new IOException("Failed to create ISO, exit code: " + exitCode);
-      }
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new IOException("Interrupted while creating ISO", e);
+  /**
+   * Has cloud-init report back once it has finished, which is a faster and
+   * more precise readiness signal than probing the SSH port. The URL carries
+   * the VM's token, without which the callback is refused.
+   */
+  private String phoneHome(VmRequest request) {
+    String baseUrl = readinessConfig.getCallbackBaseUrl();
+    if (baseUrl == null || baseUrl.isBlank()) {
+      return "";
     }
-  }
 
-  public String createRemoteCloudInitIso(VmRequest request) throws IOException {
-    String remoteDir = String.format("/home/%s/cloud-init/cidata", request.getSystemUser());
+    return String.format("""
+        phone_home:
+          url: %s/api/v1/vms/$INSTANCE_ID/ready?token=%s
+          post: [instance_id, hostname]
+          tries: 10
+        """,
+        baseUrl.replaceAll("/+$", ""),
+        vmReadinessService.phoneHomeToken(request.getLibvirtUri(), request.getName()));
+  }
 
-    // Write cloud-init files to remote system
-    sshUtil.writeRemoteFile(generateUserData(request), remoteDir + "/user-data");
-    sshUtil.writeRemoteFile(generateMetaData(request), remoteDir + "/meta-data");
-    sshUtil.writeRemoteFile(generateNetworkConfig(request), remoteDir + "/network-config");
+  private String publicKey() throws IOException {
+    if (publicKey == null) {
+      publicKey = Files.readString(Path.of(sshConfig.getPrivateKeyPath() + ".pub"), StandardCharsets.UTF_8).trim();
+    }
+    return publicKey;
+  }
 
-    // Create ISO on remote system
-    String isoPath = sshUtil.createRemoteIso(
-        remoteDir,
-        request.getIsoPath(),
-        request.getName(),
-        request.getSystemUser());
+  private static String yamlEscape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
 
-    return isoPath;
+  private static String sha256(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,264 @@
+package com.k3skvmmaster.util;
+
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.k3skvmmaster.model.domain.DomainDefinition;
+import com.k3skvmmaster.model.domain.NumaPlacement;
+
+/**
+ * Writes a {@link DomainDefinition} as libvirt domain XML. Values are
+ * escaped by the stream writer, so names and paths can hold any character.
+ */
+public final class DomainXmlWriter {
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final XMLStreamWriter xml;
+    private int depth;
+    private boolean started;
+
+    private DomainXmlWriter(XMLStreamWriter xml) {
+        this.xml = xml;
+    }
+
+    public static String write(DomainDefinition domain) {
+        StringWriter out = new StringWriter(4096);
+        try {
+            XMLStreamWriter xml = OUTPUT_FACTORY.createXMLStreamWriter(out);
+            new DomainXmlWriter(xml).domain(domain);
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to write domain XML for " + domain.name(), e);
+        }
+        return out.append('\n').toString();
+    }
+
+    private void domain(DomainDefinition domain) throws XMLStreamException {
+        open("domain", "type", domain.type());
+        text("name", domain.name());
+        text("memory", String.valueOf(domain.maxMemoryMib()), "unit", "MiB");
+        if (domain.maxMemoryMib() > domain.memoryMib()) {
+            text("currentMemory", String.valueOf(domain.memoryMib()), "unit", "MiB");
+        }
+        text("vcpu", String.valueOf(domain.maxVcpu()), "placement", "static",
+                "current", domain.maxVcpu() > domain.vcpu() ? String.valueOf(domain.vcpu()) : null);
+        if (domain.iothreads() > 0) {
+            text("iothreads", String.valueOf(domain.iothreads()));
+        }
+        if (domain.numa() != null) {
+            numaPlacement(domain);
+        }
+
+        open("os");
+        text("type", "hvm", "arch", domain.arch(), "machine", domain.machine());
+        empty("boot", "dev", "hd");
+        close();
+
+        open("features");
+        empty("acpi");
+        empty("apic");
+        close();
+
+        if (domain.numa() == null) {
+            empty("cpu", "mode", "host-model", "check", "partial");
+        } else {
+            open("cpu", "mode", "host-model", "check", "partial");
+            empty("topology", "sockets", "1", "dies", "1", "cores", String.valueOf(domain.numa().cores()),
+                    "threads", String.valueOf(domain.numa().threads()));
+            open("numa");
+            empty("cell", "id", "0", "cpus", "0-" + (domain.vcpu() - 1),
+                    "memory", String.valueOf(domain.memoryMib()), "unit", "MiB");
+            close();
+            close();
+        }
+
+        open("clock", "offset", "utc");
+        empty("timer", "name", "rtc", "tickpolicy", "catchup");
+        empty("timer", "name", "pit", "tickpolicy", "delay");
+        empty("timer", "name", "hpet", "present", "no");
+        close();
+
+        open("pm");
+        empty("suspend-to-mem", "enabled", "no");
+        empty("suspend-to-disk", "enabled", "no");
+        close();
+
+        open("devices");
+        text("emulator", domain.emulator());
+        for (DomainDefinition.Controller controller : domain.controllers()) {
+            controller(controller);
+        }
+        for (DomainDefinition.Disk disk : domain.disks()) {
+            disk(disk);
+        }
+        for (DomainDefinition.NetworkInterface nic : domain.interfaces()) {
+            networkInterface(nic);
+        }
+        consoles();
+        if (domain.headless()) {
+            open("video");
+            empty("model", "type", "none");
+            close();
+        } else {
+            display();
+        }
+        if (domain.balloonStatsPeriod() != null) {
+            // Deflate on guest OOM, so a balloon left too large costs the guest no processes
+            open("memballoon", "model", "virtio", "autodeflate", "on");
+            empty("stats", "period", String.valueOf(domain.balloonStatsPeriod()));
+            close();
+        } else {
+            empty("memballoon", "model", "virtio");
+        }
+        open("rng", "model", "virtio");
+        text("backend", "/dev/urandom", "model", "random");
+        close();
+        close();
+
+        close();
+    }
+
+    private void numaPlacement(DomainDefinition domain) throws XMLStreamException {
+        NumaPlacement numa = domain.numa();
+        String hostCell = String.valueOf(numa.hostCell());
+
+        if (numa.hugepageSizeKib() != null) {
+            open("memoryBacking");
+            open("hugepages");
+            empty("page", "size", String.valueOf(numa.hugepageSizeKib()), "unit", "KiB", "nodeset", "0");
+            close();
+            close();
+        }
+
+        open("cputune");
+        for (int vcpu = 0; vcpu < numa.vcpuPins().size(); vcpu++) {
+            empty("vcpupin", "vcpu", String.valueOf(vcpu), "cpuset", String.valueOf(numa.vcpuPins().get(vcpu)));
+        }
+        empty("emulatorpin", "cpuset", numa.housekeepingCpuset());
+        for (int iothread = 1; iothread <= domain.iothreads(); iothread++) {
+            empty("iothreadpin", "iothread", String.valueOf(iothread), "cpuset", numa.housekeepingCpuset());
+        }
+        close();
+
+        open("numatune");
+        empty("memory", "mode", "strict", "nodeset", hostCell);
+        empty("memnode", "cellid", "0", "mode", "strict", "nodeset", hostCell);
+        close();
+    }
+
+    private void controller(DomainDefinition.Controller controller) throws XMLStreamException {
+        open("controller", "type", controller.type(), "index", String.valueOf(controller.index()),
+                "model", controller.model());
+        empty("driver", "queues", string(controller.queues()), "iothread", string(controller.iothread()));
+        close();
+    }
+
+    private void disk(DomainDefinition.Disk disk) throws XMLStreamException {
+        DomainDefinition.DiskDriver driver = disk.driver();
+
+        open("disk", "type", "file", "device", disk.device());
+        empty("driver", "name", "qemu", "type", driver.format(), "cache", driver.cache(), "io", driver.io(),
+                "discard", driver.discard(), "detect_zeroes", driver.detectZeroes(),
+                "iothread", string(driver.iothread()), "queues", string(driver.queues()));
+        empty("source", "file", disk.source());
+        empty("target", "dev", disk.targetDev(), "bus", disk.bus());
+        if (disk.readonly()) {
+            empty("readonly");
+        }
+        close();
+    }
+
+    private void networkInterface(DomainDefinition.NetworkInterface nic) throws XMLStreamException {
+        open("interface", "type", "network");
+        empty("source", "network", nic.network());
+        empty("model", "type", nic.model());
+        if (nic.driver() != null) {
+            empty("driver", "name", nic.driver(), "queues", string(nic.queues()));
+        }
+        close();
+    }
+
+    private void consoles() throws XMLStreamException {
+        open("serial", "type", "pty");
+        open("target", "type", "isa-serial", "port", "0");
+        empty("model", "name", "isa-serial");
+        close();
+        close();
+
+        open("console", "type", "pty");
+        empty("target", "type", "serial", "port", "0");
+        close();
+
+        open("channel", "type", "unix");
+        empty("target", "type", "virtio", "name", "org.qemu.guest_agent.0");
+        close();
+    }
+
+    private void display() throws XMLStreamException {
+        open("input", "type", "tablet", "bus", "usb");
+        empty("address", "type", "usb", "bus", "0", "port", "1");
+        close();
+        empty("input", "type", "mouse", "bus", "ps2");
+        empty("input", "type", "keyboard", "bus", "ps2");
+
+        open("graphics", "type", "vnc", "port", "-1", "autoport", "yes", "listen", "127.0.0.1");
+        empty("listen", "type", "address", "address", "127.0.0.1");
+        close();
+
+        open("video");
+        empty("model", "type", "cirrus", "vram", "16384", "heads", "1", "primary", "yes");
+        close();
+    }
+
+    // Elements are indented by hand since XMLStreamWriter writes everything on one line
+
+    private void open(String name, String... attributes) throws XMLStreamException {
+        indent();
+        xml.writeStartElement(name);
+        attributes(attributes);
+        depth++;
+    }
+
+    private void close() throws XMLStreamException {
+        depth--;
+        indent();
+        xml.writeEndElement();
+    }
+
+    private void empty(String name, String... attributes) throws XMLStreamException {
+        indent();
+        xml.writeEmptyElement(name);
+        attributes(attributes);
+    }
+
+    private void text(String name, String text, String... attributes) throws XMLStreamException {
+        indent();
+        xml.writeStartElement(name);
+        attributes(attributes);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
+    }
+
+    private void attributes(String... attributes) throws XMLStreamException {
+        for (int i = 0; i < attributes.length; i += 2) {
+            if (attributes[i + 1] != null) {
+                xml.writeAttribute(attributes[i], attributes[i + 1]);
+            }
+        }
+    }
+
+    private void indent() throws XMLStreamException {
+        if (started) {
+            xml.writeCharacters("\n" + "  ".repeat(depth));
+        }
+        started = true;
+    }
+
+    private static String string(Integer value) {
+        return value == null ? null : value.toString();
+    }
+}
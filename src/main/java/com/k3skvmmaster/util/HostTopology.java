@@ -0,0 +1,143 @@
+package com.k3skvmmaster.util;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * A host's NUMA cells as reported in libvirt's capabilities XML, with the
+ * cores of each cell and the hugepages set aside on it.
+ */
+public record HostTopology(List<Cell> cells) {
+
+    /** The hardware threads of one physical core. */
+    public record Core(int socket, int core, List<Integer> cpus) {
+    }
+
+    /**
+     * @param hugepages total pages per page size in KiB, free or not
+     */
+    public record Cell(int id, long memoryKib, List<Core> cores, Map<Long, Long> hugepages) {
+    }
+
+    public static HostTopology parse(String capabilitiesXml) {
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new InputSource(new StringReader(capabilitiesXml)));
+            XPath xpath = XPathFactory.newInstance().newXPath();
+
+            List<Cell> cells = new ArrayList<>();
+            NodeList cellNodes = (NodeList) xpath.evaluate("/capabilities/host/topology/cells/cell", doc,
+                    XPathConstants.NODESET);
+            for (int i = 0; i < cellNodes.getLength(); i++) {
+                Element cell = (Element) cellNodes.item(i);
+
+                Map<String, Core> cores = new LinkedHashMap<>();
+                NodeList cpus = (NodeList) xpath.evaluate("cpus/cpu", cell, XPathConstants.NODESET);
+                for (int j = 0; j < cpus.getLength(); j++) {
+                    Element cpu = (Element) cpus.item(j);
+                    int socket = intAttribute(cpu, "socket_id", 0);
+                    // Hosts that do not report cores get one core per CPU
+                    int id = Integer.parseInt(cpu.getAttribute("id"));
+                    int core = intAttribute(cpu, "core_id", id);
+                    cores.computeIfAbsent(socket + ":" + core, key -> new Core(socket, core, new ArrayList<>()))
+                            .cpus().add(id);
+                }
+
+                Map<Long, Long> hugepages = new LinkedHashMap<>();
+                NodeList pages = (NodeList) xpath.evaluate("pages", cell, XPathConstants.NODESET);
+                for (int j = 0; j < pages.getLength(); j++) {
+                    Element page = (Element) pages.item(j);
+                    hugepages.put(Long.parseLong(page.getAttribute("size")),
+                            Long.parseLong(page.getTextContent().trim()));
+                }
+
+                cells.add(new Cell(Integer.parseInt(cell.getAttribute("id")),
+                        Long.parseLong(xpath.evaluate("memory", cell).trim()), List.copyOf(cores.values()),
+                        hugepages));
+            }
+            return new HostTopology(cells);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read host NUMA topology", e);
+        }
+    }
+
+    /** Parses a libvirt cpuset such as {@code 0-3,8,^2}. */
+    public static TreeSet<Integer> parseCpuset(String cpuset) {
+        TreeSet<Integer> cpus = new TreeSet<>();
+        if (cpuset == null || cpuset.isBlank()) {
+            return cpus;
+        }
+
+        List<Integer> excluded = new ArrayList<>();
+        for (String part : cpuset.split(",")) {
+            part = part.trim();
+            boolean exclude = part.startsWith("^");
+            String range = exclude ? part.substring(1) : part;
+
+            int dash = range.indexOf('-');
+            int from = Integer.parseInt((dash < 0 ? range : range.substring(0, dash)).trim());
+            int to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1).trim());
+            for (int cpu = from; cpu <= to; cpu++) {
+                if (exclude) {
+                    excluded.add(cpu);
+                } else {
+                    cpus.add(cpu);
+                }
+            }
+        }
+        cpus.removeAll(excluded);
+        return cpus;
+    }
+
+    /** Writes CPUs as a libvirt cpuset, folding runs into ranges. */
+    public static String formatCpuset(Collection<Integer> cpus) {
+        StringBuilder cpuset = new StringBuilder();
+        Integer from = null;
+        Integer to = null;
+        for (int cpu : new TreeSet<>(cpus)) {
+            if (to != null && cpu == to + 1) {
+                to = cpu;
+                continue;
+            }
+            if (from != null) {
+                appendRange(cpuset, from, to);
+            }
+            from = cpu;
+            to = cpu;
+        }
+        if (from != null) {
+            appendRange(cpuset, from, to);
+        }
+        return cpuset.toString();
+    }
+
+    private static void appendRange(StringBuilder cpuset, int from, int to) {
+        if (!cpuset.isEmpty()) {
+            cpuset.append(',');
+        }
+        cpuset.append(from);
+        if (to > from) {
+            cpuset.append('-').append(to);
+        }
+    }
+
+    private static int intAttribute(Element element, String name, int defaultValue) {
+        String value = element.getAttribute(name);
+        return value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,166 @@
+package com.k3skvmmaster.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.jcraft.jsch.JSchException;
+import com.k3skvmmaster.config.ImageConfig;
+
+/**
+ * Moves large images to a hypervisor in fixed-size chunks. Each chunk is
+ * written in place with dd and recorded in a progress file next to the
+ * partial image, so an interrupted upload resumes at the first missing chunk.
+ * All-zero chunks are never sent and stay holes in the target file.
+ */
+@Component
+public class ImageTransferUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageTransferUtil.class);
+
+    @Autowired
+    private SshSessionPool sshSessionPool;
+
+    @Autowired
+    private ImageConfig imageConfig;
+
+    public void upload(Path localPath, long size, String sha256, SshTarget target, String remotePath)
+            throws IOException {
+        String partPath = remotePath + ".part";
+        String progressPath = partPath + ".progress";
+        int chunkSize = imageConfig.getChunkSizeMb() * 1024 * 1024;
+        long chunkCount = (size + chunkSize - 1) / chunkSize;
+        boolean compress = imageConfig.isCompress();
+
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire(target);
+                FileChannel file = FileChannel.open(localPath, StandardOpenOption.READ)) {
+
+            String remoteDir = remotePath.substring(0, remotePath.lastIndexOf('/'));
+            Set<Long> done = readProgress(ssh, remoteDir, progressPath);
+            if (!done.isEmpty()) {
+                logger.info("Resuming upload of {} to {}: {}/{} chunks already present", localPath, remotePath,
+                        done.size(), chunkCount);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            long sent = 0;
+            long skipped = 0;
+
+            for (long chunk = 0; chunk < chunkCount; chunk++) {
+                if (done.contains(chunk)) {
+                    continue;
+                }
+
+                buffer.clear();
+                long position = chunk * chunkSize;
+                int read;
+                do {
+                    read = file.read(buffer, position + buffer.position());
+                } while (read > 0 && buffer.hasRemaining());
+                buffer.flip();
+
+                String command;
+                byte[] payload = null;
+                if (isAllZero(buffer)) {
+                    command = String.format("echo %d >> %s", chunk, progressPath);
+                    skipped++;
+                } else {
+                    payload = compress ? gzip(buffer) : toArray(buffer);
+                    command = String.format(
+                            "%sdd of=%s bs=%d seek=%d conv=notrunc,sparse iflag=fullblock status=none && echo %d >> %s",
+                            compress ? "gzip -dc | " : "", partPath, chunkSize, chunk, chunk, progressPath);
+                    sent += payload.length;
+                }
+
+                AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "image-chunk",
+                        payload != null ? new ByteArrayInputStream(payload) : null, null, null);
+                if (!result.isSuccess()) {
+                    throw new IOException("Failed to upload chunk " + chunk + " of " + localPath + ": "
+                            + result.getError());
+                }
+            }
+
+            logger.info("Uploaded {} chunks of {} ({} bytes on the wire, {} sparse chunks skipped)",
+                    chunkCount - done.size(), localPath, sent, skipped);
+
+            finish(ssh, partPath, progressPath, remotePath, size, sha256);
+
+        } catch (JSchException e) {
+            logger.error("Failed to upload image: {}", e.getMessage(), e);
+            throw new IOException("Failed to upload image " + localPath, e);
+        }
+    }
+
+    private Set<Long> readProgress(AutoCloseSshSession ssh, String remoteDir, String progressPath)
+            throws IOException {
+        AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(
+                String.format("mkdir -p %s && cat %s 2>/dev/null || true", remoteDir, progressPath),
+                "image-progress");
+
+        Set<Long> done = new HashSet<>();
+        for (String line : result.getOutput().split("\n")) {
+            if (!line.isBlank()) {
+                done.add(Long.parseLong(line.trim()));
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Sets the final size (trailing holes are never written), verifies the
+     * content hash and only then moves the image into place.
+     */
+    private void finish(AutoCloseSshSession ssh, String partPath, String progressPath, String remotePath, long size,
+            String sha256) throws IOException {
+        AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(
+                String.format("truncate -s %d %s && sha256sum %s", size, partPath, partPath), "image-verify");
+
+        String remoteHash = result.getOutput().split("\\s+")[0];
+        if (!result.isSuccess() || !sha256.equals(remoteHash)) {
+            ssh.executeSshCommand(String.format("rm -f %s %s", partPath, progressPath), "image-discard");
+            throw new IOException("Uploaded image " + remotePath + " failed verification, expected " + sha256
+                    + " but got " + remoteHash);
+        }
+
+        result = ssh.executeSshCommand(String.format("mv %s %s && rm -f %s", partPath, remotePath, progressPath),
+                "image-commit");
+        if (!result.isSuccess()) {
+            throw new IOException("Failed to move uploaded image into place at " + remotePath);
+        }
+    }
+
+    private static boolean isAllZero(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] gzip(ByteBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.remaining() / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024)) {
+            gzip.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,25 +1,39 @@
 package com.k3skvmmaster.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.k3skvmmaster.config.K3sConfig;
+import com.k3skvmmaster.service.K3sArtifactService;
 
 @Component
 public class K3sUtil {
     private static final Logger logger = LoggerFactory.getLogger(SshUtil.class);
 
+    private static final String BINARY_PATH = "/usr/local/bin/k3s";
+    private static final String IMAGES_DIRECTORY = "/var/lib/rancher/k3s/agent/images";
+    private static final String SCRIPT_PATH = "/tmp/k3s-install.sh";
+
     private final K3sConfig k3sConfig;
+    private final SshSessionPool sshSessionPool;
+    private final K3sArtifactService k3sArtifactService;
 
-    public K3sUtil(K3sConfig k3sConfig) throws IOException {
+    public K3sUtil(K3sConfig k3sConfig, SshSessionPool sshSessionPool, K3sArtifactService k3sArtifactService)
+            throws IOException {
         this.k3sConfig = k3sConfig;
+        this.sshSessionPool = sshSessionPool;
+        this.k3sArtifactService = k3sArtifactService;
     }
 
     public String getJoinToken() throws Exception {
-        try (AutoCloseSshSession ssh = new AutoCloseSshSession("ubuntu", k3sConfig.getMasterNodeIp())) {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire("ubuntu", k3sConfig.getMasterNodeIp())) {
             String command = "sudo cat /var/lib/rancher/k3s/server/node-token";
             AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "get-join-token");
 
@@ -36,19 +50,20 @@ public class K3sUtil {
         logger.info("Attempting to join cluster with master node at: {}, with worker node: {}",
                 k3sConfig.getMasterNodeIp(), nodeIp);
 
-        try (AutoCloseSshSession ssh = new AutoCloseSshSession("ubuntu", nodeIp, true)) {
+        String token = getJoinToken();
+        logger.info("Recieved token: {}", token);
 
-            String token = getJoinToken();
-            logger.info("Recieved token: {}", token);
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire("ubuntu", nodeIp, true)) {
 
             String masterIp = k3sConfig.getMasterNodeIp();
+            String env = String.format("export K3S_URL=https://%s:6443 && export K3S_TOKEN=%s", masterIp.trim(),
+                    token.trim());
 
-            String command = String.format(
-                    "bash -c 'export K3S_URL=https://%s:6443 && export K3S_TOKEN=%s && export INSTALL_K3S_VERSION=%s && curl -sfL https://get.k3s.io | sh -'",
-                    masterIp.trim(), token.trim(), k3sConfig.getMasterVersion());
-
-            AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "join-cluster");
+            AutoCloseSshSession.SshCommandResult result = install(ssh, env, "join-cluster");
 
+            if (!result.isSuccess()) {
+                throw new IOException("k3s install failed to join the cluster, exit code: " + result.getExitCode());
+            }
             return result.getOutput();
 
         } catch (IOException e) {
@@ -58,4 +73,95 @@ public class K3sUtil {
         }
 
     }
+
+    /**
+     * Installs the k3s agent binary and unit without enabling or starting it,
+     * so a later {@link #joinCluster} only has to configure and start it.
+     */
+    public void prestageAgent(String nodeIp) throws Exception {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire("ubuntu", nodeIp, true)) {
+            String env = "export INSTALL_K3S_EXEC=agent && export INSTALL_K3S_SKIP_ENABLE=true"
+                    + " && export INSTALL_K3S_SKIP_START=true";
+
+            AutoCloseSshSession.SshCommandResult result = install(ssh, env, "prestage-agent");
+
+            if (!result.isSuccess()) {
+                throw new IOException("Failed to prestage k3s agent, exit code: " + result.getExitCode());
+            }
+        }
+    }
+
+    /**
+     * Runs the k3s installer with {@code env} exported. With the artifact
+     * cache enabled the binary, airgap images and script are placed on the
+     * node first and the installer is told not to download anything;
+     * otherwise it is fetched from get.k3s.io as before.
+     */
+    private AutoCloseSshSession.SshCommandResult install(AutoCloseSshSession ssh, String env, String op)
+            throws IOException {
+        String version = k3sConfig.getMasterVersion();
+
+        if (!k3sConfig.isArtifactsEnabled()) {
+            // Nodes taken from the warm pool already carry the k3s binary
+            return ssh.executeSshCommand(String.format(
+                    "bash -c '%s && export INSTALL_K3S_VERSION=%s && if [ -x /usr/local/bin/k3s ]; then export INSTALL_K3S_SKIP_DOWNLOAD=true; fi && curl -sfL https://get.k3s.io | sh -'",
+                    env, version), op);
+        }
+
+        K3sArtifactService.ArtifactSet artifacts = k3sArtifactService.ensureArtifacts(version);
+        placeArtifact(ssh, artifacts.binary(), BINARY_PATH, "755");
+        placeArtifact(ssh, artifacts.images(), IMAGES_DIRECTORY + "/" + artifacts.images().name(), "644");
+        placeArtifact(ssh, artifacts.script(), SCRIPT_PATH, "755");
+
+        return ssh.executeSshCommand(String.format(
+                "bash -c '%s && export INSTALL_K3S_VERSION=%s && export INSTALL_K3S_SKIP_DOWNLOAD=true && sh %s'",
+                env, version, SCRIPT_PATH), op);
+    }
+
+    /**
+     * Puts a cached artifact at {@code target} on the node unless an
+     * identical copy is already there. Nodes pull it from this server's
+     * artifact endpoint when a base URL is configured; otherwise it is
+     * streamed over the SSH session.
+     */
+    private void placeArtifact(AutoCloseSshSession ssh, K3sArtifactService.Artifact artifact, String target,
+            String mode) throws IOException {
+        String verify = String.format("echo '%s  %%s' | sudo sha256sum -c --status", artifact.sha256());
+
+        AutoCloseSshSession.SshCommandResult present = ssh.executeSshCommand(
+                String.format("[ -f %s ] && %s", target, String.format(verify, target)), "k3s-artifact-check");
+        if (present.isSuccess()) {
+            logger.info("{} already present on node, skipping", artifact.name());
+            return;
+        }
+
+        String part = target + ".part";
+        String fetch;
+        InputStream input = null;
+        String baseUrl = k3sConfig.getArtifactsBaseUrl();
+
+        if (baseUrl != null && !baseUrl.isBlank()) {
+            fetch = String.format("sudo curl -sfL -o %s %s/api/v1/artifacts/k3s/%s/%s", part,
+                    baseUrl.replaceAll("/+$", ""),
+                    URLEncoder.encode(k3sConfig.getMasterVersion(), StandardCharsets.UTF_8), artifact.name());
+        } else {
+            fetch = String.format("sudo sh -c 'cat > %s'", part);
+            input = Files.newInputStream(artifact.path());
+        }
+
+        String command = String.format("sudo mkdir -p %s && %s && %s && sudo chmod %s %s && sudo mv %s %s",
+                target.substring(0, target.lastIndexOf('/')), fetch, String.format(verify, part),
+                mode, part, part, target);
+
+        try (InputStream in = input) {
+            AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "k3s-artifact", in, null,
+                    null);
+            if (!result.isSuccess()) {
+                throw new IOException("Failed to place " + artifact.name() + " on node, exit code: "
+                        + result.getExitCode());
+            }
+        }
+
+        logger.info("Placed {} on node at {}", artifact.name(), target);
+    }
 }
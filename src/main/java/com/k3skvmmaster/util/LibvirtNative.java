@@ -0,0 +1,240 @@
+package com.k3skvmmaster.util;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.libvirt.Connect;
+import org.libvirt.Domain;
+
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Bindings for the few libvirt calls the Java binding does not wrap. Reading
+ * a listed domain's name and UUID is answered from the returned handle
+ * without another round trip.
+ */
+final class LibvirtNative {
+
+    static final int LIST_RUNNING = 1 << 4;
+    static final int LIST_PAUSED = 1 << 5;
+    static final int LIST_SHUTOFF = 1 << 6;
+    static final int LIST_OTHER = 1 << 7;
+
+    static final int NODE_CPU_STATS_ALL_CPUS = -1;
+    static final int NODE_MEMORY_STATS_ALL_CELLS = -1;
+
+    static final int AFFECT_LIVE = 1;
+    static final int AFFECT_CONFIG = 1 << 1;
+
+    private static final int UUID_STRING_BUFLEN = 37;
+    // virNodeCPUStats and virNodeMemoryStats share this layout
+    private static final int NODE_CPU_STATS_FIELD_LENGTH = 80;
+    private static final int NODE_CPU_STATS_SIZE = NODE_CPU_STATS_FIELD_LENGTH + Long.BYTES;
+
+    interface Virt extends Library {
+        int virConnectListAllDomains(Pointer conn, PointerByReference domains, int flags);
+
+        String virDomainGetName(Pointer domain);
+
+        int virDomainGetUUIDString(Pointer domain, byte[] buf);
+
+        int virDomainFree(Pointer domain);
+
+        int virNodeGetCPUStats(Pointer conn, int cpuNum, Pointer params, IntByReference nparams, int flags);
+
+        int virNodeGetMemoryStats(Pointer conn, int cellNum, Pointer params, IntByReference nparams, int flags);
+
+        int virDomainSetVcpusFlags(Pointer domain, int nvcpus, int flags);
+
+        int virDomainSetMemoryFlags(Pointer domain, NativeLong memory, int flags);
+
+        String virGetLastErrorMessage();
+    }
+
+    record DomainHandle(String name, String uuid) {
+    }
+
+    /**
+     * A native call cannot be made here, e.g. because libvirt cannot be
+     * loaded or is too old for it. Callers fall back to the Java binding.
+     */
+    static final class UnavailableException extends Exception {
+
+        UnavailableException(String message) {
+            super(message);
+        }
+
+        UnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static volatile Virt virt;
+    private static volatile Field connectionField;
+    private static volatile Field domainField;
+
+    private LibvirtNative() {
+    }
+
+    /**
+     * Lists every domain matching {@code flags} in one round trip.
+     *
+     * @throws UnavailableException if the native call is unavailable, in
+     *                              which case callers should fall back to
+     *                              the per-domain API
+     */
+    static List<DomainHandle> listAllDomains(Connect conn, int flags) throws UnavailableException {
+        Virt lib = load();
+        Pointer connection = connectionPointer(conn);
+
+        PointerByReference out = new PointerByReference();
+        int count = lib.virConnectListAllDomains(connection, out, flags);
+        if (count < 0) {
+            throw new UnavailableException("virConnectListAllDomains failed");
+        }
+
+        List<DomainHandle> domains = new ArrayList<>(count);
+        Pointer array = out.getValue();
+        if (array == null) {
+            return domains;
+        }
+
+        try {
+            for (Pointer domain : array.getPointerArray(0, count)) {
+                byte[] uuid = new byte[UUID_STRING_BUFLEN];
+                lib.virDomainGetUUIDString(domain, uuid);
+                domains.add(new DomainHandle(lib.virDomainGetName(domain), Native.toString(uuid)));
+                lib.virDomainFree(domain);
+            }
+        } finally {
+            Native.free(Pointer.nativeValue(array));
+        }
+        return domains;
+    }
+
+    /**
+     * Cumulative CPU time of the host in nanoseconds, summed over all CPUs
+     * and keyed by libvirt's field names ({@code user}, {@code kernel},
+     * {@code idle}, {@code iowait}).
+     */
+    static Map<String, Long> nodeCpuTimes(Connect conn) throws UnavailableException {
+        Virt lib = load();
+        Pointer connection = connectionPointer(conn);
+
+        IntByReference count = new IntByReference(0);
+        if (lib.virNodeGetCPUStats(connection, NODE_CPU_STATS_ALL_CPUS, null, count, 0) < 0 || count.getValue() == 0) {
+            throw new UnavailableException("virNodeGetCPUStats failed");
+        }
+
+        Memory params = new Memory((long) count.getValue() * NODE_CPU_STATS_SIZE);
+        if (lib.virNodeGetCPUStats(connection, NODE_CPU_STATS_ALL_CPUS, params, count, 0) < 0) {
+            throw new UnavailableException("virNodeGetCPUStats failed");
+        }
+
+        Map<String, Long> times = new HashMap<>();
+        for (int i = 0; i < count.getValue(); i++) {
+            long offset = (long) i * NODE_CPU_STATS_SIZE;
+            times.put(params.getString(offset), params.getLong(offset + NODE_CPU_STATS_FIELD_LENGTH));
+        }
+        return times;
+    }
+
+    /**
+     * Memory of the host in KiB, keyed by libvirt's field names
+     * ({@code total}, {@code free}, {@code buffers}, {@code cached}).
+     */
+    static Map<String, Long> nodeMemoryStats(Connect conn) throws UnavailableException {
+        Virt lib = load();
+        Pointer connection = connectionPointer(conn);
+
+        IntByReference count = new IntByReference(0);
+        if (lib.virNodeGetMemoryStats(connection, NODE_MEMORY_STATS_ALL_CELLS, null, count, 0) < 0
+                || count.getValue() == 0) {
+            throw new UnavailableException("virNodeGetMemoryStats failed");
+        }
+
+        Memory params = new Memory((long) count.getValue() * NODE_CPU_STATS_SIZE);
+        if (lib.virNodeGetMemoryStats(connection, NODE_MEMORY_STATS_ALL_CELLS, params, count, 0) < 0) {
+            throw new UnavailableException("virNodeGetMemoryStats failed");
+        }
+
+        Map<String, Long> stats = new HashMap<>();
+        for (int i = 0; i < count.getValue(); i++) {
+            long offset = (long) i * NODE_CPU_STATS_SIZE;
+            stats.put(params.getString(offset), params.getLong(offset + NODE_CPU_STATS_FIELD_LENGTH));
+        }
+        return stats;
+    }
+
+    /**
+     * Sets the vCPU count of {@code domain} as {@code flags} say, on the
+     * running domain, its persistent definition or both.
+     *
+     * @throws IllegalStateException if libvirt refuses the change
+     */
+    static void setVcpus(Domain domain, int count, int flags) throws UnavailableException {
+        Virt lib = load();
+        if (lib.virDomainSetVcpusFlags(domainPointer(domain), count, flags) < 0) {
+            throw new IllegalStateException(lib.virGetLastErrorMessage());
+        }
+    }
+
+    /**
+     * Sets the current memory of {@code domain} in KiB, as
+     * {@link #setVcpus} does the vCPU count.
+     *
+     * @throws IllegalStateException if libvirt refuses the change
+     */
+    static void setMemory(Domain domain, long memoryKib, int flags) throws UnavailableException {
+        Virt lib = load();
+        if (lib.virDomainSetMemoryFlags(domainPointer(domain), new NativeLong(memoryKib), flags) < 0) {
+            throw new IllegalStateException(lib.virGetLastErrorMessage());
+        }
+    }
+
+    private static Virt load() throws UnavailableException {
+        if (virt == null) {
+            try {
+                virt = Native.load("virt", Virt.class);
+            } catch (UnsatisfiedLinkError e) {
+                throw new UnavailableException("libvirt is not loadable", e);
+            }
+        }
+        return virt;
+    }
+
+    private static Pointer connectionPointer(Connect conn) throws UnavailableException {
+        try {
+            if (connectionField == null) {
+                Field field = Connect.class.getDeclaredField("vcp");
+                field.setAccessible(true);
+                connectionField = field;
+            }
+            return ((com.sun.jna.PointerType) connectionField.get(conn)).getPointer();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new UnavailableException("Cannot access the native libvirt connection", e);
+        }
+    }
+
+    private static Pointer domainPointer(Domain domain) throws UnavailableException {
+        try {
+            if (domainField == null) {
+                Field field = Domain.class.getDeclaredField("vdp");
+                field.setAccessible(true);
+                domainField = field;
+            }
+            return ((com.sun.jna.PointerType) domainField.get(domain)).getPointer();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new UnavailableException("Cannot access the native libvirt domain", e);
+        }
+    }
+}
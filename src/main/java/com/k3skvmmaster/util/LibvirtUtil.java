@@ -1,121 +1,147 @@
 package com.k3skvmmaster.util;
 
-import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import org.libvirt.Connect;
 import org.libvirt.Domain;
+import org.libvirt.DomainInfo;
+import org.libvirt.Error.ErrorNumber;
 import org.libvirt.LibvirtException;
+import org.libvirt.NodeInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.k3skvmmaster.config.BalloonConfig;
 import com.k3skvmmaster.config.LibvirtConfig;
+import com.k3skvmmaster.config.ScalingConfig;
+import com.k3skvmmaster.model.domain.DomainDefinition;
+import com.k3skvmmaster.model.domain.NumaPlacement;
+import com.k3skvmmaster.model.dto.DomainProfile;
 import com.k3skvmmaster.model.dto.VmRequest;
+import com.k3skvmmaster.model.dto.VmState;
 import com.k3skvmmaster.service.LibvirtService;
 
 @Component
 public class LibvirtUtil {
 
+  private static final Logger logger = LoggerFactory.getLogger(LibvirtUtil.class);
+
   @Autowired
   private LibvirtService libvirtService;
 
   @Autowired
   private LibvirtConfig libvirtConfig;
 
-  public Connect createLibvirtConnection(String connectionString) {
-    String uri = (connectionString != null && !connectionString.isEmpty())
+  @Autowired
+  private BalloonConfig balloonConfig;
+
+  @Autowired
+  private ScalingConfig scalingConfig;
+
+  public String resolveUri(String connectionString) {
+    return (connectionString != null && !connectionString.isEmpty())
         ? connectionString
         : libvirtConfig.getLibvirtUri();
+  }
 
-    try {
-      return libvirtService.connect(uri);
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to connect to libvirt: " + e.getMessage(), e);
-    }
+  /**
+   * Runs {@code callback} on the pooled connection for {@code connectionString}.
+   * {@code operation} names the call in the libvirt metrics.
+   */
+  public <T> T withConnection(String connectionString, String operation,
+      LibvirtService.LibvirtCallback<T> callback) throws LibvirtException {
+    return libvirtService.execute(resolveUri(connectionString), operation, callback);
+  }
+
+  public DomainProfile resolveProfile(DomainProfile profile) {
+    return profile != null ? profile : libvirtConfig.getDomainProfile();
+  }
+
+  /** Most vCPUs the VM for {@code request} can be resized to while running. */
+  public int resolveMaxVcpu(VmRequest request) {
+    return Math.max(request.getVcpu(),
+        request.getMaxVcpu() != null ? request.getMaxVcpu() : scalingConfig.getMaxVcpu());
+  }
+
+  /** Most MiB the VM for {@code request} can be resized to while running. */
+  public int resolveMaxMemory(VmRequest request) {
+    return Math.max(request.getMemory(),
+        request.getMaxMemory() != null ? request.getMaxMemory() : scalingConfig.getMaxMemoryMb());
+  }
+
+  public String generateDomainXml(VmRequest request, String diskPath, String cloudInitIsoPath) {
+    return generateDomainXml(request, diskPath, cloudInitIsoPath, null);
+  }
+
+  /** Same as above, pinned as {@code numa} says unless it is null. */
+  public String generateDomainXml(VmRequest request, String diskPath, String cloudInitIsoPath,
+      NumaPlacement numa) {
+    return DomainXmlWriter.write(buildDomain(request, diskPath, cloudInitIsoPath, numa));
   }
 
-  public String generateDomainXml(VmRequest request, String cloudInitIsoPath) {
-    // Generate VM domain XML using template
-    return String.format("""
-        <domain type='kvm' xmlns:qemu='http://libvirt.org/schemas/domain/qemu/1.0'>
-          <name>%s</name>
-          <memory unit='MiB'>%d</memory>
-          <vcpu placement='static'>%d</vcpu>
-          <os>
-            <type arch='x86_64' machine='pc-q35-5.2'>hvm</type>
-            <boot dev='hd'/>
-          </os>
-          <features>
-            <acpi/>
-            <apic/>
-          </features>
-          <cpu mode='host-model' check='partial'/>
-          <clock offset='utc'>
-            <timer name='rtc' tickpolicy='catchup'/>
-            <timer name='pit' tickpolicy='delay'/>
-            <timer name='hpet' present='no'/>
-          </clock>
-          <pm>
-            <suspend-to-mem enabled='no'/>
-            <suspend-to-disk enabled='no'/>
-          </pm>
-          <devices>
-            <emulator>/usr/bin/qemu-system-x86_64</emulator>
-            <disk type='file' device='disk'>
-              <driver name='qemu' type='qcow2'/>
-              <source file='/var/lib/libvirt/images/%s-disk.qcow2'/>
-              <target dev='vda' bus='virtio'/>
-            </disk>
-            <disk type='file' device='cdrom'>
-              <driver name='qemu' type='raw'/>
-              <source file='%s'/>
-              <target dev='sda' bus='sata'/>
-              <readonly/>
-            </disk>
-            <interface type='network'>
-              <source network='kube-net'/>
-              <model type='virtio'/>
-            </interface>
-            <serial type='pty'>
-              <target type='isa-serial' port='0'>
-                <model name='isa-serial'/>
-              </target>
-            </serial>
-            <console type='pty'>
-              <target type='serial' port='0'/>
-            </console>
-            <channel type='unix'>
-              <target type='virtio' name='org.qemu.guest_agent.0'/>
-            </channel>
-            <input type='tablet' bus='usb'>
-              <address type='usb' bus='0' port='1'/>
-            </input>
-            <input type='mouse' bus='ps2'/>
-            <input type='keyboard' bus='ps2'/>
-            <graphics type='vnc' port='-1' autoport='yes' listen='127.0.0.1'>
-              <listen type='address' address='127.0.0.1'/>
-            </graphics>
-            <video>
-              <model type='cirrus' vram='16384' heads='1' primary='yes'/>
-            </video>
-            <memballoon model='virtio'>
-              <address type='pci' domain='0x0000' bus='0x00' slot='0x08' function='0x0'/>
-            </memballoon>
-            <rng model='virtio'>
-              <backend model='random'>/dev/urandom</backend>
-            </rng>
-          </devices>
-        </domain>
-        """,
+  /**
+   * Lays out the domain for {@code request} according to its profile. The
+   * io-heavy profile moves the root disk off the host page cache onto
+   * asynchronous I/O in its own iothread, with one queue per vCPU and
+   * discard passed through to the storage. The net-heavy profile gives the
+   * NIC one vhost-net queue pair per vCPU. Both drop graphics and input
+   * devices, since nodes are only reached over SSH and the serial console.
+   */
+  public DomainDefinition buildDomain(VmRequest request, String diskPath, String cloudInitIsoPath,
+      NumaPlacement numa) {
+    DomainProfile profile = resolveProfile(request.getProfile());
+    int queues = Math.max(1, Math.min(request.getVcpu(), libvirtConfig.getDomainMaxQueues()));
+
+    boolean ioHeavy = profile == DomainProfile.IO_HEAVY;
+    boolean scsi = ioHeavy && "scsi".equalsIgnoreCase(libvirtConfig.getDomainDiskBus());
+
+    List<DomainDefinition.Controller> controllers = scsi
+        ? List.of(new DomainDefinition.Controller("scsi", 0, "virtio-scsi", queues, 1))
+        : List.of();
+
+    // With virtio-scsi the iothread and queues belong to the controller
+    DomainDefinition.DiskDriver rootDriver = ioHeavy
+        ? new DomainDefinition.DiskDriver("qcow2", "none", libvirtConfig.getDomainDiskIo(), "unmap", "unmap",
+            scsi ? null : 1, scsi ? null : queues)
+        : DomainDefinition.DiskDriver.of("qcow2");
+
+    List<DomainDefinition.Disk> disks = List.of(
+        new DomainDefinition.Disk("disk", diskPath, scsi ? "sda" : "vda", scsi ? "scsi" : "virtio", rootDriver,
+            false),
+        new DomainDefinition.Disk("cdrom", cloudInitIsoPath, scsi ? "sdb" : "sda", "sata",
+            DomainDefinition.DiskDriver.of("raw"), true));
+
+    DomainDefinition.NetworkInterface nic = profile == DomainProfile.NET_HEAVY
+        ? new DomainDefinition.NetworkInterface(libvirtConfig.getDomainNetwork(), "virtio", "vhost", queues)
+        : new DomainDefinition.NetworkInterface(libvirtConfig.getDomainNetwork(), "virtio", null, null);
+
+    String machine = libvirtConfig.getDomainMachine();
+
+    // Pinned VMs hold exactly the cores and hugepages placed for them, so they cannot grow
+    int maxMemory = numa != null ? request.getMemory() : resolveMaxMemory(request);
+    int maxVcpu = numa != null ? request.getVcpu() : resolveMaxVcpu(request);
+
+    return new DomainDefinition(
+        libvirtConfig.getDomainType(),
         request.getName(),
         request.getMemory(),
+        maxMemory,
         request.getVcpu(),
-        request.getName(),
-        cloudInitIsoPath);
+        maxVcpu,
+        ioHeavy ? 1 : 0,
+        libvirtConfig.getDomainArch(),
+        machine == null || machine.isBlank() ? null : machine,
+        libvirtConfig.getDomainEmulator(),
+        disks,
+        controllers,
+        List.of(nic),
+        profile != DomainProfile.DEFAULT,
+        numa,
+        balloonConfig.getStatsPeriodSeconds() > 0 ? balloonConfig.getStatsPeriodSeconds() : null);
   }
 
   public Domain defineAndStartDomain(String domainXml, Connect conn) throws LibvirtException {
@@ -124,22 +150,138 @@ public class LibvirtUtil {
     return domain;
   }
 
-  public List<Domain> getAllDomains(Connect conn) throws LibvirtException {
-    return Arrays.stream(conn.listDomains())
-        .mapToObj(id -> {
-          try {
-            return conn.domainLookupByID(id);
-          } catch (LibvirtException e) {
-            throw new RuntimeException(e);
-          }
-        })
-        .collect(Collectors.toList());
+  /** A domain as seen by a listing: its name, UUID and coarse state. */
+  public record DomainSummary(String name, String uuid, VmState state) {
+  }
+
+  /**
+   * Lists every domain on the connection, running or not. Each state is one
+   * {@code virConnectListAllDomains} call however many domains there are;
+   * if that call is not available this falls back to listing ids and names
+   * and looking each domain up.
+   */
+  public List<DomainSummary> listAllDomains(Connect conn) throws LibvirtException {
+    try {
+      List<DomainSummary> domains = new ArrayList<>();
+      addListed(conn, LibvirtNative.LIST_RUNNING, VmState.RUNNING, domains);
+      addListed(conn, LibvirtNative.LIST_PAUSED, VmState.PAUSED, domains);
+      addListed(conn, LibvirtNative.LIST_SHUTOFF, VmState.SHUTOFF, domains);
+      addListed(conn, LibvirtNative.LIST_OTHER, VmState.OTHER, domains);
+      return domains;
+    } catch (LibvirtNative.UnavailableException e) {
+      logger.debug("Bulk domain listing unavailable, looking domains up one by one: {}", e.getMessage());
+    }
+
+    List<DomainSummary> domains = new ArrayList<>();
+    for (int id : conn.listDomains()) {
+      Domain domain = conn.domainLookupByID(id);
+      domains.add(new DomainSummary(domain.getName(), domain.getUUIDString(), toVmState(domain.getInfo().state)));
+    }
+    for (String name : conn.listDefinedDomains()) {
+      Domain domain = conn.domainLookupByName(name);
+      domains.add(new DomainSummary(name, domain.getUUIDString(), VmState.SHUTOFF));
+    }
+    return domains;
+  }
+
+  private static void addListed(Connect conn, int flags, VmState state, List<DomainSummary> domains)
+      throws LibvirtNative.UnavailableException {
+    for (LibvirtNative.DomainHandle handle : LibvirtNative.listAllDomains(conn, flags)) {
+      domains.add(new DomainSummary(handle.name(), handle.uuid(), state));
+    }
+  }
+
+  /**
+   * A host's capacity as libvirt reports it. {@code cpuTimes} is empty if
+   * the host's CPU statistics cannot be read.
+   */
+  public record HostCapacity(int cpus, long memoryMb, long freeMemoryMb, Map<String, Long> cpuTimes) {
+  }
+
+  public HostCapacity readHostCapacity(Connect conn) throws LibvirtException {
+    NodeInfo info = conn.nodeInfo();
+    long freeMemoryMb = conn.getFreeMemory() / (1024 * 1024);
+
+    Map<String, Long> cpuTimes;
+    try {
+      cpuTimes = LibvirtNative.nodeCpuTimes(conn);
+    } catch (LibvirtNative.UnavailableException e) {
+      logger.debug("Host CPU statistics unavailable: {}", e.getMessage());
+      cpuTimes = Map.of();
+    }
+
+    return new HostCapacity(info.cpus, info.memory / 1024, freeMemoryMb, cpuTimes);
+  }
+
+  /**
+   * A host's memory in KiB. {@code availableKib} counts the page cache and
+   * buffers as available, unless the host only reports free memory.
+   */
+  public record HostMemory(long totalKib, long availableKib) {
+  }
+
+  public HostMemory readHostMemory(Connect conn) throws LibvirtException {
+    try {
+      Map<String, Long> stats = LibvirtNative.nodeMemoryStats(conn);
+      return new HostMemory(stats.getOrDefault("total", 0L), stats.getOrDefault("free", 0L)
+          + stats.getOrDefault("buffers", 0L) + stats.getOrDefault("cached", 0L));
+    } catch (LibvirtNative.UnavailableException e) {
+      logger.debug("Host memory statistics unavailable: {}", e.getMessage());
+      return new HostMemory(conn.nodeInfo().memory, conn.getFreeMemory() / 1024);
+    }
+  }
+
+  /**
+   * Changes the vCPU count and memory of {@code domain}, running or not,
+   * and of its persistent definition. Null leaves a value as it is.
+   *
+   * @throws IllegalStateException if libvirt refuses a change, or the
+   *         flagged calls are unavailable and the change could not be made
+   *         persistent
+   */
+  public void resizeDomain(Domain domain, Integer vcpu, Long memoryKib) throws LibvirtException {
+    boolean active = domain.isActive() == 1;
+    int flags = LibvirtNative.AFFECT_CONFIG | (active ? LibvirtNative.AFFECT_LIVE : 0);
+    try {
+      if (vcpu != null) {
+        LibvirtNative.setVcpus(domain, vcpu, flags);
+      }
+      if (memoryKib != null) {
+        LibvirtNative.setMemory(domain, memoryKib, flags);
+      }
+    } catch (LibvirtNative.UnavailableException e) {
+      // The unflagged calls would only change the running domain, which the next restart undoes
+      throw new IllegalStateException("Persistent resize is unavailable: " + e.getMessage(), e);
+    }
+  }
+
+  public static VmState toVmState(DomainInfo.DomainState state) {
+    return switch (state) {
+      // A domain that is shutting down is still running until it stops
+      case VIR_DOMAIN_RUNNING, VIR_DOMAIN_BLOCKED, VIR_DOMAIN_SHUTDOWN -> VmState.RUNNING;
+      case VIR_DOMAIN_PAUSED -> VmState.PAUSED;
+      case VIR_DOMAIN_SHUTOFF -> VmState.SHUTOFF;
+      case VIR_DOMAIN_CRASHED -> VmState.CRASHED;
+      default -> VmState.OTHER;
+    };
   }
 
   public Domain getDomainByName(String name, Connect conn) throws LibvirtException {
     return conn.domainLookupByName(name);
   }
 
+  public boolean isDomainDefined(String name, Connect conn) throws LibvirtException {
+    try {
+      conn.domainLookupByName(name);
+      return true;
+    } catch (LibvirtException e) {
+      if (e.getError() != null && e.getError().getCode() == ErrorNumber.VIR_ERR_NO_DOMAIN) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
   public void deleteDomain(String name, Connect conn) throws LibvirtException {
     Domain domain = getDomainByName(name, conn);
     if (domain.isActive() == 1) {
@@ -157,19 +299,4 @@ public class LibvirtUtil {
     Domain domain = getDomainByName(name, conn);
     domain.shutdown();
   }
-
-  public void waitForVmReady(String ip, int port, int timeoutSeconds) throws InterruptedException {
-    int waited = 0;
-    while (waited < timeoutSeconds) {
-      try (Socket socket = new Socket()) {
-        socket.connect(new InetSocketAddress(ip, port), 2000);
-        System.out.println("SSH is ready!");
-        return;
-      } catch (IOException e) {
-        Thread.sleep(1000);
-        waited++;
-      }
-    }
-    throw new RuntimeException("SSH not ready after " + timeoutSeconds + " seconds");
-  }
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+package com.k3skvmmaster.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the small ISO9660 image cloud-init's NoCloud datasource reads its
+ * seed from, entirely in memory. The image has a single root directory with
+ * a Joliet tree carrying the real file names, which is what Linux mounts,
+ * and an 8.3-style primary tree for readers that ignore Joliet. All
+ * timestamps are fixed so identical seed files always produce identical
+ * bytes, which lets callers cache and compare images by hash.
+ */
+public final class NoCloudIsoBuilder {
+
+    public static final String VOLUME_ID = "cidata";
+
+    private static final int SECTOR = 2048;
+
+    private static final int PRIMARY_DESCRIPTOR = 16;
+    private static final int JOLIET_DESCRIPTOR = 17;
+    private static final int TERMINATOR = 18;
+    private static final int PRIMARY_PATH_TABLE_L = 19;
+    private static final int PRIMARY_PATH_TABLE_M = 20;
+    private static final int JOLIET_PATH_TABLE_L = 21;
+    private static final int JOLIET_PATH_TABLE_M = 22;
+    private static final int PRIMARY_ROOT = 23;
+    private static final int JOLIET_ROOT = 24;
+    private static final int FIRST_FILE = 25;
+
+    private static final int PATH_TABLE_SIZE = 10;
+
+    /** 2000-01-01T00:00:00Z in the 17-byte volume descriptor format. */
+    private static final byte[] VOLUME_DATE = "2000010100000000\0".getBytes(StandardCharsets.US_ASCII);
+
+    /** The same instant in the 7-byte directory record format. */
+    private static final byte[] RECORD_DATE = { 100, 1, 1, 0, 0, 0, 0 };
+
+    private NoCloudIsoBuilder() {
+    }
+
+    private record Entry(String name, byte[] content, int sector) {
+    }
+
+    /**
+     * Lays out {@code files} (name to content) as an ISO image. Only a flat
+     * root directory is supported and it must fit in one sector, which is
+     * plenty for the three NoCloud seed files.
+     */
+    public static byte[] build(Map<String, byte[]> files) {
+        List<Entry> entries = new ArrayList<>();
+        int sector = FIRST_FILE;
+        for (Map.Entry<String, byte[]> file : new TreeMap<>(files).entrySet()) {
+            entries.add(new Entry(file.getKey(), file.getValue(), sector));
+            sector += sectors(file.getValue().length);
+        }
+
+        int totalSectors = sector;
+        ByteBuffer iso = ByteBuffer.allocate(totalSectors * SECTOR).order(ByteOrder.LITTLE_ENDIAN);
+
+        writeVolumeDescriptor(iso, PRIMARY_DESCRIPTOR, false, totalSectors);
+        writeVolumeDescriptor(iso, JOLIET_DESCRIPTOR, true, totalSectors);
+
+        iso.position(TERMINATOR * SECTOR);
+        iso.put((byte) 255).put("CD001".getBytes(StandardCharsets.US_ASCII)).put((byte) 1);
+
+        writePathTable(iso, PRIMARY_PATH_TABLE_L, PRIMARY_ROOT, false);
+        writePathTable(iso, PRIMARY_PATH_TABLE_M, PRIMARY_ROOT, true);
+        writePathTable(iso, JOLIET_PATH_TABLE_L, JOLIET_ROOT, false);
+        writePathTable(iso, JOLIET_PATH_TABLE_M, JOLIET_ROOT, true);
+
+        writeDirectory(iso, PRIMARY_ROOT, primaryOrder(entries), false);
+        writeDirectory(iso, JOLIET_ROOT, entries, true);
+
+        for (Entry entry : entries) {
+            iso.position(entry.sector() * SECTOR);
+            iso.put(entry.content());
+        }
+
+        return iso.array();
+    }
+
+    private static void writeVolumeDescriptor(ByteBuffer iso, int sector, boolean joliet, int totalSectors) {
+        int base = sector * SECTOR;
+        iso.position(base);
+        iso.put((byte) (joliet ? 2 : 1)).put("CD001".getBytes(StandardCharsets.US_ASCII)).put((byte) 1);
+
+        putText(iso, base + 8, 32, "LINUX", joliet);
+        putText(iso, base + 40, 32, VOLUME_ID, joliet);
+        putBoth32(iso, base + 80, totalSectors);
+
+        if (joliet) {
+            // UCS-2 level 3
+            iso.position(base + 88);
+            iso.put((byte) '%').put((byte) '/').put((byte) 'E');
+        }
+
+        putBoth16(iso, base + 120, 1);
+        putBoth16(iso, base + 124, 1);
+        putBoth16(iso, base + 128, SECTOR);
+        putBoth32(iso, base + 132, PATH_TABLE_SIZE);
+
+        iso.order(ByteOrder.LITTLE_ENDIAN).putInt(base + 140, joliet ? JOLIET_PATH_TABLE_L : PRIMARY_PATH_TABLE_L);
+        iso.order(ByteOrder.BIG_ENDIAN).putInt(base + 148, joliet ? JOLIET_PATH_TABLE_M : PRIMARY_PATH_TABLE_M);
+        iso.order(ByteOrder.LITTLE_ENDIAN);
+
+        iso.position(base + 156);
+        putDirectoryRecord(iso, joliet ? JOLIET_ROOT : PRIMARY_ROOT, SECTOR, true, new byte[] { 0 });
+
+        putText(iso, base + 190, 128, "", joliet);
+        putText(iso, base + 318, 128, "", joliet);
+        putText(iso, base + 446, 128, "", joliet);
+        putText(iso, base + 574, 128, "RYOMK", joliet);
+        putText(iso, base + 702, 37, "", joliet);
+        putText(iso, base + 739, 37, "", joliet);
+        putText(iso, base + 776, 37, "", joliet);
+
+        iso.position(base + 813);
+        iso.put(VOLUME_DATE).put(VOLUME_DATE);
+        iso.put("0000000000000000\0".getBytes(StandardCharsets.US_ASCII));
+        iso.put(VOLUME_DATE);
+        iso.put((byte) 1);
+    }
+
+    private static void writePathTable(ByteBuffer iso, int sector, int rootSector, boolean bigEndian) {
+        iso.position(sector * SECTOR);
+        iso.put((byte) 1).put((byte) 0);
+        iso.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        iso.putInt(rootSector).putShort((short) 1);
+        iso.order(ByteOrder.LITTLE_ENDIAN);
+        iso.put((byte) 0).put((byte) 0);
+    }
+
+    private static void writeDirectory(ByteBuffer iso, int sector, List<Entry> entries, boolean joliet) {
+        iso.position(sector * SECTOR);
+        putDirectoryRecord(iso, sector, SECTOR, true, new byte[] { 0 });
+        putDirectoryRecord(iso, sector, SECTOR, true, new byte[] { 1 });
+
+        for (Entry entry : entries) {
+            byte[] name = joliet
+                    ? entry.name().getBytes(StandardCharsets.UTF_16BE)
+                    : primaryName(entry.name()).getBytes(StandardCharsets.US_ASCII);
+            putDirectoryRecord(iso, entry.sector(), entry.content().length, false, name);
+        }
+
+        if (iso.position() > (sector + 1) * SECTOR) {
+            throw new IllegalArgumentException("Too many files for a single-sector root directory");
+        }
+    }
+
+    private static void putDirectoryRecord(ByteBuffer iso, int extent, int length, boolean directory, byte[] name) {
+        int recordLength = 33 + name.length + (name.length % 2 == 0 ? 1 : 0);
+
+        iso.put((byte) recordLength).put((byte) 0);
+        putBoth32(iso, iso.position(), extent);
+        putBoth32(iso, iso.position(), length);
+        iso.put(RECORD_DATE);
+        iso.put((byte) (directory ? 2 : 0)).put((byte) 0).put((byte) 0);
+        putBoth16(iso, iso.position(), 1);
+        iso.put((byte) name.length).put(name);
+        if (name.length % 2 == 0) {
+            iso.put((byte) 0);
+        }
+    }
+
+    /**
+     * Primary-tree names are restricted to upper-case d-characters, so
+     * {@code user-data} is recorded as {@code USER_DATA.;1}.
+     */
+    private static String primaryName(String name) {
+        StringBuilder out = new StringBuilder();
+        for (char c : name.toUpperCase().toCharArray()) {
+            out.append((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ? c : '_');
+        }
+        return out.append(".;1").toString();
+    }
+
+    private static List<Entry> primaryOrder(List<Entry> entries) {
+        return entries.stream()
+                .sorted((a, b) -> primaryName(a.name()).compareTo(primaryName(b.name())))
+                .toList();
+    }
+
+    private static void putText(ByteBuffer iso, int offset, int length, String text, boolean joliet) {
+        iso.position(offset);
+        if (joliet) {
+            iso.order(ByteOrder.BIG_ENDIAN);
+            for (int i = 0; i < length / 2; i++) {
+                iso.putChar(i < text.length() ? text.charAt(i) : ' ');
+            }
+            iso.order(ByteOrder.LITTLE_ENDIAN);
+            if (length % 2 != 0) {
+                iso.put((byte) 0);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                iso.put((byte) (i < text.length() ? text.charAt(i) : ' '));
+            }
+        }
+    }
+
+    private static void putBoth16(ByteBuffer iso, int offset, int value) {
+        iso.order(ByteOrder.LITTLE_ENDIAN).putShort(offset, (short) value);
+        iso.order(ByteOrder.BIG_ENDIAN).putShort(offset + 2, (short) value);
+        iso.order(ByteOrder.LITTLE_ENDIAN).position(offset + 4);
+    }
+
+    private static void putBoth32(ByteBuffer iso, int offset, int value) {
+        iso.order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+        iso.order(ByteOrder.BIG_ENDIAN).putInt(offset + 4, value);
+        iso.order(ByteOrder.LITTLE_ENDIAN).position(offset + 8);
+    }
+
+    private static int sectors(int length) {
+        return Math.max(1, (length + SECTOR - 1) / SECTOR);
+    }
+}
@@ -0,0 +1,177 @@
+package com.k3skvmmaster.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sink for one stream of a remote command. JSch pushes bytes into it from the
+ * session's transport thread as they arrive, so writes must stay cheap: only
+ * the last {@code tailBytes} are kept in memory, and once the output outgrows
+ * that, everything is also appended to a spill file on disk.
+ */
+class SshOutputCapture extends OutputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(SshOutputCapture.class);
+
+    private static final int MAX_LINE_BYTES = 8192;
+
+    private final String name;
+    private final Consumer<String> lineListener;
+    private final Path spillDirectory;
+    private final CountDownLatch closed;
+
+    private final byte[] tail;
+    private int tailStart;
+    private int tailLength;
+    private long totalBytes;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private Path spillFile;
+    private OutputStream spill;
+
+    SshOutputCapture(String name, int tailBytes, Path spillDirectory, Consumer<String> lineListener,
+            CountDownLatch closed) {
+        this.name = name;
+        this.tail = new byte[tailBytes];
+        this.spillDirectory = spillDirectory;
+        this.lineListener = lineListener;
+        this.closed = closed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (spill == null && tailLength + len > tail.length) {
+            startSpill();
+        }
+        if (spill != null) {
+            spill.write(b, off, len);
+        }
+
+        appendToTail(b, off, len);
+        totalBytes += len;
+
+        if (lineListener != null) {
+            splitLines(b, off, len);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (lineListener != null && line.size() > 0) {
+            emitLine();
+        }
+
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close spill file {}: {}", spillFile, e.getMessage());
+            }
+        }
+
+        closed.countDown();
+    }
+
+    synchronized String getTail() {
+        byte[] ordered = new byte[tailLength];
+        int firstChunk = Math.min(tailLength, tail.length - tailStart);
+        System.arraycopy(tail, tailStart, ordered, 0, firstChunk);
+        System.arraycopy(tail, 0, ordered, firstChunk, tailLength - firstChunk);
+        return new String(ordered, StandardCharsets.UTF_8);
+    }
+
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    synchronized boolean isTruncated() {
+        return totalBytes > tailLength;
+    }
+
+    synchronized Path getSpillFile() {
+        return spillFile;
+    }
+
+    synchronized void discardSpillFile() {
+        if (spillFile != null) {
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                logger.warn("Failed to delete spill file {}: {}", spillFile, e.getMessage());
+            }
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Called once, on the first write that no longer fits in the tail buffer.
+     * Nothing has been dropped yet at that point, so the buffer holds the
+     * complete prefix of the output.
+     */
+    private void startSpill() throws IOException {
+        Files.createDirectories(spillDirectory);
+        spillFile = Files.createTempFile(spillDirectory, name + "-", ".log");
+        spill = new BufferedOutputStream(Files.newOutputStream(spillFile), 64 * 1024);
+        spill.write(tail, 0, tailLength);
+        logger.debug("Output of {} exceeded {} bytes, spilling to {}", name, tail.length, spillFile);
+    }
+
+    private void appendToTail(byte[] b, int off, int len) {
+        if (len >= tail.length) {
+            System.arraycopy(b, off + len - tail.length, tail, 0, tail.length);
+            tailStart = 0;
+            tailLength = tail.length;
+            return;
+        }
+
+        int end = (tailStart + tailLength) % tail.length;
+        int firstChunk = Math.min(len, tail.length - end);
+        System.arraycopy(b, off, tail, end, firstChunk);
+        System.arraycopy(b, off + firstChunk, tail, 0, len - firstChunk);
+
+        int overflow = tailLength + len - tail.length;
+        if (overflow > 0) {
+            tailStart = (tailStart + overflow) % tail.length;
+            tailLength = tail.length;
+        } else {
+            tailLength += len;
+        }
+    }
+
+    private void splitLines(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (b[i] == '\n') {
+                emitLine();
+            } else if (line.size() < MAX_LINE_BYTES) {
+                line.write(b[i]);
+            }
+        }
+    }
+
+    private void emitLine() {
+        String text = line.toString(StandardCharsets.UTF_8);
+        line.reset();
+
+        try {
+            lineListener.accept(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+        } catch (RuntimeException e) {
+            logger.warn("Line listener for {} failed: {}", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.k3skvmmaster.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.k3skvmmaster.config.SshConfig;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps one authenticated JSch session per (user, host, auth mode) and hands
+ * out leases on it. A lease opens its own channels on the shared session, so
+ * callers pay the key exchange once per host instead of once per operation.
+ * Handshakes are timed as {@code ssh.handshake}, and the number of open
+ * sessions and held leases is exported as gauges.
+ */
+@Component
+public class SshSessionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SshSessionPool.class);
+
+    private final SshConfig sshConfig;
+    private final MeterRegistry meterRegistry;
+    private final JSch jsch = new JSch();
+    private final Map<SessionKey, PooledSession> sessions = new ConcurrentHashMap<>();
+
+    private volatile boolean identityLoaded;
+
+    public SshSessionPool(SshConfig sshConfig, MeterRegistry meterRegistry) {
+        this.sshConfig = sshConfig;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("ssh.pool.sessions", sessions,
+                s -> s.values().stream().filter(pooled -> pooled.session != null).count())
+                .description("Open pooled SSH sessions")
+                .register(meterRegistry);
+        Gauge.builder("ssh.pool.leases", sessions,
+                s -> s.values().stream()
+                        .mapToInt(pooled -> sshConfig.getMaxLeasesPerSession() - pooled.leases.availablePermits())
+                        .sum())
+                .description("SSH session leases currently held")
+                .register(meterRegistry);
+    }
+
+    SshConfig getConfig() {
+        return sshConfig;
+    }
+
+    MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    public AutoCloseSshSession acquire() throws JSchException {
+        return acquire(null, null, false);
+    }
+
+    public AutoCloseSshSession acquire(SshTarget target) throws JSchException {
+        return acquire(target.user(), target.host(), false);
+    }
+
+    public AutoCloseSshSession acquire(String username, String host) throws JSchException {
+        return acquire(username, host, false);
+    }
+
+    public AutoCloseSshSession acquire(String username, String host, boolean usePassword) throws JSchException {
+        if (username == null || username.isBlank()) {
+            username = sshConfig.getDefaultUser();
+        }
+
+        if (host == null || host.isBlank()) {
+            host = sshConfig.getDefaultHost();
+        }
+
+        SessionKey key = new SessionKey(username.trim(), host.trim(), sshConfig.getPort(), usePassword);
+        PooledSession pooled = sessions.computeIfAbsent(key,
+                k -> new PooledSession(k, new Semaphore(sshConfig.getMaxLeasesPerSession(), true)));
+
+        try {
+            if (!pooled.leases.tryAcquire(sshConfig.getLeaseTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new JSchException("Timed out waiting for an SSH lease on " + key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSchException("Interrupted waiting for an SSH lease on " + key, e);
+        }
+
+        try {
+            return new AutoCloseSshSession(this, pooled, pooled.ensureConnected());
+        } catch (JSchException | RuntimeException e) {
+            pooled.leases.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Ends a lease on {@code session}. A session that has dropped is thrown
+     * away, unless another lease has already replaced it.
+     */
+    void release(PooledSession pooled, Session session) {
+        pooled.lastUsed = System.currentTimeMillis();
+        if (!session.isConnected()) {
+            pooled.invalidate(session);
+        }
+        pooled.leases.release();
+    }
+
+    @Scheduled(fixedDelayString = "${ssh.pool.eviction-interval-ms:30000}")
+    public void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+
+        sessions.values().forEach(pooled -> {
+            boolean idle = now - pooled.lastUsed > sshConfig.getIdleTimeoutMs();
+            if (!idle || !pooled.leases.tryAcquire(sshConfig.getMaxLeasesPerSession())) {
+                return;
+            }
+
+            try {
+                if (pooled.session != null) {
+                    logger.info("Evicting idle SSH session to {}", pooled.key);
+                    pooled.invalidate();
+                }
+            } finally {
+                pooled.leases.release(sshConfig.getMaxLeasesPerSession());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.values().forEach(PooledSession::invalidate);
+        sessions.clear();
+    }
+
+    private Session openSession(SessionKey key) throws JSchException {
+        logger.info("Opening pooled SSH session to {}@{}", key.username(), key.host());
+        loadIdentity();
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            Session session = jsch.getSession(key.username(), key.host(), key.port());
+            session.setConfig("StrictHostKeyChecking", "no");
+
+            if (key.usePassword()) {
+                session.setConfig("PreferredAuthentications", "password");
+                session.setPassword(sshConfig.getGuestPassword());
+            }
+
+            session.setServerAliveInterval(sshConfig.getKeepaliveIntervalMs());
+            session.setServerAliveCountMax(3);
+            session.connect(sshConfig.getConnectTimeoutMs());
+
+            if (!session.isConnected()) {
+                throw new JSchException("SSH session failed to connect to " + key.host());
+            }
+
+            logger.info("SSH session established with {}@{}", key.username(), key.host());
+            outcome = "success";
+            return session;
+        } catch (JSchException e) {
+            logger.error("Failed to establish SSH session: {}", e.getMessage(), e);
+            throw new JSchException("SSH session setup failed for " + key.username() + "@" + key.host(), e);
+        } finally {
+            sample.stop(meterRegistry.timer("ssh.handshake", "outcome", outcome));
+        }
+    }
+
+    private synchronized void loadIdentity() throws JSchException {
+        if (!identityLoaded) {
+            jsch.addIdentity(sshConfig.getPrivateKeyPath());
+            identityLoaded = true;
+        }
+    }
+
+    record SessionKey(String username, String host, int port, boolean usePassword) {
+        @Override
+        public String toString() {
+            return username + "@" + host + ":" + port;
+        }
+    }
+
+    final class PooledSession {
+        private final SessionKey key;
+        private final Semaphore leases;
+        private volatile Session session;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledSession(SessionKey key, Semaphore leases) {
+            this.key = key;
+            this.leases = leases;
+        }
+
+        SessionKey getKey() {
+            return key;
+        }
+
+        private synchronized Session ensureConnected() throws JSchException {
+            if (session != null && session.isConnected() && isHealthy()) {
+                return session;
+            }
+
+            if (session != null) {
+                logger.info("Pooled SSH session to {} is no longer usable, reconnecting", key);
+                session.disconnect();
+            }
+
+            session = openSession(key);
+            return session;
+        }
+
+        /**
+         * Sessions that sat idle past one keepalive interval get an explicit
+         * probe, since a dead peer is only noticed on the next write.
+         */
+        private boolean isHealthy() {
+            if (System.currentTimeMillis() - lastUsed < sshConfig.getKeepaliveIntervalMs()) {
+                return true;
+            }
+
+            try {
+                session.sendKeepAliveMsg();
+                return true;
+            } catch (Exception e) {
+                logger.warn("Keepalive to {} failed: {}", key, e.getMessage());
+                return false;
+            }
+        }
+
+        private synchronized void invalidate() {
+            invalidate(session);
+        }
+
+        /** Drops {@code stale} if it is still the pooled session. */
+        private synchronized void invalidate(Session stale) {
+            if (session != null && session == stale) {
+                session.disconnect();
+                session = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.k3skvmmaster.util;
+
+import java.net.URI;
+
+/**
+ * SSH user and host to use for file operations on a hypervisor. A null field
+ * means the pool default applies.
+ */
+public record SshTarget(String user, String host) {
+
+    public static final SshTarget DEFAULT = new SshTarget(null, null);
+
+    /**
+     * Derives the target from a {@code qemu+ssh://user@host/system} style URI.
+     * Local URIs such as {@code qemu:///system} fall back to the default host.
+     */
+    public static SshTarget fromLibvirtUri(String libvirtUri) {
+        if (libvirtUri == null || libvirtUri.isBlank()) {
+            return DEFAULT;
+        }
+
+        try {
+            URI uri = URI.create(libvirtUri);
+            if (uri.getHost() == null) {
+                return DEFAULT;
+            }
+            return new SshTarget(uri.getUserInfo(), uri.getHost());
+        } catch (IllegalArgumentException e) {
+            return DEFAULT;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,34 +19,12 @@ import com.k3skvmmaster.config.LibvirtConfig;
 public class SshUtil {
 
     private final LibvirtConfig libvirtConfig;
+    private final SshSessionPool sshSessionPool;
     private static final Logger logger = LoggerFactory.getLogger(SshUtil.class);
 
-    public SshUtil(LibvirtConfig libvirtConfig) {
+    public SshUtil(LibvirtConfig libvirtConfig, SshSessionPool sshSessionPool) {
         this.libvirtConfig = libvirtConfig;
-    }
-
-    public void writeRemoteFile(String content, String remotePath) throws IOException {
-        try (AutoCloseSshSession ssh = new AutoCloseSshSession()) {
-
-            ChannelSftp channel = ssh.getChannel();
-
-            // Create directory if it doesn't exist
-            createDirectoryIfNotExists(channel, remotePath.substring(0, remotePath.lastIndexOf('/')));
-
-            // Write file
-            try (InputStream inputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))) {
-                channel.put(inputStream, remotePath);
-            }
-
-            // Set permissions to 644
-            channel.chmod(0644, remotePath);
-
-            logger.info("Successfully wrote file to remote path: {}", remotePath);
-
-        } catch (JSchException | SftpException e) {
-            logger.error("Failed to write remote file: {}", e.getMessage(), e);
-            throw new IOException("Failed to write remote file", e);
-        }
+        this.sshSessionPool = sshSessionPool;
     }
 
     private void createDirectoryIfNotExists(ChannelSftp channelSftp, String directory) throws SftpException {
@@ -76,32 +55,12 @@ public class SshUtil {
         }
     }
 
-    public String prepareDiskImage(String vmName, String hostname, String rootPassword)
-            throws IOException {
+    public String customizeDiskImage(SshTarget target, String diskPath, String vmName, String hostname,
+            String rootPassword) throws IOException {
 
-        try (AutoCloseSshSession ssh = new AutoCloseSshSession()) {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire(target)) {
             ChannelSftp channel = ssh.getChannel();
 
-            String targetImagePath = libvirtConfig.getVmImagesDirectory() + "/" + vmName + "-disk.qcow2";
-
-            // Check if target image already exists
-            try {
-                channel.ls(targetImagePath);
-                logger.info("Disk image already exists at: {}", targetImagePath);
-                return targetImagePath;
-            } catch (SftpException e) {
-                if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
-                    throw new IOException("Error checking if disk image exists", e);
-                }
-                // Image doesn't exist, proceed with creation
-            }
-
-            // Copy base image from local container to remote host using SFTP
-            logger.info("Copying base image from local {} to remote {}", libvirtConfig.getBaseImagePath(),
-                    targetImagePath);
-            channel.put(libvirtConfig.getBaseImagePath(), targetImagePath);
-            logger.info("Successfully copied base image to remote host");
-
             // Read SSH public key content
             String sshKeyContent;
 
@@ -131,7 +90,7 @@ public class SshUtil {
             // Customize the image with virt-customize
             String customizeCommand = String.format(
                     "virt-customize -a %s --hostname %s --root-password password:%s --ssh-inject 'ubuntu:file:%s'",
-                    targetImagePath, hostname, rootPassword, sshKeyPath);
+                    diskPath, hostname, rootPassword, sshKeyPath);
 
             logger.info("Customizing disk image with command: {}", customizeCommand);
 
@@ -142,73 +101,62 @@ public class SshUtil {
                 throw new IOException("Failed to customize disk image, exit code: " + result.getExitCode());
             }
 
-            logger.info("Successfully prepared disk image at: {}", targetImagePath);
-            return targetImagePath;
+            logger.info("Successfully prepared disk image at: {}", diskPath);
+            return diskPath;
 
-        } catch (JSchException | SftpException e) {
+        } catch (JSchException e) {
             logger.error("Failed to prepare disk image: {}", e.getMessage(), e);
             throw new IOException("Failed to prepare disk image", e);
         }
     }
 
-    public void deleteDiskImage(String vmName) throws IOException {
-        try (AutoCloseSshSession ssh = new AutoCloseSshSession()) {
-            ChannelSftp channel = ssh.getChannel();
-            String imagePath = libvirtConfig.getVmImagesDirectory() + "/" + vmName + "-disk.qcow2";
+    /**
+     * Streams {@code content} to {@code remotePath} in a single command. The
+     * file is written next to its destination and renamed into place, so a
+     * reader never sees a partial file.
+     */
+    public void uploadBytes(byte[] content, SshTarget target, String remotePath) throws IOException {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire(target)) {
+            String command = String.format("mkdir -p %s && cat > %s.tmp && chmod 644 %s.tmp && mv %s.tmp %s",
+                    remotePath.substring(0, remotePath.lastIndexOf('/')), remotePath, remotePath, remotePath,
+                    remotePath);
 
-            // Check if image exists before trying to delete
-            try {
-                channel.ls(imagePath);
-            } catch (SftpException e) {
-                if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
-                    logger.info("Disk image does not exist at: {}", imagePath);
-                    return;
-                } else {
-                    throw new IOException("Error checking if disk image exists", e);
-                }
+            AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "upload",
+                    new ByteArrayInputStream(content), null, null);
+
+            if (!result.isSuccess()) {
+                throw new IOException("Failed to upload " + remotePath + ", exit code: " + result.getExitCode());
             }
 
-            // Delete the image
-            channel.rm(imagePath);
-            logger.info("Successfully deleted disk image at: {}", imagePath);
+            logger.info("Uploaded {} bytes to {}", content.length, remotePath);
 
-        } catch (JSchException | SftpException e) {
-            logger.error("Failed to delete disk image: {}", e.getMessage(), e);
-            throw new IOException("Failed to delete disk image", e);
+        } catch (JSchException e) {
+            logger.error("Failed to upload file: {}", e.getMessage(), e);
+            throw new IOException("Failed to upload " + remotePath, e);
         }
     }
 
-    public String createRemoteIso(String remoteDir, String isoPath, String isoName, String systemUser)
-            throws IOException {
-
-        try (AutoCloseSshSession ssh = new AutoCloseSshSession()) {
-            // Create the ISO path
-            String vmImageIsoPath = String.format(isoPath, systemUser, isoName);
-
-            // Create ISO using remote command
-            String command = String.format(
-                    "cd %s && genisoimage -output %s -volid cidata -joliet -rock .",
-                    remoteDir,
-                    vmImageIsoPath);
-
-            // Execute command
-            AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "ISO creation");
-
-            if (!result.isSuccess()) {
-                throw new IOException("Failed to create ISO, exit code: " + result.getExitCode());
+    /**
+     * Hashes a file on the remote host, or returns empty if it cannot be
+     * read.
+     */
+    public Optional<String> remoteSha256(SshTarget target, String remotePath) throws IOException {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire(target)) {
+            AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(
+                    String.format("sha256sum %s 2>/dev/null", remotePath), "remote-hash");
+
+            if (!result.isSuccess() || result.getOutput().isBlank()) {
+                return Optional.empty();
             }
-
-            logger.info("Successfully created ISO at: {}", vmImageIsoPath);
-            return vmImageIsoPath;
+            return Optional.of(result.getOutput().trim().split("\\s+")[0]);
 
         } catch (JSchException e) {
-            logger.error("Failed to create remote ISO: {}", e.getMessage(), e);
-            throw new IOException("Failed to create remote ISO", e);
+            throw new IOException("Failed to hash " + remotePath, e);
         }
     }
 
     public Boolean downloadNfsDependencies(String user, String host) throws IOException {
-        try (AutoCloseSshSession ssh = new AutoCloseSshSession(user, host)) {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire(user, host)) {
             String command = "sudo add-apt-repository universe -y && sudo apt update && sudo apt install -y nfs-common";
             AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "NFS Dependency Install");
 
@@ -225,4 +173,69 @@ public class SshUtil {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Gives a running guest a new hostname, network configuration and
+     * password for root and {@code user}. The seed still names the old host,
+     * so cloud-init is told to keep the new hostname on later boots. The
+     * netplan apply is detached and delayed because it drops the connection
+     * this command arrives on; callers should wait for the new address.
+     */
+    public void reconfigureGuest(String user, String host, String hostname, String netplanYaml, String password)
+            throws IOException {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire(user, host)) {
+            // Sent on stdin so the password never shows up in a command line
+            String passwords = String.format("root:%s%n%s:%s%n", password, user, password);
+            AutoCloseSshSession.SshCommandResult changed = ssh.executeSshCommand("sudo chpasswd", "set-passwords",
+                    new ByteArrayInputStream(passwords.getBytes(StandardCharsets.UTF_8)), null, null);
+            if (!changed.isSuccess()) {
+                throw new IOException("Failed to set guest passwords, exit code: " + changed.getExitCode());
+            }
+
+            String command = String.format(
+                    "sudo hostnamectl set-hostname %s"
+                            + " && echo 'preserve_hostname: true' | sudo tee /etc/cloud/cloud.cfg.d/99-preserve-hostname.cfg >/dev/null"
+                            + " && echo 'network: {config: disabled}' | sudo tee /etc/cloud/cloud.cfg.d/99-disable-network-config.cfg >/dev/null"
+                            + " && sudo tee /etc/netplan/50-cloud-init.yaml >/dev/null"
+                            + " && sudo chmod 600 /etc/netplan/50-cloud-init.yaml"
+                            + " && { sudo nohup sh -c 'sleep 1 && netplan apply' >/dev/null 2>&1 & }",
+                    hostname);
+
+            AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "reconfigure-guest",
+                    new ByteArrayInputStream(netplanYaml.getBytes(StandardCharsets.UTF_8)), null, null);
+
+            if (!result.isSuccess()) {
+                throw new IOException("Failed to reconfigure guest, exit code: " + result.getExitCode());
+            }
+
+        } catch (JSchException e) {
+            logger.error("Failed to reconfigure guest: {}", e.getMessage(), e);
+            throw new IOException("Failed to reconfigure guest", e);
+        }
+    }
+
+    /**
+     * Starts or stops kernel samepage merging on a hypervisor and returns
+     * the bytes it currently saves. Stopping leaves merged pages merged.
+     */
+    public long configureKsm(SshTarget target, boolean run, int pagesToScan, int sleepMs) throws IOException {
+        try (AutoCloseSshSession ssh = sshSessionPool.acquire(target)) {
+            String command = String.format(
+                    "echo %d | sudo tee /sys/kernel/mm/ksm/pages_to_scan >/dev/null"
+                            + " && echo %d | sudo tee /sys/kernel/mm/ksm/sleep_millisecs >/dev/null"
+                            + " && echo %d | sudo tee /sys/kernel/mm/ksm/run >/dev/null"
+                            + " && echo $(( $(cat /sys/kernel/mm/ksm/pages_sharing) * $(getconf PAGESIZE) ))",
+                    pagesToScan, sleepMs, run ? 1 : 0);
+
+            AutoCloseSshSession.SshCommandResult result = ssh.executeSshCommand(command, "ksm");
+
+            if (!result.isSuccess()) {
+                throw new IOException("Failed to configure KSM, exit code: " + result.getExitCode());
+            }
+            return Long.parseLong(result.getOutput().trim());
+
+        } catch (JSchException | NumberFormatException e) {
+            throw new IOException("Failed to configure KSM", e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.k3skvmmaster.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Records how long each named stage of a multi-step operation took, in the
+ * order the stages ran. Given a registry, every finished stage is also
+ * recorded in the {@code provisioning.stage} timer, tagged with its name.
+ *
+ * <pre>
+ * try (StageTimer.Stage stage = timer.start("disk")) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class StageTimer {
+
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private final long startedAt = System.nanoTime();
+    private final MeterRegistry registry;
+
+    public StageTimer() {
+        this(null);
+    }
+
+    public StageTimer(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public class Stage implements AutoCloseable {
+        private final String name;
+        private final long startedAt = System.nanoTime();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            long elapsedNanos = System.nanoTime() - startedAt;
+            synchronized (StageTimer.this) {
+                timings.merge(name, elapsedNanos / 1_000_000, Long::sum);
+            }
+            if (registry != null) {
+                registry.timer("provisioning.stage", "stage", name).record(elapsedNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public Stage start(String stage) {
+        return new Stage(stage);
+    }
+
+    /** Stage durations in milliseconds. */
+    public synchronized Map<String, Long> getTimings() {
+        return new LinkedHashMap<>(timings);
+    }
+
+    public long getTotalMs() {
+        return (System.nanoTime() - startedAt) / 1_000_000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return timings.entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue() + "ms")
+                .collect(Collectors.joining(", "));
+    }
+}
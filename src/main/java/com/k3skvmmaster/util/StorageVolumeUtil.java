@@ -0,0 +1,190 @@
+package com.k3skvmmaster.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Optional;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathFactory;
+
+import org.libvirt.Connect;
+import org.libvirt.Error.ErrorNumber;
+import org.libvirt.LibvirtException;
+import org.libvirt.StoragePool;
+import org.libvirt.StorageVol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import com.k3skvmmaster.config.LibvirtConfig;
+import com.k3skvmmaster.model.dto.DiskMode;
+import com.k3skvmmaster.service.ImageRegistryService;
+
+/**
+ * Creates VM disks as libvirt storage volumes. In linked mode a disk is a
+ * qcow2 overlay whose backing store is a shared base volume in the pool, so
+ * creating it is a metadata-only operation; full mode clones the base volume.
+ */
+@Component
+public class StorageVolumeUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageVolumeUtil.class);
+
+    @Autowired
+    private LibvirtConfig libvirtConfig;
+
+    @Autowired
+    private LibvirtUtil libvirtUtil;
+
+    @Autowired
+    private ImageRegistryService imageRegistryService;
+
+    /** A VM disk as libvirt describes it; {@code backingPath} is null for full clones. */
+    public record DiskVolume(String path, long capacity, String backingPath) {
+    }
+
+    public static String diskVolumeName(String vmName) {
+        return vmName + "-disk.qcow2";
+    }
+
+    /**
+     * Makes sure the current base image is present in the storage pool and
+     * returns the base volume's name.
+     */
+    public String ensureBaseVolume(String libvirtUri) throws IOException, LibvirtException {
+        imageRegistryService.ensureImage(libvirtUri);
+        return imageRegistryService.describeBaseImage().volumeName();
+    }
+
+    /**
+     * Creates the disk volume for {@code vmName}. A volume left under the same
+     * name is deleted and created again only if {@code replaceExisting} is
+     * set, which callers do once they know it is from an attempt that did
+     * not finish; callers that can prove an existing disk is complete should
+     * check it with {@link #describeVmDisk} instead.
+     *
+     * @throws IllegalStateException if the volume exists and may not be replaced
+     */
+    public DiskVolume createVmDisk(String libvirtUri, String vmName, DiskMode mode, boolean replaceExisting)
+            throws IOException, LibvirtException {
+        String diskName = diskVolumeName(vmName);
+        DiskMode diskMode = mode != null ? mode : libvirtConfig.getDiskMode();
+
+        String baseName = ensureBaseVolume(libvirtUri);
+
+        return libvirtUtil.withConnection(libvirtUri, "volume.create", conn -> {
+            StoragePool pool = lookupPool(conn);
+
+            StorageVol existing = findVolume(pool, diskName);
+            if (existing != null) {
+                if (!replaceExisting) {
+                    throw new IllegalStateException("Disk volume " + existing.getPath() + " already exists");
+                }
+                logger.info("Replacing disk volume of unfinished attempt at: {}", existing.getPath());
+                existing.delete(0);
+            }
+
+            StorageVol base = pool.storageVolLookupByName(baseName);
+            long capacity = base.getInfo().capacity;
+
+            StorageVol disk;
+            if (diskMode == DiskMode.FULL) {
+                logger.info("Cloning base volume {} into {}", baseName, diskName);
+                disk = pool.storageVolCreateXMLFrom(volumeXml(diskName, capacity, null), base, 0);
+            } else {
+                logger.info("Creating linked clone {} backed by {}", diskName, base.getPath());
+                disk = pool.storageVolCreateXML(volumeXml(diskName, capacity, base.getPath()), 0);
+            }
+
+            logger.info("Created disk volume at: {}", disk.getPath());
+            return describe(disk);
+        });
+    }
+
+    /**
+     * Describes the disk volume of {@code vmName}, or returns empty if there
+     * is none.
+     */
+    public Optional<DiskVolume> describeVmDisk(String libvirtUri, String vmName) throws LibvirtException {
+        return libvirtUtil.withConnection(libvirtUri, "volume.describe", conn -> {
+            StorageVol vol = findVolume(lookupPool(conn), diskVolumeName(vmName));
+            return vol == null ? Optional.empty() : Optional.of(describe(vol));
+        });
+    }
+
+    private static DiskVolume describe(StorageVol vol) throws LibvirtException {
+        String backingPath;
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new InputSource(new StringReader(vol.getXMLDesc(0))));
+            backingPath = XPathFactory.newInstance().newXPath().evaluate("/volume/backingStore/path", doc);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read description of volume " + vol.getName(), e);
+        }
+
+        return new DiskVolume(vol.getPath(), vol.getInfo().capacity, backingPath.isEmpty() ? null : backingPath);
+    }
+
+    public void deleteVmDisk(String libvirtUri, String vmName) throws LibvirtException {
+        String diskName = diskVolumeName(vmName);
+
+        libvirtUtil.withConnection(libvirtUri, "volume.delete", conn -> {
+            StorageVol vol = findVolume(lookupPool(conn), diskName);
+            if (vol == null) {
+                logger.info("Disk volume {} does not exist", diskName);
+                return null;
+            }
+
+            vol.delete(0);
+            logger.info("Successfully deleted disk volume {}", diskName);
+            return null;
+        });
+    }
+
+    private StoragePool lookupPool(Connect conn) throws LibvirtException {
+        return conn.storagePoolLookupByName(libvirtConfig.getStoragePool());
+    }
+
+    public static StorageVol findVolume(StoragePool pool, String name) throws LibvirtException {
+        try {
+            return pool.storageVolLookupByName(name);
+        } catch (LibvirtException e) {
+            if (e.getError() != null && e.getError().getCode() == ErrorNumber.VIR_ERR_NO_STORAGE_VOL) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static String volumeXml(String name, long capacity, String backingPath) {
+        String backingStore = backingPath == null ? "" : String.format("""
+                  <backingStore>
+                    <path>%s</path>
+                    <format type='qcow2'/>
+                  </backingStore>
+                """, backingPath);
+
+        return String.format("""
+                <volume>
+                  <name>%s</name>
+                  <capacity unit='bytes'>%d</capacity>
+                  <target>
+                    <format type='qcow2'/>
+                  </target>
+                %s</volume>
+                """, name, capacity, backingStore);
+    }
+
+    public static String poolTargetPath(StoragePool pool) throws LibvirtException {
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new InputSource(new StringReader(pool.getXMLDesc(0))));
+            return XPathFactory.newInstance().newXPath().evaluate("/pool/target/path", doc);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read target path of storage pool", e);
+        }
+    }
+}
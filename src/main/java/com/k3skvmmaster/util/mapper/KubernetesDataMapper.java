@@ -19,25 +19,27 @@ public class KubernetesDataMapper {
         Map<String, Map<String, String>> nodeMap = nodeList.stream()
                 .collect(Collectors.toMap(
                         node -> node.getMetadata().getName(),
-                        node -> {
-                            Map<String, String> properties = new HashMap<>();
-                            properties.put("status", node.getStatus().getConditions().stream()
-                                    .filter(cond -> "Ready".equals(cond.getType()))
-                                    .findFirst()
-                                    .map(cond -> cond.getStatus())
-                                    .orElse("Unknown"));
-
-                            properties.put("ip", node.getStatus().getAddresses().stream()
-                                    .filter(addr -> "InternalIP".equals(addr.getType()))
-                                    .findFirst()
-                                    .map(addr -> addr.getAddress())
-                                    .orElse("Unknown"));
-
-                            properties.put("osImage", node.getStatus().getNodeInfo().getOsImage());
-                            properties.put("kubeletVersion", node.getStatus().getNodeInfo().getKubeletVersion());
-                            return properties;
-                        }));
+                        this::mapNodeToRto));
 
         return nodeMap;
     }
+
+    public Map<String, String> mapNodeToRto(V1Node node) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("status", node.getStatus().getConditions().stream()
+                .filter(cond -> "Ready".equals(cond.getType()))
+                .findFirst()
+                .map(cond -> cond.getStatus())
+                .orElse("Unknown"));
+
+        properties.put("ip", node.getStatus().getAddresses().stream()
+                .filter(addr -> "InternalIP".equals(addr.getType()))
+                .findFirst()
+                .map(addr -> addr.getAddress())
+                .orElse("Unknown"));
+
+        properties.put("osImage", node.getStatus().getNodeInfo().getOsImage());
+        properties.put("kubeletVersion", node.getStatus().getNodeInfo().getKubeletVersion());
+        return properties;
+    }
 }